@@ -0,0 +1,61 @@
+package glt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Turning the letters of an exon into Bases and back, as done for every exon
+ * on the negative strand.
+ * 
+ * @author michael
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BasesBenchmark {
+
+	// typical exons are a few hundred bases long
+	@Param({ "150", "1500" })
+	private int length;
+
+	private String letters = null;
+	private Bases bases = null;
+
+	@Setup
+	public void setup() {
+		this.letters = new String(BenchmarkData.bases(new Random(1), this.length), StandardCharsets.US_ASCII);
+		this.bases = new Bases(this.letters);
+	}
+
+	@Benchmark
+	public Bases add() {
+		return new Bases().add(this.letters);
+	}
+
+	@Benchmark
+	public Bases reverseComplement() {
+		return this.bases.reverseComplement();
+	}
+
+	@Benchmark
+	public String getLetters() {
+		return this.bases.getLetters();
+	}
+}
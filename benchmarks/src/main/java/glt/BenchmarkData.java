@@ -0,0 +1,206 @@
+package glt;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.logging.Level;
+
+/**
+ * Creates the input files of the benchmarks. Everything is random but seeded,
+ * so every run measures the same data.
+ * 
+ * @author michael
+ * 
+ */
+class BenchmarkData {
+
+	static private final byte[] LETTERS = { 'A', 'C', 'G', 'T' };
+
+	// the id of the chromosome in all generated files
+	static final String CHROMOSOME_ID = "B";
+
+	/**
+	 * Keeps the log of the pipeline out of the measurements.
+	 */
+	static void quiet() {
+		GLT.logger.setLevel(Level.WARNING);
+	}
+
+	/**
+	 * Returns a new temporary directory which is deleted when the JVM exits.
+	 * 
+	 * @return the directory
+	 * @throws IOException
+	 */
+	static File directory() throws IOException {
+
+		File directory = Files.createTempDirectory("glt-benchmark").toFile();
+		directory.deleteOnExit();
+
+		return directory;
+	}
+
+	/**
+	 * Returns random upper case bases.
+	 * 
+	 * @param random
+	 *            The source of randomness
+	 * @param length
+	 *            The number of bases
+	 * @return the bases
+	 */
+	static byte[] bases(Random random, int length) {
+
+		byte[] bases = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			bases[i] = LETTERS[random.nextInt(LETTERS.length)];
+		}
+
+		return bases;
+	}
+
+	/**
+	 * Replaces a run of bases with N, like the gaps of a real chromosome.
+	 * 
+	 * @param bases
+	 *            The bases
+	 * @param from
+	 *            The first base of the run
+	 * @param length
+	 *            The length of the run
+	 */
+	static void gap(byte[] bases, int from, int length) {
+		for (int i = from; i < from + length && i < bases.length; i++) {
+			bases[i] = 'N';
+		}
+	}
+
+	/**
+	 * Writes bases into a .bases file.
+	 * 
+	 * @param file
+	 *            The file
+	 * @param bases
+	 *            The bases
+	 * @throws IOException
+	 */
+	static void writeBases(File file, byte[] bases) throws IOException {
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+
+		try {
+			out.write(bases);
+		} finally {
+			out.close();
+		}
+
+		file.deleteOnExit();
+	}
+
+	/**
+	 * Writes bases into a FASTA file with 60 bases per line. Every tenth line
+	 * is soft-masked.
+	 * 
+	 * @param file
+	 *            The file
+	 * @param bases
+	 *            The bases
+	 * @throws IOException
+	 */
+	static void writeFasta(File file, byte[] bases) throws IOException {
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+
+		try {
+
+			out.write((">" + CHROMOSOME_ID + "\n").getBytes("US-ASCII"));
+
+			byte[] line = new byte[60];
+
+			for (int from = 0, n = 0; from < bases.length; from += line.length, n++) {
+
+				int length = Math.min(line.length, bases.length - from);
+
+				for (int i = 0; i < length; i++) {
+					line[i] = n % 10 == 0 ? (byte) Character.toLowerCase(bases[from + i]) : bases[from + i];
+				}
+
+				out.write(line, 0, length);
+				out.write('\n');
+			}
+
+		} finally {
+			out.close();
+		}
+
+		file.deleteOnExit();
+	}
+
+	/**
+	 * Writes a CCDS file with exons spread over a chromosome. Every CDS has
+	 * four exons between 50 and 300 bases long, half of them are on the
+	 * negative strand.
+	 * 
+	 * @param file
+	 *            The file
+	 * @param random
+	 *            The source of randomness
+	 * @param length
+	 *            The length of the chromosome
+	 * @param cdsCount
+	 *            The number of CDS
+	 * @throws IOException
+	 */
+	static void writeCcds(File file, Random random, int length, int cdsCount) throws IOException {
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+
+		try {
+
+			out.write("#chromosome\tnc_accession\tgene\tgene_id\tccds_id\tccds_status\tcds_strand\tcds_from\tcds_to\tcds_locations\tmatch_type");
+			out.newLine();
+
+			// the room of every CDS on the chromosome
+			int room = length / cdsCount;
+
+			for (int i = 0; i < cdsCount; i++) {
+
+				int from = i * room;
+				int position = from;
+
+				StringBuilder locations = new StringBuilder("[");
+
+				for (int e = 0; e < 4; e++) {
+
+					int start = position + random.nextInt(Math.max(1, room / 8));
+					int stop = start + 50 + random.nextInt(250);
+
+					if (e > 0) {
+						locations.append(", ");
+					}
+					locations.append(start).append('-').append(stop);
+
+					position = stop + 1;
+				}
+
+				locations.append("]");
+
+				out.write(CHROMOSOME_ID + "\tNC_0\tG" + i + "\t" + i + "\tCCDS" + i + ".1\tPublic\t" + (i % 2 == 0 ? "+" : "-")
+						+ "\t" + from + "\t" + (position - 1) + "\t" + locations + "\tIdentical");
+				out.newLine();
+			}
+
+		} finally {
+			out.close();
+		}
+
+		file.deleteOnExit();
+	}
+}
@@ -0,0 +1,57 @@
+package glt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the CCDS file into the model, one chromosome at a time.
+ * 
+ * @author michael
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CcdsBenchmark {
+
+	// chromosome 1 has about 3000 CDS
+	@Param({ "3000" })
+	private int cdsCount;
+
+	private Config config = null;
+
+	@Setup
+	public void setup() throws IOException {
+
+		BenchmarkData.quiet();
+
+		File directory = BenchmarkData.directory();
+		BenchmarkData.writeCcds(new File(directory, "CCDS.current.txt"), new Random(1), 200 << 20, this.cdsCount);
+
+		this.config = new Config();
+		this.config.setDirectory(directory.getPath() + File.separator);
+	}
+
+	@Benchmark
+	public List<Exon> compileExons() {
+		return GLT.compileExons(this.config, BenchmarkData.CHROMOSOME_ID);
+	}
+}
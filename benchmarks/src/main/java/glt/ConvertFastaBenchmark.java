@@ -0,0 +1,70 @@
+package glt;
+
+import glt.Config.SoftMasking;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting a FASTA file into a .bases file. Divide the size by the time
+ * for the throughput.
+ * 
+ * @author michael
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConvertFastaBenchmark {
+
+	@Param({ "Keep", "Normalise", "Bitmap" })
+	private SoftMasking softMasking;
+
+	@Param({ "16777216" })
+	private int size;
+
+	private Config config = null;
+
+	@Setup
+	public void setup() throws IOException {
+
+		BenchmarkData.quiet();
+
+		File directory = BenchmarkData.directory();
+
+		this.config = new Config();
+		this.config.setDirectory(directory.getPath() + File.separator);
+		this.config.setInputChromosomeFastaFileName("sample?.fa");
+		this.config.setOutputChromosomeBasesFileName("sample?.bases");
+		this.config.setSoftMasking(this.softMasking);
+
+		String id = BenchmarkData.CHROMOSOME_ID;
+
+		BenchmarkData.writeFasta(new File(this.config.getInputChromosomeFastaFileName(id)), BenchmarkData.bases(new Random(1), this.size));
+
+		new File(this.config.getOutputChromosomeBasesFileName(id)).deleteOnExit();
+		new File(this.config.getOutputChromosomeMaskFileName(id)).deleteOnExit();
+	}
+
+	@Benchmark
+	public void convertFasta() {
+		GLT.convertFasta(this.config, BenchmarkData.CHROMOSOME_ID);
+	}
+}
@@ -0,0 +1,95 @@
+package glt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extracting the letters of all exons of a chromosome from the reference,
+ * one read per exon versus coalesced reads. Every invocation starts with an
+ * empty sequence cache.
+ * 
+ * @author michael
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExtractionBenchmark {
+
+	@Param({ "67108864" })
+	private int size;
+
+	@Param({ "3000" })
+	private int cdsCount;
+
+	private SequenceStore store = null;
+	private List<Exon> exons = null;
+
+	private Config config = new Config();
+
+	@Setup
+	public void setup() throws IOException {
+
+		BenchmarkData.quiet();
+
+		File directory = BenchmarkData.directory();
+		Random random = new Random(1);
+
+		File basesFile = new File(directory, "reference.bases");
+		BenchmarkData.writeBases(basesFile, BenchmarkData.bases(random, this.size));
+		BenchmarkData.writeCcds(new File(directory, "CCDS.current.txt"), random, this.size, this.cdsCount);
+
+		this.config.setDirectory(directory.getPath() + File.separator);
+
+		this.store = SequenceStore.open(basesFile.getPath());
+		this.exons = GLT.compileExons(this.config, BenchmarkData.CHROMOSOME_ID);
+	}
+
+	@Benchmark
+	public long perExon() throws IOException {
+
+		SequenceProvider provider = new SequenceProvider(this.config.getSequenceCacheSize());
+
+		long length = 0;
+
+		for (Exon exon : this.exons) {
+			length += provider.getLetters(this.store, exon).length();
+		}
+
+		return length;
+	}
+
+	@Benchmark
+	public long coalesced() throws IOException {
+
+		SequenceProvider provider = new SequenceProvider(this.config.getSequenceCacheSize());
+
+		new Extractor(this.store, provider, this.config.getCoalesceGap(), this.config.getMaximumReadSize()).extract(this.exons);
+
+		long length = 0;
+
+		for (Exon exon : this.exons) {
+			length += provider.getLetters(this.store, exon).length();
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,102 @@
+package glt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The scalar Kernels against the VectorKernels on the same bases: comparing
+ * an exon with a soft-masked candidate, reverse complementing it, scanning a
+ * block of the chromosome for N and converting it to upper case.
+ * 
+ * The forks add the Vector API, which the VectorKernels need.
+ * 
+ * @author michael
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KernelsBenchmark {
+
+	@Param({ "scalar", "vector" })
+	private String kernels;
+
+	// an exon and the blocks read by the Gaps and the Locators
+	@Param({ "150", "1500", "65536" })
+	private int length;
+
+	private Kernels k = null;
+
+	private byte[] exon = null;
+	private byte[] candidate = null;
+	private byte[] block = null;
+	private byte[] masked = null;
+
+	@Setup
+	public void setup() {
+
+		BenchmarkData.quiet();
+
+		this.k = "vector".equals(this.kernels) ? new VectorKernels() : new Kernels();
+
+		Random random = new Random(1);
+
+		this.exon = BenchmarkData.bases(random, this.length);
+
+		// the same bases soft-masked, so the whole exon has to be compared
+		this.candidate = this.exon.clone();
+		for (int i = 0; i < this.length; i++) {
+			this.candidate[i] = (byte) Character.toLowerCase(this.candidate[i]);
+		}
+
+		// a run of N at the very end, so the whole block is scanned
+		this.block = BenchmarkData.bases(random, this.length);
+		BenchmarkData.gap(this.block, this.length - 1, 1);
+
+		this.masked = this.candidate.clone();
+	}
+
+	@Benchmark
+	public int mismatch() {
+		return this.k.mismatch(this.candidate, 0, this.exon, 0, this.length);
+	}
+
+	@Benchmark
+	public int mismatches() {
+		return this.k.mismatches(this.candidate, 0, this.exon, 0, this.length);
+	}
+
+	@Benchmark
+	public byte[] reverseComplement() {
+		this.k.reverseComplement(this.exon, 0, this.length);
+		return this.exon;
+	}
+
+	@Benchmark
+	public int indexOfN() {
+		return this.k.indexOfN(this.block, 0, this.length);
+	}
+
+	@Benchmark
+	public byte[] upper() {
+		// converting it again and again would only measure bases which are upper case already
+		System.arraycopy(this.candidate, 0, this.masked, 0, this.length);
+		this.k.upper(this.masked, 0, this.length);
+		return this.masked;
+	}
+}
@@ -0,0 +1,112 @@
+package glt;
+
+import glt.Config.LocatorType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Locating a single exon in a whole input chromosome. One exon sits near the
+ * end, the other one is not there at all, so both search (nearly) everything
+ * but the gaps. The indexes and the Bloom filter are built within the setup,
+ * so only their lookups are measured.
+ * 
+ * @author michael
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LocatorBenchmark {
+
+	@Param({ "Scanner", "Window", "Index", "FmIndex" })
+	private LocatorType locatorType;
+
+	// chromosome 21 is about 48M bases long
+	@Param({ "16777216", "50331648" })
+	private int size;
+
+	@Param({ "150" })
+	private int exonLength;
+
+	// the bits per base of the Bloom filter in front of the locator, 0 for none
+	@Param({ "0", "8" })
+	private int bloomFilterBits;
+
+	private Locator locator = null;
+
+	private String hit = null;
+	private String miss = null;
+
+	@Setup
+	public void setup() throws IOException {
+
+		BenchmarkData.quiet();
+
+		File directory = BenchmarkData.directory();
+		Random random = new Random(1);
+
+		byte[] bases = BenchmarkData.bases(random, this.size);
+
+		// a telomere and a centromere
+		BenchmarkData.gap(bases, 0, 10000);
+		BenchmarkData.gap(bases, this.size / 2, this.size / 20);
+
+		File basesFile = new File(directory, "sample.bases");
+		BenchmarkData.writeBases(basesFile, bases);
+
+		this.hit = new String(bases, this.size - 2 * this.exonLength, this.exonLength, StandardCharsets.US_ASCII);
+		this.miss = new String(BenchmarkData.bases(random, this.exonLength), StandardCharsets.US_ASCII);
+
+		Config config = new Config();
+		config.setLocatorType(this.locatorType);
+		config.setBloomFilterBits(this.bloomFilterBits);
+
+		String gapsFileName = basesFile.getPath() + ".gaps";
+		new File(gapsFileName).deleteOnExit();
+		new File(basesFile.getPath() + KmerIndex.EXTENSION).deleteOnExit();
+		new File(basesFile.getPath() + FmIndex.EXTENSION).deleteOnExit();
+
+		Gaps gaps = Gaps.forFile(basesFile.getPath(), gapsFileName, config.getMinimumGapLength());
+		BloomFilter filter = null;
+		if (this.bloomFilterBits > 0) {
+			filter = BloomFilter.build(SequenceStore.open(basesFile.getPath()), this.bloomFilterBits);
+		}
+
+		this.locator = GLT.createLocator(config, basesFile.getPath(), gaps, null, filter);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.locator.close();
+	}
+
+	@Benchmark
+	public long hit() throws IOException {
+		return this.locator.locate(this.hit);
+	}
+
+	@Benchmark
+	public long miss() throws IOException {
+		return this.locator.locate(this.miss);
+	}
+}
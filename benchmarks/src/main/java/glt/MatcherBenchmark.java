@@ -0,0 +1,62 @@
+package glt;
+
+import glt.Config.MatcherType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching an exon against a window of the input chromosome. The exon is
+ * taken from the very end of the window, so the whole window is searched.
+ * 
+ * @author michael
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MatcherBenchmark {
+
+	@Param({ "BoyerMoore", "Horspool", "ShiftOr", "TwoWay", "Adaptive", "Regex" })
+	private MatcherType matcherType;
+
+	@Param({ "20", "150", "1500" })
+	private int patternLength;
+
+	// the default window size of the WindowLocator
+	@Param({ "4194304" })
+	private int textLength;
+
+	private byte[] text = null;
+	private Matcher matcher = null;
+
+	@Setup
+	public void setup() {
+
+		this.text = BenchmarkData.bases(new Random(1), this.textLength);
+
+		String pattern = new String(this.text, this.textLength - this.patternLength, this.patternLength, StandardCharsets.US_ASCII);
+		this.matcher = Matchers.factory(this.matcherType, pattern);
+	}
+
+	@Benchmark
+	public int match() {
+		return this.matcher.match(this.text, 0, this.text.length);
+	}
+}
@@ -0,0 +1,59 @@
+package glt;
+
+/**
+ * Precomputed byte tables for the letters of the .bases files, so the bytes
+ * can be translated without going through Strings or Characters.
+ * 
+ * @author michael
+ * 
+ */
+public class Alphabet {
+
+	// byte -> upper case byte, all other bytes map to themselves
+	static private final byte[] UPPER = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			UPPER[i] = (byte) i;
+		}
+		for (int i = 'a'; i <= 'z'; i++) {
+			UPPER[i] = (byte) (i - 'a' + 'A');
+		}
+	}
+
+	/**
+	 * Returns the upper case letter.
+	 * 
+	 * @param b
+	 *            The letter
+	 * @return the upper case letter
+	 */
+	static public byte upper(byte b) {
+		return UPPER[b & 0xff];
+	}
+
+	/**
+	 * Returns whether the letter is soft-masked, i.e. in lower case.
+	 * 
+	 * @param b
+	 *            The letter
+	 * @return whether the letter is soft-masked
+	 */
+	static public boolean isMasked(byte b) {
+		return b >= 'a' && b <= 'z';
+	}
+
+	/**
+	 * Converts the letters to upper case in place, see Kernels.
+	 * 
+	 * @param bases
+	 *            The letters
+	 * @param from
+	 *            The first letter to convert
+	 * @param to
+	 *            The position after the last letter to convert
+	 */
+	static public void upper(byte[] bases, int from, int to) {
+		Kernels.factory().upper(bases, from, to);
+	}
+}
@@ -0,0 +1,266 @@
+package glt;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Locates bases allowing for a number of edits, i.e. substituted, inserted
+ * and deleted bases, e.g. exons with a SNP or a small indel in the sample.
+ *
+ * The sequenced segments of the chromosome are streamed through Myers'
+ * bit-parallel edit distance, which tells where the best hit ends. The start
+ * is then worked out by aligning the bases against the few bases before the
+ * end. The best hit is the one with the fewest edits and of those the first.
+ *
+ * @author michael
+ *
+ */
+public class ApproximateLocator implements Locator {
+
+	// the bases read at once
+	static private final int BLOCK_SIZE = 1 << 20;
+
+	private SequenceStore store = null;
+	private List<Interval> segments = null;
+	private int budget = 0;
+
+	private byte[] block = new byte[BLOCK_SIZE];
+
+	// the last hit
+	private int length = -1;
+	private int distance = -1;
+	private Strand strand = Strand.Positive;
+
+	/**
+	 * @param budget
+	 *            The largest number of edits
+	 */
+	public ApproximateLocator(SequenceStore store, Gaps gaps, int budget) {
+
+		this.store = store;
+		this.segments = gaps.getSegments();
+		this.budget = budget;
+	}
+
+	@Override
+	public long locate(String letters) throws IOException {
+		return this.locate(letters, null, 0);
+	}
+
+	@Override
+	public long locate(String letters, String reverseComplement) throws IOException {
+		return this.locate(letters, reverseComplement, 0);
+	}
+
+	@Override
+	public Strand getStrand() {
+		return this.strand;
+	}
+
+	/**
+	 * Adds the position of the best hit only, as hits with edits overlap
+	 * each other all over the place.
+	 */
+	@Override
+	public int locateAll(String letters, int cap, LongList positions) throws IOException {
+
+		long position = this.locate(letters);
+
+		if (position < 0 || cap < 1) {
+			return 0;
+		}
+
+		positions.add(position);
+
+		return 1;
+	}
+
+	/**
+	 * Returns the position of the best hit of the letters.
+	 *
+	 * @param letters
+	 *            The bases to look for
+	 * @param reverseComplement
+	 *            Their reverse complement, which is looked for in the same
+	 *            pass, null to only look for the bases
+	 * @param enough
+	 *            The number of edits which can not be beaten anyway, e.g. 1
+	 *            if there is no exact hit. The first hit with that many
+	 *            edits is taken right away.
+	 * @return the position within the chromosome or -1 if there is no hit
+	 *         within the budget. Its length, edits and strand are kept, see
+	 *         getLength(), getDistance() and getStrand().
+	 * @throws IOException
+	 */
+	public long locate(String letters, String reverseComplement, int enough) throws IOException {
+
+		Myers myers = new Myers(letters, this.budget);
+		Myers reverse = reverseComplement != null ? new Myers(reverseComplement, this.budget) : null;
+
+		int shortest = Math.max(1, letters.length() - this.budget);
+
+		long bestEnd = -1;
+		int bestDistance = this.budget + 1;
+		Interval bestSegment = null;
+		Strand bestStrand = Strand.Positive;
+
+		for (Interval segment : this.segments) {
+
+			// too short to hold the letters even with all edits being deletions
+			if (segment.getLength() < shortest) {
+				continue;
+			}
+
+			myers.reset();
+
+			if (reverse != null) {
+				reverse.reset();
+			}
+
+			for (long position = segment.getFrom(); position <= segment.getTo() && bestDistance > enough; position += BLOCK_SIZE) {
+
+				int read = (int) Math.min(BLOCK_SIZE, segment.getTo() - position + 1);
+
+				this.store.read(position, this.block, 0, read);
+
+				for (int i = 0; i < read; i++) {
+
+					byte letter = Alphabet.upper(this.block[i]);
+
+					int distance = myers.next(letter);
+					Strand strand = Strand.Positive;
+
+					if (reverse != null) {
+
+						int reverseDistance = reverse.next(letter);
+
+						if (reverseDistance < distance) {
+							distance = reverseDistance;
+							strand = Strand.Negative;
+						}
+					}
+
+					if (distance < bestDistance) {
+
+						bestEnd = position + i;
+						bestDistance = distance;
+						bestSegment = segment;
+						bestStrand = strand;
+
+						if (distance <= enough) {
+							break;
+						}
+					}
+				}
+			}
+
+			if (bestDistance <= enough) {
+				break;
+			}
+		}
+
+		if (bestEnd < 0) {
+			this.length = -1;
+			this.distance = -1;
+			return -1;
+		}
+
+		long start = this.start(bestStrand == Strand.Positive ? letters : reverseComplement, bestSegment, bestEnd, bestDistance);
+
+		this.length = (int) (bestEnd - start + 1);
+		this.distance = bestDistance;
+		this.strand = bestStrand;
+
+		return start;
+	}
+
+	/**
+	 * Returns the start of the hit ending at the position by aligning the
+	 * letters against the bases before it.
+	 */
+	private long start(String letters, Interval segment, long end, int distance) throws IOException {
+
+		int m = letters.length();
+
+		long from = Math.max(segment.getFrom(), end - m - distance + 1);
+		int n = (int) (end - from + 1);
+
+		byte[] window = new byte[n];
+
+		this.store.read(from, window, 0, n);
+
+		Alphabet.upper(window, 0, n);
+
+		// the edits of the letters ending at row i against bases ending at column j,
+		// and where those bases start. the letters may start anywhere
+		int[] costs = new int[m + 1];
+		int[] starts = new int[m + 1];
+
+		int[] previousCosts = new int[m + 1];
+		int[] previousStarts = new int[m + 1];
+
+		for (int i = 0; i <= m; i++) {
+			previousCosts[i] = i;
+			previousStarts[i] = 0;
+		}
+
+		for (int j = 1; j <= n; j++) {
+
+			costs[0] = 0;
+			starts[0] = j;
+
+			for (int i = 1; i <= m; i++) {
+
+				// a match or substitution first, so the hit is as tight as possible
+				int cost = previousCosts[i - 1] + (letters.charAt(i - 1) == window[j - 1] ? 0 : 1);
+				int start = previousStarts[i - 1];
+
+				if (previousCosts[i] + 1 < cost) {
+					cost = previousCosts[i] + 1;
+					start = previousStarts[i];
+				}
+
+				if (costs[i - 1] + 1 < cost) {
+					cost = costs[i - 1] + 1;
+					start = starts[i - 1];
+				}
+
+				costs[i] = cost;
+				starts[i] = start;
+			}
+
+			int[] swap = previousCosts;
+			previousCosts = costs;
+			costs = swap;
+
+			swap = previousStarts;
+			previousStarts = starts;
+			starts = swap;
+		}
+
+		return from + previousStarts[m];
+	}
+
+	/**
+	 * Returns the number of bases of the last hit within the chromosome.
+	 *
+	 * @return the number of bases or -1 if there has been no hit
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the number of edits of the last hit.
+	 *
+	 * @return the number of edits or -1 if there has been no hit
+	 */
+	public int getDistance() {
+		return this.distance;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the store is shared, so it stays open
+	}
+}
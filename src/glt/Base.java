@@ -5,7 +5,7 @@ import java.util.Map;
 
 public class Base {
 
-	// letter -> Base
+	// letter -> Base, soft-masked (lower case) letters map to the same Base
 	static private Map<String, Base> all = new HashMap<String, Base>();
 	
 	// Base -> complement Base
@@ -34,6 +34,7 @@ public class Base {
 	private Base(String letter) {
 		this.letter = letter;
 		Base.all.put(letter, this);
+		Base.all.put(letter.toLowerCase(), this);
 	}
 	
 	public String getLetter() {
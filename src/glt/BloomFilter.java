@@ -0,0 +1,227 @@
+package glt;
+
+import java.io.IOException;
+
+/**
+ * A blocked Bloom filter of all k-mers of a .bases file. It tells for sure
+ * that some bases are not within the chromosome if any of their k-mers is
+ * missing, so those do not have to be searched at all.
+ *
+ * Every k-mer only sets bits within a single block of 512 bits, i.e. a cache
+ * line, so a lookup costs one cache miss instead of one per bit. k-mers with
+ * other letters than A, C, G and T are left out, soft-masked bases count as
+ * upper case ones. It is built in one pass over the chromosome and shared by
+ * all threads searching it, see build(). It is not kept afterwards, so every
+ * pass over a chromosome builds its own.
+ *
+ * @author michael
+ *
+ */
+public class BloomFilter {
+
+	// long enough to be specific, short enough to fit into a long
+	static public final int K = 20;
+
+	static private final long MASK = (1L << (2 * K)) - 1;
+
+	// the longs of a block
+	static private final int BLOCK_LONGS = 8;
+
+	// the bases read at once while building
+	static private final int READ_SIZE = 1 << 20;
+
+	// letter -> 2-bit code, -1 for anything else
+	static private final byte[] CODES = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			CODES[i] = -1;
+		}
+		CODES['A'] = CODES['a'] = 0;
+		CODES['C'] = CODES['c'] = 1;
+		CODES['G'] = CODES['g'] = 2;
+		CODES['T'] = CODES['t'] = 3;
+	}
+
+	private SequenceStore store = null;
+
+	private long[] bits = null;
+	private int blocks = 0;
+	private int probes = 0;
+
+	private BloomFilter(SequenceStore store, int bitsPerKmer) {
+
+		this.store = store;
+
+		long size = Math.max(1, store.length()) * bitsPerKmer;
+
+		this.blocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_LONGS, (size + 511) / 512);
+		this.bits = new long[this.blocks * BLOCK_LONGS];
+
+		// the best number of probes is ln 2 * the bits per k-mer
+		this.probes = Math.max(1, Math.min(16, (int) Math.round(bitsPerKmer * Math.log(2))));
+	}
+
+	/**
+	 * Adds a k-mer.
+	 *
+	 * @param kmer
+	 *            The 2-bit encoded k-mer
+	 */
+	private void add(long kmer) {
+
+		long hash = BloomFilter.mix(kmer);
+
+		int block = this.block(hash) * BLOCK_LONGS;
+		// the block is taken from the upper half, the bits from the lower one
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 9) | 1;
+
+		for (int i = 0; i < this.probes; i++) {
+			int bit = (h1 + i * h2) & 511;
+			this.bits[block + (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Returns whether the k-mer might be within the chromosome.
+	 *
+	 * @param kmer
+	 *            The 2-bit encoded k-mer
+	 * @return false if it is not within the chromosome for sure
+	 */
+	public boolean mightContain(long kmer) {
+
+		long hash = BloomFilter.mix(kmer);
+
+		int block = this.block(hash) * BLOCK_LONGS;
+		// the block is taken from the upper half, the bits from the lower one
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 9) | 1;
+
+		for (int i = 0; i < this.probes; i++) {
+			int bit = (h1 + i * h2) & 511;
+			if ((this.bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns whether the letters might be within the chromosome, i.e. all
+	 * their k-mers might be.
+	 *
+	 * @param letters
+	 *            The bases in upper case
+	 * @return false if they are not within the chromosome for sure
+	 */
+	public boolean mightContain(String letters) {
+
+		long kmer = 0;
+		int valid = 0; // the number of A, C, G and T in a row so far
+
+		for (int i = 0; i < letters.length(); i++) {
+
+			int code = CODES[letters.charAt(i) & 0xff];
+
+			if (code < 0) {
+				valid = 0;
+				continue;
+			}
+
+			kmer = ((kmer << 2) | code) & MASK;
+
+			if (++valid >= K && !this.mightContain(kmer)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the block of a hash.
+	 */
+	private int block(long hash) {
+		return (int) (((hash >>> 32) * this.blocks) >>> 32);
+	}
+
+	/**
+	 * Adds all k-mers of the chromosome.
+	 */
+	private void build() throws IOException {
+
+		byte[] block = new byte[READ_SIZE];
+
+		long kmer = 0;
+		int valid = 0;
+
+		for (long position = 0; position < this.store.length(); position += READ_SIZE) {
+
+			int read = (int) Math.min(READ_SIZE, this.store.length() - position);
+
+			this.store.read(position, block, 0, read);
+
+			for (int i = 0; i < read; i++) {
+
+				int code = CODES[block[i] & 0xff];
+
+				if (code < 0) {
+					valid = 0;
+					continue;
+				}
+
+				kmer = ((kmer << 2) | code) & MASK;
+
+				if (++valid >= K) {
+					this.add(kmer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the filter of a .bases file.
+	 *
+	 * @param store
+	 *            The .bases file
+	 * @param bitsPerKmer
+	 *            The number of bits per base of the chromosome, the more the
+	 *            fewer false positives
+	 * @return the filter
+	 * @throws IOException
+	 */
+	static public BloomFilter build(SequenceStore store, int bitsPerKmer) throws IOException {
+
+		GLT.logger.info("Building the Bloom filter of " + store.getFileName() + " with " + bitsPerKmer + " bits per " + K + "-mer");
+
+		Metrics.Stage stage = Metrics.stage("buildBloomFilter");
+		stage.start();
+
+		try {
+			BloomFilter filter = new BloomFilter(store, bitsPerKmer);
+			filter.build();
+			return filter;
+		} finally {
+			stage.stop();
+		}
+	}
+
+	/**
+	 * Spreads the bits of a k-mer all over the hash, see MurmurHash3.
+	 */
+	static private long mix(long kmer) {
+
+		long hash = kmer;
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+}
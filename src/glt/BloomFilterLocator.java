@@ -0,0 +1,87 @@
+package glt;
+
+import java.io.IOException;
+
+/**
+ * Asks a BloomFilter of the chromosome before handing the bases to another
+ * Locator, so bases which are not within the chromosome for sure are rejected
+ * without reading it at all.
+ *
+ * @author michael
+ *
+ */
+public class BloomFilterLocator implements Locator {
+
+	private BloomFilter filter = null;
+	private Locator locator = null;
+
+	// the strand of the last hit
+	private Strand strand = Strand.Positive;
+
+	public BloomFilterLocator(BloomFilter filter, Locator locator) {
+
+		this.filter = filter;
+		this.locator = locator;
+	}
+
+	@Override
+	public long locate(String letters) throws IOException {
+
+		if (!this.filter.mightContain(letters)) {
+			Metrics.count("bloomFilter.rejected");
+			return -1;
+		}
+
+		this.strand = Strand.Positive;
+
+		return this.locator.locate(letters);
+	}
+
+	@Override
+	public long locate(String letters, String reverseComplement) throws IOException {
+
+		boolean positive = this.filter.mightContain(letters);
+		boolean negative = this.filter.mightContain(reverseComplement);
+
+		// only the strands which might be there are searched
+		if (positive && negative) {
+			long position = this.locator.locate(letters, reverseComplement);
+			this.strand = this.locator.getStrand();
+			return position;
+		}
+
+		if (positive) {
+			this.strand = Strand.Positive;
+			return this.locator.locate(letters);
+		}
+
+		if (negative) {
+			this.strand = Strand.Negative;
+			return this.locator.locate(reverseComplement);
+		}
+
+		Metrics.count("bloomFilter.rejected");
+		return -1;
+	}
+
+	@Override
+	public int locateAll(String letters, int cap, LongList positions) throws IOException {
+
+		if (!this.filter.mightContain(letters)) {
+			Metrics.count("bloomFilter.rejected");
+			return 0;
+		}
+
+		return this.locator.locateAll(letters, cap, positions);
+	}
+
+	@Override
+	public Strand getStrand() {
+		return this.strand;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.locator.close();
+	}
+}
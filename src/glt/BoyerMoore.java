@@ -1,44 +1,53 @@
 package glt;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Implementation of the Boyer-Moore Algorithm for pattern matching.
  * @author V.Boutchkova
  * 
  * see: http://www.fmi.uni-sofia.bg/fmi/logic/vboutchkova/sources/BoyerMoore_java.html
+ * 
+ * Works on the bytes of the .bases files. The pattern is preprocessed once,
+ * so it can be matched against any number of texts.
  */
-public class BoyerMoore {
+public class BoyerMoore implements Matcher {
   
-  public static final int ALPHABET_SIZE = Character.MAX_VALUE + 1;
+  public static final int ALPHABET_SIZE = 256;
     
-  private String text;
-  private String pattern;
+  private byte[] pattern;
   
   private int[] last;
   private int[] match;
   private int[] suffix;
   
-  public BoyerMoore(String pattern, String text) {
-    this.text = text;
-    this.pattern = pattern;
+  public BoyerMoore(String pattern) {
+    this.pattern = pattern.getBytes(StandardCharsets.US_ASCII);
     last = new int[ALPHABET_SIZE];
-    match = new int[pattern.length()];
-    suffix = new int[pattern.length()];
+    match = new int[this.pattern.length];
+    suffix = new int[this.pattern.length];
+    
+    // Preprocessing
+    computeLast();
+    computeMatch();
+  }
+  
+  @Override
+  public int length() {
+    return pattern.length;
   }
   
   /**
-   * Searches the pattern in the text.
+   * Searches the pattern in text[from..to-1].
    * Returns the position of the first occurrence, if found and -1 otherwise.
    */  
-  public int match() {
-    // Preprocessing
-    computeLast();
-    computeMatch();
-    
+  @Override
+  public int match(byte[] text, int from, int to) {
     // Searching
-    int i = pattern.length() - 1;
-    int j = pattern.length() - 1;    
-    while (i < text.length()) {
-      if (pattern.charAt(j) == text.charAt(i)) {
+    int i = from + pattern.length - 1;
+    int j = pattern.length - 1;    
+    while (i < to) {
+      if (pattern[j] == text[i]) {
         if (j == 0) { 
           //the left-most match is found
           return i;
@@ -46,8 +55,8 @@ public class BoyerMoore {
         j--;
         i--;
       } else { //a difference
-          i += pattern.length() - j - 1 + Math.max(j - last[text.charAt(i)], match[j]);
-          j = pattern.length() - 1;
+          i += pattern.length - j - 1 + Math.max(j - last[text[i] & 0xff], match[j]);
+          j = pattern.length - 1;
       }
     }
     return -1;    
@@ -67,9 +76,9 @@ public class BoyerMoore {
     for (int k = 0; k < last.length; k++) { 
       last[k] = -1;
     }
-    for (int j = pattern.length()-1; j >= 0; j--) {
-      if (last[pattern.charAt(j)] < 0) {
-        last[pattern.charAt(j)] = j;
+    for (int j = pattern.length-1; j >= 0; j--) {
+      if (last[pattern[j] & 0xff] < 0) {
+        last[pattern[j] & 0xff] = j;
       }
     }
   }
@@ -118,12 +127,12 @@ public class BoyerMoore {
     //Uses the suffix array to compute each shift s such that
     //p[0..m-s-1] is a suffix of p[j+1..m-1] with j < s < m
     //and stores the minimum of this shift and the previously computed one.
-    if (suffix[0] < pattern.length()) {
+    if (suffix[0] < pattern.length) {
       for (int j = suffix[0] - 1; j >= 0; j--) {
         if (suffix[0] < match[j]) { match[j] = suffix[0]; }
       }
       int j = suffix[0];
-      for (int k = suffix[j]; k < pattern.length(); k = suffix[k]) {
+      for (int k = suffix[j]; k < pattern.length; k = suffix[k]) {
         while (j < k) {
           if (match[j] > k) match[j] = k;
           j++;
@@ -147,10 +156,10 @@ public class BoyerMoore {
     int j = suffix.length - 1;
     //suffix[i] = m - the length of the longest prefix of p[i..m-1]
     for (int i = suffix.length - 2; i >= 0; i--) { 
-      while (j < suffix.length - 1 && pattern.charAt(j) != pattern.charAt(i)) {
+      while (j < suffix.length - 1 && pattern[j] != pattern[i]) {
         j = suffix[j + 1] - 1; 
       }
-      if (pattern.charAt(j) == pattern.charAt(i)) { j--; }
+      if (pattern[j] == pattern[i]) { j--; }
       suffix[i] = j + 1;
     }
     
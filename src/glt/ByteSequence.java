@@ -0,0 +1,43 @@
+package glt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CharSequence view of a range of bytes, so regular expressions can run on
+ * the bytes of a .bases file without converting them into a String first.
+ * 
+ * @author michael
+ * 
+ */
+public class ByteSequence implements CharSequence {
+
+	private byte[] bytes = null;
+	private int from = 0;
+	private int to = 0;
+
+	public ByteSequence(byte[] bytes, int from, int to) {
+		this.bytes = bytes;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public int length() {
+		return this.to - this.from;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char) (this.bytes[this.from + index] & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new ByteSequence(this.bytes, this.from + start, this.from + end);
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.bytes, this.from, this.to - this.from, StandardCharsets.US_ASCII);
+	}
+}
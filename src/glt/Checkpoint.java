@@ -0,0 +1,319 @@
+package glt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An append-only log of the exons located in a chromosome, so a run which
+ * has been killed can be resumed without searching them again.
+ * 
+ * Each line is either [exon ID],[position] with the position -1 if the exon
+ * could not be found, [exon ID],[position],[length],[edits] if it has only
+ * been found allowing for edits, or "done" once the chromosome has been
+ * exported. The log is synced to disk after every batch of exons. It can be
+ * shared by the threads searching a chromosome.
+ * 
+ * The first line is a header starting with #, which holds the length and the
+ * modification time of the input chromosome and the options changing where
+ * the exons are found, see header(). A log with another header is not
+ * resumed, but started from scratch.
+ * 
+ * @author michael
+ * 
+ */
+public class Checkpoint {
+
+	static private final String DONE = "done";
+	static private final String HEADER = "#";
+
+	// exon ID -> position
+	private final Map<String, Integer> locations = new HashMap<String, Integer>();
+	// exon ID -> length within the input chromosome and edits, for approximate hits only
+	private final Map<String, int[]> approximate = new HashMap<String, int[]>();
+	private boolean done = false;
+
+	private FileOutputStream fos = null;
+	private BufferedWriter out = null;
+
+	private int batchSize = 0; // the number of exons between two syncs
+	private int pending = 0; // the number of exons since the last sync
+
+	private Checkpoint(String fileName, String header, boolean resume, int batchSize) throws IOException {
+
+		File file = new File(fileName);
+
+		this.batchSize = batchSize;
+
+		// the same as a .gaps or .sha256 file of another chromosome, it is worthless
+		if (resume && header != null && file.exists() && !header.equals(Checkpoint.readHeader(file))) {
+			GLT.logger.warning("The checkpoint " + fileName + " has been written for another input or other options, starting from scratch");
+			resume = false;
+		}
+
+		boolean fresh = !resume || !file.exists();
+
+		if (resume && file.exists()) {
+
+			BufferedReader in = new BufferedReader(new FileReader(file));
+
+			try {
+
+				String line = null;
+
+				while ((line = in.readLine()) != null) {
+
+					if (line.equals(DONE)) {
+						this.done = true;
+					} else if (!line.startsWith(HEADER)) {
+
+						String[] fields = line.split(",");
+
+						// the last line might have been cut off when the run was killed
+						if (fields.length == 2 || fields.length == 4) {
+							try {
+								int position = Integer.parseInt(fields[1]);
+
+								if (fields.length == 4) {
+									this.approximate.put(fields[0], new int[] { Integer.parseInt(fields[2]), Integer.parseInt(fields[3]) });
+								} else {
+									this.approximate.remove(fields[0]);
+								}
+
+								this.locations.put(fields[0], position);
+							} catch (NumberFormatException e) {
+								GLT.logger.warning("Ignoring broken line in " + fileName);
+							}
+						}
+					}
+				}
+
+			} finally {
+				in.close();
+			}
+
+			GLT.logger.info("Resuming with " + this.locations.size() + " located exons from " + fileName);
+		}
+
+		// without resuming we start from scratch
+		this.fos = new FileOutputStream(file, resume);
+		this.out = new BufferedWriter(new OutputStreamWriter(this.fos, StandardCharsets.US_ASCII));
+
+		// finish a line which has been cut off, so it does not swallow the next one
+		if (resume && !Checkpoint.endsWithNewLine(file)) {
+			this.out.newLine();
+		}
+
+		if (fresh && header != null) {
+			this.out.write(header);
+			this.out.newLine();
+		}
+	}
+
+	/**
+	 * Returns whether the chromosome has been exported completely.
+	 * 
+	 * @return whether the chromosome has been exported completely.
+	 */
+	public synchronized boolean isDone() {
+		return this.done;
+	}
+
+	public synchronized boolean has(Exon exon) {
+		return this.locations.containsKey(exon.getId());
+	}
+
+	/**
+	 * Returns where the exon has been located before.
+	 * 
+	 * @param exon
+	 *            The exon
+	 * @return the position within the input chromosome or -1 if it could not
+	 *         be found.
+	 */
+	public synchronized int get(Exon exon) {
+		return this.locations.get(exon.getId());
+	}
+
+	/**
+	 * Returns the number of bases an exon located before takes within the
+	 * input chromosome.
+	 * 
+	 * @param exon
+	 *            The exon
+	 * @return the length of the approximate hit, the length of the exon
+	 *         otherwise
+	 */
+	public synchronized int getLength(Exon exon) {
+		int[] lengthEdits = this.approximate.get(exon.getId());
+		return lengthEdits != null ? lengthEdits[0] : exon.getLength();
+	}
+
+	/**
+	 * Returns the number of edits of an exon located before.
+	 * 
+	 * @param exon
+	 *            The exon
+	 * @return the edits of the approximate hit, 0 for an exact one
+	 */
+	public synchronized int getEdits(Exon exon) {
+		int[] lengthEdits = this.approximate.get(exon.getId());
+		return lengthEdits != null ? lengthEdits[1] : 0;
+	}
+
+	/**
+	 * Logs where the exon has been located.
+	 * 
+	 * @param exon
+	 *            The exon
+	 * @param position
+	 *            The position within the input chromosome or -1 if it could
+	 *            not be found.
+	 * @throws IOException
+	 */
+	public synchronized void put(Exon exon, int position) throws IOException {
+		this.put(exon, position, exon.getLength(), 0);
+	}
+
+	/**
+	 * Logs where the exon has been located allowing for edits.
+	 * 
+	 * @param exon
+	 *            The exon
+	 * @param position
+	 *            The position within the input chromosome or -1 if it could
+	 *            not be found.
+	 * @param length
+	 *            The number of bases it takes within the input chromosome
+	 * @param edits
+	 *            The number of edits, 0 for an exact hit
+	 * @throws IOException
+	 */
+	public synchronized void put(Exon exon, int position, int length, int edits) throws IOException {
+
+		this.locations.put(exon.getId(), position);
+
+		if (edits > 0) {
+			this.approximate.put(exon.getId(), new int[] { length, edits });
+			this.out.write(exon.getId() + "," + position + "," + length + "," + edits);
+		} else {
+			this.approximate.remove(exon.getId());
+			this.out.write(exon.getId() + "," + position);
+		}
+
+		this.out.newLine();
+
+		if (++this.pending >= this.batchSize) {
+			this.sync();
+		}
+	}
+
+	/**
+	 * Logs that the chromosome has been exported completely.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void done() throws IOException {
+
+		this.done = true;
+
+		this.out.write(DONE);
+		this.out.newLine();
+
+		this.sync();
+	}
+
+	/**
+	 * Writes everything logged so far to disk.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+
+		this.out.flush();
+		this.fos.getFD().sync();
+
+		this.pending = 0;
+	}
+
+	public synchronized void close() throws IOException {
+		this.sync();
+		this.out.close();
+	}
+
+	/**
+	 * Returns the first line of a log, null if it is empty.
+	 */
+	static private String readHeader(File file) throws IOException {
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		try {
+			return in.readLine();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the header of the log of a chromosome of a sample. It changes
+	 * whenever the input chromosome or an option changing the result does.
+	 * 
+	 * @param config
+	 *            The configuration of the sample
+	 * @param chromosomeId
+	 *            The chromosome
+	 * @return the header
+	 */
+	static public String header(Config config, String chromosomeId) {
+
+		File basesFile = new File(config.getInputChromosomeBasesFileName(chromosomeId));
+
+		return HEADER + basesFile.length() + "," + basesFile.lastModified() + "," + config.isBothStrands() + ","
+				+ config.getLocatorType() + "," + config.getMinimumGapLength() + "," + config.getMaxEdits();
+	}
+
+	static private boolean endsWithNewLine(File file) throws IOException {
+
+		if (file.length() == 0) {
+			return true;
+		}
+
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+
+		try {
+			in.seek(file.length() - 1);
+			return in.read() == '\n';
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens the log.
+	 * 
+	 * @param fileName
+	 *            The log file
+	 * @param header
+	 *            The header the log must start with to be resumed, see
+	 *            header(), null to take it as it is
+	 * @param resume
+	 *            Whether to carry on with what has been logged before, or to
+	 *            start from scratch.
+	 * @param batchSize
+	 *            The number of exons between two syncs to disk
+	 * @return the log
+	 * @throws IOException
+	 */
+	static public Checkpoint open(String fileName, String header, boolean resume, int batchSize) throws IOException {
+		return new Checkpoint(fileName, header, resume, batchSize);
+	}
+}
@@ -1,9 +1,17 @@
 package glt;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class Config {
+public class Config implements Cloneable {
+
+	/**
+	 * What happens to soft-masked (lower case) bases when converting FASTA files
+	 */
+	static public enum SoftMasking {
+		Keep, Normalise, Bitmap
+	}
 
 	private String directory = "./";
 
@@ -16,6 +24,83 @@ public class Config {
 	private String outputExonBasesFileName = "chromosome?.exons.bases";
 	private String outputExonLocationsFileName = "chromosome?.exons.locations";
 
+	/**
+	 * How the exons are located in the input chromosome
+	 */
+	static public enum LocatorType {
+		Scanner, Window, Index, FmIndex
+	}
+
+	/**
+	 * The algorithm matching an exon against the input chromosome
+	 */
+	static public enum MatcherType {
+		Regex, BoyerMoore, Horspool, ShiftOr, TwoWay, Adaptive
+	}
+
+	private SoftMasking softMasking = SoftMasking.Keep;
+
+	// runs of N at least this long are skipped when searching, 0 to search everything
+	private int minimumGapLength = 1000;
+
+	private LocatorType locatorType = LocatorType.Scanner;
+	private MatcherType matcherType = MatcherType.Adaptive;
+
+	// exons at most this many bytes apart are read from the reference in one go
+	private int coalesceGap = 64 << 10;
+	// the largest single read from the reference in bytes
+	private int maximumReadSize = 16 << 20;
+
+	// the maximum size of the exon letters kept in memory in bytes
+	private long sequenceCacheSize = 64 << 20;
+
+	// the directory remembering exon locations across runs, null if there is none
+	private String locationCacheDirectory = null;
+
+	// carry on with the checkpoints of a previous run
+	private boolean resume = false;
+	// the number of located exons between two checkpoints
+	private int checkpointInterval = 256;
+
+	// the seconds between two progress lines, 0 for none
+	private int progressInterval = 60;
+	// the JSON summary of the metrics, null for none
+	private String metricsFileName = null;
+
+	// the size of the window streaming the input chromosome in bytes
+	private int windowSize = 4 << 20;
+
+	// the number of edits an exon may have in the input chromosome, 0 for exact hits only
+	private int maxEdits = 0;
+
+	// whether the exons are looked for on both strands of the input chromosome
+	private boolean bothStrands = false;
+
+	// the number of copies of an exon which are looked for, 1 for the first one only
+	private int maxHits = 1;
+
+	// whether the exons which have been found are compared with the reference
+	private boolean variants = false;
+
+	// the presence of the exons across a batch of samples, null for none
+	private String exonMatrixFileName = null;
+	// the name of the sample within a batch, null for a single one
+	private String sampleName = null;
+
+	// the bits per base of the Bloom filter of the input chromosome, 0 for none
+	private int bloomFilterBits = 0;
+
+	// the length of the k-mers of the index of the input chromosome
+	private int kmerLength = 12;
+
+	// the number of samples of a batch worked on at the same time
+	private int sampleThreads = 1;
+
+	// the number of threads searching the exons of a single chromosome
+	private int searchThreads = 1;
+	// the number of exons a search task works on
+	private int searchBatchSize = 32;
+
 	// list of all ChromosomeIds that should be processed
 	private List<String> chromosomeIds = new ArrayList<String>();
 	
@@ -28,6 +113,19 @@ public class Config {
 		this.chromosomeIds.add("Y");
 	}
 
+	/**
+	 * Returns a copy, e.g. for a single sample of a batch.
+	 * The list of chromosome IDs is shared.
+	 * @return Config
+	 */
+	public Config copy() {
+		try {
+			return (Config) this.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * Sets all Chromosome IDs that should be processed
 	 * @return Config
@@ -131,10 +229,354 @@ public class Config {
 		return directory + outputExonLocationsFileName.replace("?", id);
 	}
 	
+	/**
+	 * Returns the name of the bitmap file holding the soft-masked positions of the output chromosome.
+	 * @param id The Chromosome ID
+	 * @return the name of the bitmap file
+	 */
+	public String getOutputChromosomeMaskFileName(String id) {
+		return this.getOutputChromosomeBasesFileName(id) + ".mask";
+	}
+
+	/**
+	 * Returns the name of the file listing the SNPs and indels of a synthetic input chromosome.
+	 * @param id The Chromosome ID
+	 * @return the name of the variants file
+	 */
+	public String getInputChromosomeVariantsFileName(String id) {
+		return this.getInputChromosomeFastaFileName(id) + ".variants";
+	}
+
+	public Config setSoftMasking(SoftMasking softMasking) {
+		this.softMasking = softMasking;
+		return this;
+	}
+
+	public SoftMasking getSoftMasking() {
+		return this.softMasking;
+	}
+
+	/**
+	 * Returns the name of the sidecar file holding the gaps of the input chromosome.
+	 * @param id The Chromosome ID
+	 * @return the name of the sidecar file
+	 */
+	public String getInputChromosomeGapsFileName(String id) {
+		return this.getInputChromosomeBasesFileName(id) + ".gaps";
+	}
+
+	public Config setMinimumGapLength(int length) {
+		minimumGapLength = length;
+		return this;
+	}
+
+	public int getMinimumGapLength() {
+		return this.minimumGapLength;
+	}
+	
+	public Config setLocatorType(LocatorType locatorType) {
+		this.locatorType = locatorType;
+		return this;
+	}
+
+	public LocatorType getLocatorType() {
+		return this.locatorType;
+	}
+
+	public Config setMatcherType(MatcherType matcherType) {
+		this.matcherType = matcherType;
+		return this;
+	}
+
+	public MatcherType getMatcherType() {
+		return this.matcherType;
+	}
+
+	public Config setWindowSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("the window size must be at least 1, not " + size);
+		}
+		windowSize = size;
+		return this;
+	}
+
+	public int getWindowSize() {
+		return this.windowSize;
+	}
+
+	public Config setMaxEdits(int edits) {
+		maxEdits = edits;
+		return this;
+	}
+
+	public int getMaxEdits() {
+		return this.maxEdits;
+	}
+
+	public Config setBothStrands(boolean both) {
+		bothStrands = both;
+		return this;
+	}
+
+	public boolean isBothStrands() {
+		return this.bothStrands;
+	}
+
+	public Config setVariants(boolean variants) {
+		this.variants = variants;
+		return this;
+	}
+
+	public boolean isVariants() {
+		return this.variants;
+	}
+
+	public Config setMaxHits(int hits) {
+		maxHits = hits;
+		return this;
+	}
+
+	public int getMaxHits() {
+		return this.maxHits;
+	}
+
+	public Config setBloomFilterBits(int bits) {
+		if (bits < 0) {
+			throw new IllegalArgumentException("the bits per base of the Bloom filter must not be negative, not " + bits);
+		}
+		bloomFilterBits = bits;
+		return this;
+	}
+
+	public int getBloomFilterBits() {
+		return this.bloomFilterBits;
+	}
+
+	public Config setKmerLength(int k) {
+		// 4^k + 1 offsets must fit into an int array
+		if (k < 1 || k > 13) {
+			throw new IllegalArgumentException("the length of the k-mers must be between 1 and 13, not " + k);
+		}
+		kmerLength = k;
+		return this;
+	}
+
+	public int getKmerLength() {
+		return this.kmerLength;
+	}
+
+	public Config setSampleThreads(int threads) {
+		sampleThreads = threads;
+		return this;
+	}
+
+	public int getSampleThreads() {
+		return this.sampleThreads;
+	}
+
+	public Config setSearchThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("the number of search threads must be at least 1, not " + threads);
+		}
+		searchThreads = threads;
+		return this;
+	}
+
+	public int getSearchThreads() {
+		return this.searchThreads;
+	}
+
+	public Config setSearchBatchSize(int size) {
+		// no batches at all would never empty the queue
+		if (size < 1) {
+			throw new IllegalArgumentException("the search batch size must be at least 1, not " + size);
+		}
+		searchBatchSize = size;
+		return this;
+	}
+
+	public int getSearchBatchSize() {
+		return this.searchBatchSize;
+	}
+	
+	public Config setCoalesceGap(int gap) {
+		if (gap < 0) {
+			throw new IllegalArgumentException("the gap between exons read together must not be negative, not " + gap);
+		}
+		coalesceGap = gap;
+		return this;
+	}
+
+	public int getCoalesceGap() {
+		return this.coalesceGap;
+	}
+
+	public Config setMaximumReadSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("the largest read must be at least 1 byte, not " + size);
+		}
+		maximumReadSize = size;
+		return this;
+	}
+
+	public int getMaximumReadSize() {
+		return this.maximumReadSize;
+	}
+	
+	public Config setSequenceCacheSize(long size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("the size of the sequence cache must not be negative, not " + size);
+		}
+		sequenceCacheSize = size;
+		return this;
+	}
+
+	public long getSequenceCacheSize() {
+		return this.sequenceCacheSize;
+	}
+	
+	/**
+	 * Returns the name of the sidecar file holding the content hash of the input chromosome.
+	 * @param id The Chromosome ID
+	 * @return the name of the sidecar file
+	 */
+	public String getInputChromosomeHashFileName(String id) {
+		return this.getInputChromosomeBasesFileName(id) + ".sha256";
+	}
+
+	public Config setLocationCacheDirectory(String dir) {
+		locationCacheDirectory = dir;
+		return this;
+	}
+
+	public String getLocationCacheDirectory() {
+		return this.locationCacheDirectory;
+	}
+
+	public boolean hasLocationCache() {
+		return this.locationCacheDirectory != null;
+	}
+	
+	/**
+	 * Returns the name of the checkpoint log of the located exons.
+	 * @param id The Chromosome ID
+	 * @return the name of the checkpoint log
+	 */
+	public String getCheckpointFileName(String id) {
+		return this.getOutputExonLocationsFileName(id) + ".checkpoint";
+	}
+
+	/**
+	 * Returns the name of the copy numbers of the exons.
+	 * @param id The Chromosome ID
+	 * @return the name of the copy numbers
+	 */
+	public String getCopiesFileName(String id) {
+		return this.getOutputExonLocationsFileName(id) + ".copies";
+	}
+
+	/**
+	 * Returns the name of the variant summary of the exons.
+	 * @param id The Chromosome ID
+	 * @return the name of the variant summary
+	 */
+	public String getVariantsFileName(String id) {
+		return this.getOutputExonLocationsFileName(id) + ".variants";
+	}
+
+	public Config setExonMatrixFileName(String fn) {
+		this.exonMatrixFileName = fn;
+		return this;
+	}
+
+	/**
+	 * Returns the name of the matrix of the exons present in each sample.
+	 * @param id The Chromosome ID
+	 * @return the name of the matrix, null if there is none
+	 */
+	public String getExonMatrixFileName(String id) {
+		return this.exonMatrixFileName != null ? this.directory + this.exonMatrixFileName.replace("?", id) : null;
+	}
+
+	public boolean isExonMatrix() {
+		return this.exonMatrixFileName != null;
+	}
+
+	public Config setSampleName(String name) {
+		this.sampleName = name;
+		return this;
+	}
+
+	public String getSampleName() {
+		return this.sampleName;
+	}
+
+	public Config setResume(boolean resume) {
+		this.resume = resume;
+		return this;
+	}
+
+	public boolean isResume() {
+		return this.resume;
+	}
+
+	public Config setCheckpointInterval(int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("the number of exons between two checkpoints must be at least 1, not " + interval);
+		}
+		checkpointInterval = interval;
+		return this;
+	}
+
+	public int getCheckpointInterval() {
+		return this.checkpointInterval;
+	}
+	
+	public Config setProgressInterval(int seconds) {
+		progressInterval = seconds;
+		return this;
+	}
+
+	public int getProgressInterval() {
+		return this.progressInterval;
+	}
+
+	public Config setMetricsFileName(String fn) {
+		metricsFileName = fn;
+		return this;
+	}
+
+	public String getMetricsFileName() {
+		return this.metricsFileName;
+	}
+	
 	static public Config fromArgs(String[] args) {
 		
 		Config config = new Config();
 		
 		return config;
 	}
+
+	/**
+	 * Returns the value of an option, e.g. of -l, by its name regardless of
+	 * the case.
+	 * 
+	 * @param values
+	 *            The values of the option
+	 * @param name
+	 *            The name as given
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *             if there is no value with that name
+	 */
+	static public <T extends Enum<T>> T valueOf(T[] values, String name) {
+
+		for (T value : values) {
+			if (value.name().equalsIgnoreCase(name)) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("unknown value " + name + ", expected one of " + Arrays.toString(values));
+	}
 }
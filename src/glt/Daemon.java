@@ -0,0 +1,640 @@
+package glt;
+
+import glt.Config.LocatorType;
+import glt.Config.MatcherType;
+import glt.Config.SoftMasking;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the compiled annotation and the prepared reference exons resident and
+ * works on jobs submitted as lines of text, either through a Unix domain
+ * socket or stdin. Every chromosome is only compiled and prepared once, by
+ * the first job needing it, so later jobs only pay for the actual work.
+ *
+ * Every command is answered with any number of lines, the last one starting
+ * with "ok" or "error":
+ *
+ * <pre>
+ * ee [reference] [input] [exon.bases] [exon.locations] [c=1,2] [l=window] [m=regex] [w=n] [k=n] [e=n] [strands] [hits=n] [variants] [bloom=n] [p=n] [batch=n] [g=n] [cache=dir] [resume] [checkpoint=n] [coalesce=n] [readsize=n]
+ * cf [fasta] [bases] [c=1,2] [s=normalise]
+ * status [job]
+ * wait [job]
+ * shutdown
+ * </pre>
+ *
+ * The file names are templates as on the command line, relative to the
+ * working directory of the daemon. ee and cf answer with the number of the
+ * queued job, status with a line per job. Only the last HISTORY finished jobs
+ * are kept, older ones are unknown to status and wait.
+ *
+ * @author michael
+ *
+ */
+public class Daemon {
+
+	// the number of finished jobs which are kept for status and wait
+	static private final int HISTORY = 1000;
+
+	/**
+	 * Where a job is
+	 */
+	static public enum State {
+		Queued, Running, Done, Failed
+	}
+
+	/**
+	 * The compiled chromosome and the Matchers prepared for one reference.
+	 */
+	static private class Prepared {
+
+		private Chromosome chromosome = null;
+		private Map<String, Matcher> matchers = null;
+
+		private Prepared(Chromosome chromosome, Map<String, Matcher> matchers) {
+			this.chromosome = chromosome;
+			this.matchers = matchers;
+		}
+	}
+
+	/**
+	 * A submitted command.
+	 */
+	private class Job implements Runnable {
+
+		private int id = 0;
+		private String kind = null; // ee or cf
+		private String command = null;
+		private Config config = null;
+
+		private State state = State.Queued;
+		private String message = "";
+		private long submitted = System.nanoTime();
+		private long started = 0;
+		private long finished = 0;
+
+		private Job(int id, String kind, String command, Config config) {
+			this.id = id;
+			this.kind = kind;
+			this.command = command;
+			this.config = config;
+		}
+
+		@Override
+		public void run() {
+
+			this.setState(State.Running, "");
+
+			boolean succeeded = false;
+
+			// an Error, e.g. running out of memory, goes on to the worker, but the job must not stay running
+			try {
+				succeeded = this.kind.equals("cf") ? Daemon.this.convert(this.config) : Daemon.this.export(this.config);
+			} catch (RuntimeException e) {
+				GLT.logger.severe("Job " + this.id + " failed: " + e);
+			} finally {
+				this.setState(succeeded ? State.Done : State.Failed, succeeded ? "" : "see the log");
+			}
+		}
+
+		private synchronized void setState(State state, String message) {
+
+			this.state = state;
+			this.message = message;
+
+			if (state == State.Running) {
+				this.started = System.nanoTime();
+			} else if (state != State.Queued) {
+				this.finished = System.nanoTime();
+				this.notifyAll();
+			}
+		}
+
+		private synchronized boolean isFinished() {
+			return this.state == State.Done || this.state == State.Failed;
+		}
+
+		/**
+		 * Waits until the job has finished.
+		 */
+		private synchronized void await() throws InterruptedException {
+			while (!this.isFinished()) {
+				this.wait();
+			}
+		}
+
+		@Override
+		public synchronized String toString() {
+
+			long now = System.nanoTime();
+			double seconds = 0;
+
+			switch (this.state) {
+			case Queued:
+				seconds = (now - this.submitted) / 1e9;
+				break;
+			case Running:
+				seconds = (now - this.started) / 1e9;
+				break;
+			default:
+				seconds = (this.finished - this.started) / 1e9;
+				break;
+			}
+
+			return String.format("job %d %s %.1fs %s%s", this.id, this.state.toString().toLowerCase(), seconds,
+					this.command, this.message.length() > 0 ? ": " + this.message : "");
+		}
+	}
+
+	private Config config = null;
+	private ThreadPoolExecutor workers = null;
+
+	// job number -> job, in the order they have been submitted
+	private final Map<Integer, Job> jobs = new LinkedHashMap<Integer, Job>();
+	private int nextId = 1;
+
+	// chromosome ID -> the compiled model, which is shared by all references
+	private final ConcurrentHashMap<String, FutureTask<Chromosome>> chromosomes = new ConcurrentHashMap<String, FutureTask<Chromosome>>();
+
+	// chromosome ID, reference, locator and matcher -> what has been prepared for them
+	private final ConcurrentHashMap<String, FutureTask<Prepared>> prepared = new ConcurrentHashMap<String, FutureTask<Prepared>>();
+
+	private ServerSocketChannel server = null;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a daemon.
+	 *
+	 * @param config
+	 *            The configuration every job starts with
+	 * @param workers
+	 *            The number of jobs worked on at the same time
+	 * @param queueSize
+	 *            The number of jobs waiting for a worker at most, any more are
+	 *            rejected
+	 */
+	public Daemon(Config config, int workers, int queueSize) {
+
+		this.config = config;
+		this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize));
+	}
+
+	/**
+	 * Answers the commands read from stdin on stdout until stdin is closed or
+	 * the daemon is shut down.
+	 *
+	 * @throws IOException
+	 */
+	public void serve() throws IOException {
+
+		GLT.logger.info("Waiting for jobs on stdin");
+
+		this.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+				new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+		this.shutdown();
+	}
+
+	/**
+	 * Answers the commands of any number of clients connecting to a Unix
+	 * domain socket until the daemon is shut down.
+	 *
+	 * @param socketFileName
+	 *            The file of the socket, it is replaced if it exists
+	 * @throws IOException
+	 */
+	public void serve(String socketFileName) throws IOException {
+
+		Path path = Path.of(socketFileName);
+		Files.deleteIfExists(path);
+
+		this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		this.server.bind(UnixDomainSocketAddress.of(path));
+
+		GLT.logger.info("Waiting for jobs on " + socketFileName);
+
+		try {
+
+			while (this.running) {
+
+				final SocketChannel client;
+
+				try {
+					client = this.server.accept();
+				} catch (IOException e) {
+					// closed by shutdown
+					break;
+				}
+
+				Thread thread = new Thread("client") {
+					@Override
+					public void run() {
+						try {
+							Daemon.this.serve(new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8)),
+									Channels.newWriter(client, StandardCharsets.UTF_8));
+							client.close();
+						} catch (IOException e) {
+							System.err.println("I/O error");
+							System.err.println(e.getLocalizedMessage());
+						}
+					}
+				};
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+		} finally {
+			this.server.close();
+			Files.deleteIfExists(path);
+		}
+
+		this.shutdown();
+	}
+
+	/**
+	 * Stops accepting jobs and waits for the submitted ones.
+	 */
+	public void shutdown() {
+
+		this.running = false;
+
+		if (this.server != null) {
+			try {
+				this.server.close();
+			} catch (IOException e) {
+				System.err.println("I/O error");
+				System.err.println(e.getLocalizedMessage());
+			}
+		}
+
+		this.workers.shutdown();
+
+		try {
+			this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void serve(BufferedReader in, Writer out) throws IOException {
+
+		String line = null;
+
+		while (this.running && (line = in.readLine()) != null) {
+
+			line = line.trim();
+
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+
+			out.write(this.execute(line));
+			out.flush();
+		}
+	}
+
+	/**
+	 * Executes a single command.
+	 *
+	 * @param line
+	 *            The command
+	 * @return the answer, one or more lines
+	 */
+	public String execute(String line) {
+
+		List<String> words = new ArrayList<String>(Arrays.asList(line.split("\\s+")));
+		String command = words.remove(0).toLowerCase();
+
+		try {
+
+			switch (command) {
+			case "ee":
+				return this.submit(command, line, this.parse(words, 4));
+			case "cf":
+				return this.submit(command, line, this.parse(words, 2));
+			case "status":
+				return this.status(words);
+			case "wait":
+				this.job(words).await();
+				return "ok " + this.job(words) + "\n";
+			case "shutdown":
+				// answer first, the jobs may take a while
+				new Thread("shutdown") {
+					@Override
+					public void run() {
+						Daemon.this.shutdown();
+					}
+				}.start();
+				return "ok shutting down\n";
+			default:
+				return "error unknown command " + command + "\n";
+			}
+
+		} catch (IllegalArgumentException e) {
+			return "error " + e.getMessage() + "\n";
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return "error interrupted\n";
+		}
+	}
+
+	private String submit(String kind, String command, Config config) {
+
+		Job job = null;
+
+		synchronized (this.jobs) {
+
+			if (!this.running) {
+				return "error shutting down\n";
+			}
+
+			job = new Job(this.nextId++, kind, command, config);
+
+			try {
+				this.workers.execute(job);
+			} catch (RejectedExecutionException e) {
+				return "error too many jobs waiting\n";
+			}
+
+			this.jobs.put(job.id, job);
+
+			this.forget();
+		}
+
+		return "ok " + job.id + "\n";
+	}
+
+	/**
+	 * Drops the oldest finished jobs beyond the last HISTORY ones. The caller
+	 * holds the lock of the jobs.
+	 */
+	private void forget() {
+
+		int finished = 0;
+
+		for (Job job : this.jobs.values()) {
+			if (job.isFinished()) {
+				finished++;
+			}
+		}
+
+		for (Iterator<Job> i = this.jobs.values().iterator(); i.hasNext() && finished > HISTORY;) {
+			if (i.next().isFinished()) {
+				i.remove();
+				finished--;
+			}
+		}
+	}
+
+	private String status(List<String> words) {
+
+		StringBuilder sb = new StringBuilder();
+
+		if (words.isEmpty()) {
+
+			synchronized (this.jobs) {
+
+				for (Job job : this.jobs.values()) {
+					sb.append(job).append("\n");
+				}
+
+				sb.append(String.format("ok %d jobs, %d running, %d waiting\n", this.jobs.size(),
+						this.workers.getActiveCount(), this.workers.getQueue().size()));
+			}
+
+		} else {
+			sb.append("ok ").append(this.job(words)).append("\n");
+		}
+
+		return sb.toString();
+	}
+
+	private Job job(List<String> words) {
+
+		if (words.isEmpty()) {
+			throw new IllegalArgumentException("missing job number");
+		}
+
+		Job job = null;
+
+		synchronized (this.jobs) {
+			try {
+				job = this.jobs.get(Integer.parseInt(words.get(0)));
+			} catch (NumberFormatException e) {
+				// not found either
+			}
+		}
+
+		if (job == null) {
+			throw new IllegalArgumentException("unknown job " + words.get(0));
+		}
+
+		return job;
+	}
+
+	/**
+	 * Returns the configuration of a job, which are the file name templates
+	 * followed by key=value options.
+	 */
+	private Config parse(List<String> words, int templates) {
+
+		if (words.size() < templates) {
+			throw new IllegalArgumentException("expecting " + templates + " file names");
+		}
+
+		Config config = this.config.copy();
+
+		if (templates == 2) {
+			config.setInputChromosomeFastaFileName(words.get(0));
+			config.setOutputChromosomeBasesFileName(words.get(1));
+		} else {
+			config.setReferenceChromosomeBasesFileName(words.get(0));
+			config.setInputChromosomeBasesFileName(words.get(1));
+			config.setOutputExonBasesFileName(words.get(2));
+			config.setOutputExonLocationsFileName(words.get(3));
+		}
+
+		for (String option : words.subList(templates, words.size())) {
+
+			int equals = option.indexOf('=');
+			String key = equals >= 0 ? option.substring(0, equals) : option;
+			String value = equals >= 0 ? option.substring(equals + 1) : "";
+
+			try {
+
+				switch (key) {
+				case "c":
+					config.setChromosomeIds(new ArrayList<String>(Arrays.asList(value.split(","))));
+					break;
+				case "s":
+					config.setSoftMasking(Config.valueOf(SoftMasking.values(), value));
+					break;
+				case "l":
+					config.setLocatorType(Config.valueOf(LocatorType.values(), value));
+					break;
+				case "m":
+					config.setMatcherType(Config.valueOf(MatcherType.values(), value));
+					break;
+				case "w":
+					config.setWindowSize(Integer.parseInt(value));
+					break;
+				case "e":
+					config.setMaxEdits(Integer.parseInt(value));
+					break;
+				case "strands":
+					config.setBothStrands(true);
+					break;
+				case "hits":
+					config.setMaxHits(Integer.parseInt(value));
+					break;
+				case "variants":
+					config.setVariants(true);
+					break;
+				case "bloom":
+					config.setBloomFilterBits(Integer.parseInt(value));
+					break;
+				case "k":
+					config.setKmerLength(Integer.parseInt(value));
+					break;
+				case "p":
+					config.setSearchThreads(Integer.parseInt(value));
+					break;
+				case "batch":
+					config.setSearchBatchSize(Integer.parseInt(value));
+					break;
+				case "g":
+					config.setMinimumGapLength(Integer.parseInt(value));
+					break;
+				case "cache":
+					config.setLocationCacheDirectory(value);
+					break;
+				case "resume":
+					config.setResume(true);
+					break;
+				case "checkpoint":
+					config.setCheckpointInterval(Integer.parseInt(value));
+					break;
+				case "coalesce":
+					config.setCoalesceGap(Integer.parseInt(value));
+					break;
+				case "readsize":
+					config.setMaximumReadSize(Integer.parseInt(value));
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option " + key);
+				}
+
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("not a number " + option);
+			}
+		}
+
+		return config;
+	}
+
+	/**
+	 * Returns the compiled chromosome and the Matchers for a reference. They
+	 * are prepared by the first job needing them, the others wait for it, but
+	 * jobs needing anything else go ahead.
+	 */
+	private Prepared prepare(final Config config, final String chromosomeId) {
+
+		String key = chromosomeId + "|" + config.getReferenceChromosomeBasesFileName(chromosomeId) + "|"
+				+ config.getLocatorType() + "|" + config.getMatcherType();
+
+		return Daemon.once(this.prepared, key, new Callable<Prepared>() {
+			@Override
+			public Prepared call() {
+
+				// the model is shared by all references, so it is compiled once per chromosome
+				Chromosome chromosome = Daemon.once(Daemon.this.chromosomes, chromosomeId, new Callable<Chromosome>() {
+					@Override
+					public Chromosome call() {
+						return GLT.compileChromosome(config, chromosomeId);
+					}
+				});
+
+				return chromosome != null ? new Prepared(chromosome, GLT.prepareReference(config, chromosome)) : null;
+			}
+		});
+	}
+
+	/**
+	 * Returns the value of a key, which is computed by the first thread
+	 * asking for it while the others wait for it. A computation which fails
+	 * is dropped, so the next thread tries again.
+	 */
+	static private <T> T once(ConcurrentHashMap<String, FutureTask<T>> values, String key, Callable<T> computation) {
+
+		FutureTask<T> task = values.computeIfAbsent(key, k -> new FutureTask<T>(computation));
+
+		// does nothing if another thread is running it or has run it
+		task.run();
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while preparing " + key);
+		} catch (ExecutionException e) {
+			values.remove(key, task);
+			throw new IllegalStateException("Preparing " + key + " failed", e.getCause());
+		}
+	}
+
+	private boolean export(Config config) {
+
+		boolean exported = true;
+
+		for (String id : config.getChromosomeIds()) {
+
+			if (GLT.isExported(config, id)) {
+				continue;
+			}
+
+			Prepared prepared = this.prepare(config, id);
+
+			if (prepared != null) {
+				exported &= GLT.exportSample(config, prepared.chromosome, prepared.matchers);
+			}
+		}
+
+		return exported;
+	}
+
+	private boolean convert(Config config) {
+
+		for (String id : config.getChromosomeIds()) {
+			GLT.convertFasta(config, id);
+		}
+
+		return true;
+	}
+}
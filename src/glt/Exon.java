@@ -1,8 +1,5 @@
 package glt;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
-
 public class Exon implements Comparable<Exon> {
 
 	private String id = null; // the unique ID
@@ -10,9 +7,6 @@ public class Exon implements Comparable<Exon> {
 	private int to = 0; // the stop position within the Chromosome
 	private CDS cds = null; // the CDS containing this Exon
 
-	private RandomAccessFile file = null;
-	private Bases bases = null;  
-	
 	private Exon(String id, int from, int to, CDS cds) {
 
 		this.id = id;
@@ -59,58 +53,6 @@ public class Exon implements Comparable<Exon> {
 		return this.cds.getStrand();
 	}
 	
-	public Exon setSourceFile(RandomAccessFile file) {
-		this.file = file;
-		return this;
-	}
-
-	public Bases getBases(Strand strand) {
-
-		// get the bases as they are
-		this.getBases();
-
-		// is the requested strand the same as the exon's strand?
-		// then it is all fine. Otherwise reverse complement it,
-		// because we want to get it from the opposite strand
-		Bases bases = this.getStrand() == strand ? this.bases : this.bases.reverseComplement();
-		
-		return bases;
-	}
-	
-	public Bases getBases() {
-		
-		if (this.bases == null) {
-			
-			int length = this.getLength();
-			
-			this.bases = new Bases();
-
-			try {
-				
-				byte[] bases = new byte[length];
-				
-				this.file.seek(this.getFrom());
-				this.file.read(bases, 0, length);
-
-				// add all the letters
-				this.bases.add(new String(bases));
-
-				// by default the data in the FASTA file is on the positive strand.
-				// so if it is on the negative one, then we have to reverse-complement it
-				if (this.getStrand() == Strand.Negative) {
-
-					this.bases = this.bases.reverseComplement();
-				}
-
-			} catch (IOException e) {
-				System.err.println("I/O error");
-				e.getLocalizedMessage();
-			}
-		}
-		
-		return this.bases;
-	}
-
 	/**
 	 * Removes the object from the CDS collection again
 	 * @return The CDS
@@ -0,0 +1,594 @@
+package glt;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An immutable, compressed set of rows, e.g. the exons found in a sample, in
+ * the spirit of Roaring bitmaps. The rows are split into chunks of 65536 by
+ * their upper 16 bits and each chunk is stored in whichever container takes
+ * the fewest bytes:
+ *
+ * - an array of the lower 16 bits of its rows, for sparse chunks
+ * - a bitmap of 1024 longs, for dense chunks
+ * - runs of consecutive rows, for chunks with few gaps, which is what the
+ * exons of a sample usually look like
+ *
+ * The bitmap is read straight from its serialized form, which starts with the
+ * number of chunks, followed by an entry per chunk (upper 16 bits, type,
+ * cardinality and offset of the container) and the containers. So a bitmap
+ * within a mapped file is used as it is, see wrap(). All reads are absolute,
+ * so a bitmap can be shared by any number of threads.
+ *
+ * and(), or() and andNot() combine two bitmaps a chunk at a time by
+ * expanding both containers to 1024 longs, so they touch 8 KB per chunk at
+ * most whatever the containers are.
+ *
+ * @author michael
+ *
+ */
+public class ExonBitmap {
+
+	// the types of the containers
+	static private final char ARRAY = 0;
+	static private final char BITMAP = 1;
+	static private final char RUNS = 2;
+
+	// the longs of a bitmap container
+	static private final int WORDS = 1 << 10;
+
+	// upper 16 bits, type, cardinality and offset
+	static private final int ENTRY_SIZE = 2 + 2 + 4 + 4;
+
+	static private final ExonBitmap EMPTY = ExonBitmap.encode(new ArrayList<Chunk>());
+
+	// a chunk expanded to a bitmap, while it is being encoded
+	static private class Chunk {
+
+		private final int key;
+		private final long[] words;
+
+		private Chunk(int key, long[] words) {
+			this.key = key;
+			this.words = words;
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final int chunks;
+
+	private ExonBitmap(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.chunks = buffer.getInt(0);
+	}
+
+	/**
+	 * Returns the bitmap serialized into the buffer, e.g. a part of a mapped
+	 * file. Nothing is copied.
+	 *
+	 * @param buffer
+	 *            The serialized bitmap, from position 0 to the limit
+	 * @return the bitmap
+	 */
+	static public ExonBitmap wrap(ByteBuffer buffer) {
+		return new ExonBitmap(buffer);
+	}
+
+	/**
+	 * Returns the bitmap of the rows which are set.
+	 *
+	 * @param rows
+	 *            The rows
+	 * @return the bitmap
+	 */
+	static public ExonBitmap of(BitSet rows) {
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		Chunk chunk = null;
+
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+
+			if (chunk == null || chunk.key != row >>> 16) {
+				chunk = new Chunk(row >>> 16, new long[WORDS]);
+				chunks.add(chunk);
+			}
+
+			chunk.words[(row & 0xffff) >>> 6] |= 1L << row;
+		}
+
+		return ExonBitmap.encode(chunks);
+	}
+
+	/**
+	 * Returns the bitmap of the rows from..to - 1.
+	 *
+	 * @param from
+	 *            The first row
+	 * @param to
+	 *            The row after the last one
+	 * @return the bitmap
+	 */
+	static public ExonBitmap range(int from, int to) {
+
+		BitSet rows = new BitSet(to);
+		rows.set(from, to);
+
+		return ExonBitmap.of(rows);
+	}
+
+	static public ExonBitmap empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Serializes the chunks, each into its smallest container. Empty chunks
+	 * are left out.
+	 */
+	static private ExonBitmap encode(List<Chunk> chunks) {
+
+		List<Chunk> used = new ArrayList<Chunk>();
+
+		for (Chunk chunk : chunks) {
+			if (ExonBitmap.cardinality(chunk.words) > 0) {
+				used.add(chunk);
+			}
+		}
+
+		int size = 4 + ENTRY_SIZE * used.size();
+
+		char[] types = new char[used.size()];
+
+		for (int i = 0; i < used.size(); i++) {
+
+			long[] words = used.get(i).words;
+
+			int arraySize = 2 * ExonBitmap.cardinality(words);
+			int runsSize = 4 + 4 * ExonBitmap.runs(words);
+			int bitmapSize = 8 * WORDS;
+
+			if (arraySize <= runsSize && arraySize <= bitmapSize) {
+				types[i] = ARRAY;
+				size += arraySize;
+			} else if (runsSize <= bitmapSize) {
+				types[i] = RUNS;
+				size += runsSize;
+			} else {
+				types[i] = BITMAP;
+				size += bitmapSize;
+			}
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+
+		buffer.putInt(used.size());
+
+		int offset = 4 + ENTRY_SIZE * used.size();
+
+		for (int i = 0; i < used.size(); i++) {
+
+			long[] words = used.get(i).words;
+
+			buffer.putChar(4 + ENTRY_SIZE * i, (char) used.get(i).key);
+			buffer.putChar(4 + ENTRY_SIZE * i + 2, types[i]);
+			buffer.putInt(4 + ENTRY_SIZE * i + 4, ExonBitmap.cardinality(words));
+			buffer.putInt(4 + ENTRY_SIZE * i + 8, offset);
+
+			buffer.position(offset);
+
+			switch (types[i]) {
+			case ARRAY:
+				for (int j = 0; j < WORDS; j++) {
+					for (long word = words[j]; word != 0; word &= word - 1) {
+						buffer.putChar((char) ((j << 6) + Long.numberOfTrailingZeros(word)));
+					}
+				}
+				break;
+			case RUNS:
+				buffer.putInt(ExonBitmap.runs(words));
+				for (int start = ExonBitmap.nextSet(words, 0); start >= 0;) {
+					int end = ExonBitmap.nextClear(words, start);
+					buffer.putChar((char) start).putChar((char) (end - start - 1));
+					start = ExonBitmap.nextSet(words, end);
+				}
+				break;
+			default:
+				for (int j = 0; j < WORDS; j++) {
+					buffer.putLong(words[j]);
+				}
+				break;
+			}
+
+			offset = buffer.position();
+		}
+
+		buffer.clear();
+
+		return new ExonBitmap(buffer);
+	}
+
+	static private int cardinality(long[] words) {
+
+		int cardinality = 0;
+
+		for (long word : words) {
+			cardinality += Long.bitCount(word);
+		}
+
+		return cardinality;
+	}
+
+	/**
+	 * Returns the number of runs of set bits.
+	 */
+	static private int runs(long[] words) {
+
+		int runs = 0;
+		long carry = 0; // the last bit of the previous word
+
+		for (long word : words) {
+			// the bits which are set, but not the ones before them
+			runs += Long.bitCount(word & ~(word << 1 | carry));
+			carry = word >>> 63;
+		}
+
+		return runs;
+	}
+
+	/**
+	 * Returns the first set bit from the one given, -1 if there is none.
+	 */
+	static private int nextSet(long[] words, int from) {
+
+		if (from >= WORDS << 6) {
+			return -1;
+		}
+
+		int i = from >>> 6;
+		long word = words[i] & (-1L << from);
+
+		while (word == 0) {
+			if (++i == WORDS) {
+				return -1;
+			}
+			word = words[i];
+		}
+
+		return (i << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Returns the first clear bit from the one given, 65536 if there is none.
+	 */
+	static private int nextClear(long[] words, int from) {
+
+		int i = from >>> 6;
+		long word = ~words[i] & (-1L << from);
+
+		while (word == 0) {
+			if (++i == WORDS) {
+				return WORDS << 6;
+			}
+			word = ~words[i];
+		}
+
+		return (i << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	private int getKey(int chunk) {
+		return this.buffer.getChar(4 + ENTRY_SIZE * chunk);
+	}
+
+	private char getType(int chunk) {
+		return this.buffer.getChar(4 + ENTRY_SIZE * chunk + 2);
+	}
+
+	private int getCardinality(int chunk) {
+		return this.buffer.getInt(4 + ENTRY_SIZE * chunk + 4);
+	}
+
+	private int getOffset(int chunk) {
+		return this.buffer.getInt(4 + ENTRY_SIZE * chunk + 8);
+	}
+
+	/**
+	 * Returns the chunk holding the upper 16 bits, or -(insertion point) - 1.
+	 */
+	private int find(int key) {
+
+		int low = 0;
+		int high = this.chunks - 1;
+
+		while (low <= high) {
+
+			int middle = (low + high) >>> 1;
+			int k = this.getKey(middle);
+
+			if (k < key) {
+				low = middle + 1;
+			} else if (k > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+	/**
+	 * Expands a chunk into 1024 longs.
+	 */
+	private long[] expand(int chunk, long[] words) {
+
+		int offset = this.getOffset(chunk);
+
+		switch (this.getType(chunk)) {
+		case ARRAY:
+			for (int i = 0; i < this.getCardinality(chunk); i++) {
+				int low = this.buffer.getChar(offset + 2 * i);
+				words[low >>> 6] |= 1L << low;
+			}
+			break;
+		case RUNS:
+			for (int i = 0, runs = this.buffer.getInt(offset); i < runs; i++) {
+				int start = this.buffer.getChar(offset + 4 + 4 * i);
+				int end = start + this.buffer.getChar(offset + 4 + 4 * i + 2) + 1;
+				for (int bit = start; bit < end; bit++) {
+					words[bit >>> 6] |= 1L << bit;
+				}
+			}
+			break;
+		default:
+			for (int i = 0; i < WORDS; i++) {
+				words[i] |= this.buffer.getLong(offset + 8 * i);
+			}
+			break;
+		}
+
+		return words;
+	}
+
+	/**
+	 * Returns whether the row is set.
+	 *
+	 * @param row
+	 *            The row
+	 * @return whether it is set
+	 */
+	public boolean contains(int row) {
+
+		int chunk = this.find(row >>> 16);
+
+		if (chunk < 0) {
+			return false;
+		}
+
+		int low = row & 0xffff;
+		int offset = this.getOffset(chunk);
+
+		switch (this.getType(chunk)) {
+		case ARRAY: {
+			int from = 0;
+			int to = this.getCardinality(chunk) - 1;
+			while (from <= to) {
+				int middle = (from + to) >>> 1;
+				int value = this.buffer.getChar(offset + 2 * middle);
+				if (value < low) {
+					from = middle + 1;
+				} else if (value > low) {
+					to = middle - 1;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+		case RUNS: {
+			// the last run starting at or before the row
+			int from = 0;
+			int to = this.buffer.getInt(offset) - 1;
+			while (from <= to) {
+				int middle = (from + to) >>> 1;
+				int start = this.buffer.getChar(offset + 4 + 4 * middle);
+				if (start <= low) {
+					if (low <= start + this.buffer.getChar(offset + 4 + 4 * middle + 2)) {
+						return true;
+					}
+					from = middle + 1;
+				} else {
+					to = middle - 1;
+				}
+			}
+			return false;
+		}
+		default:
+			return (this.buffer.getLong(offset + 8 * (low >>> 6)) & 1L << low) != 0;
+		}
+	}
+
+	/**
+	 * Returns the number of rows which are set.
+	 *
+	 * @return the number of rows
+	 */
+	public int getCardinality() {
+
+		int cardinality = 0;
+
+		for (int i = 0; i < this.chunks; i++) {
+			cardinality += this.getCardinality(i);
+		}
+
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return this.chunks == 0;
+	}
+
+	/**
+	 * Returns the rows which are set in both bitmaps.
+	 *
+	 * @param other
+	 *            The other bitmap
+	 * @return a new bitmap
+	 */
+	public ExonBitmap and(ExonBitmap other) {
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		for (int i = 0; i < this.chunks; i++) {
+
+			int j = other.find(this.getKey(i));
+
+			if (j >= 0) {
+
+				long[] words = this.expand(i, new long[WORDS]);
+				long[] others = other.expand(j, new long[WORDS]);
+
+				for (int k = 0; k < WORDS; k++) {
+					words[k] &= others[k];
+				}
+
+				chunks.add(new Chunk(this.getKey(i), words));
+			}
+		}
+
+		return ExonBitmap.encode(chunks);
+	}
+
+	/**
+	 * Returns the rows which are set in either bitmap.
+	 *
+	 * @param other
+	 *            The other bitmap
+	 * @return a new bitmap
+	 */
+	public ExonBitmap or(ExonBitmap other) {
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		int i = 0;
+		int j = 0;
+
+		while (i < this.chunks || j < other.chunks) {
+
+			int key = i < this.chunks ? this.getKey(i) : Integer.MAX_VALUE;
+			int otherKey = j < other.chunks ? other.getKey(j) : Integer.MAX_VALUE;
+
+			long[] words = new long[WORDS];
+
+			if (key <= otherKey) {
+				this.expand(i++, words);
+			}
+
+			if (otherKey <= key) {
+				other.expand(j++, words);
+			}
+
+			chunks.add(new Chunk(Math.min(key, otherKey), words));
+		}
+
+		return ExonBitmap.encode(chunks);
+	}
+
+	/**
+	 * Returns the rows which are set in this bitmap, but not in the other one.
+	 *
+	 * @param other
+	 *            The other bitmap
+	 * @return a new bitmap
+	 */
+	public ExonBitmap andNot(ExonBitmap other) {
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		for (int i = 0; i < this.chunks; i++) {
+
+			long[] words = this.expand(i, new long[WORDS]);
+
+			int j = other.find(this.getKey(i));
+
+			if (j >= 0) {
+
+				long[] others = other.expand(j, new long[WORDS]);
+
+				for (int k = 0; k < WORDS; k++) {
+					words[k] &= ~others[k];
+				}
+			}
+
+			chunks.add(new Chunk(this.getKey(i), words));
+		}
+
+		return ExonBitmap.encode(chunks);
+	}
+
+	/**
+	 * Returns the rows which are set, in ascending order.
+	 *
+	 * @return a new array of the rows
+	 */
+	public int[] toArray() {
+
+		int[] rows = new int[this.getCardinality()];
+		int n = 0;
+
+		long[] words = new long[WORDS];
+
+		for (int i = 0; i < this.chunks; i++) {
+
+			Arrays.fill(words, 0);
+
+			this.expand(i, words);
+
+			int high = this.getKey(i) << 16;
+
+			for (int j = 0; j < WORDS; j++) {
+				for (long word = words[j]; word != 0; word &= word - 1) {
+					rows[n++] = high + (j << 6) + Long.numberOfTrailingZeros(word);
+				}
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Returns the number of bytes of the serialized bitmap.
+	 *
+	 * @return the number of bytes
+	 */
+	public int getSize() {
+		return this.buffer.limit();
+	}
+
+	/**
+	 * Writes the serialized bitmap, which can be read back with wrap().
+	 *
+	 * @param out
+	 *            Where it goes
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+
+		byte[] bytes = new byte[this.getSize()];
+
+		ByteBuffer copy = this.buffer.duplicate();
+		copy.clear();
+		copy.get(bytes);
+
+		out.write(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return this.getCardinality() + " rows in " + this.chunks + " chunks, " + this.getSize() + " bytes";
+	}
+}
@@ -0,0 +1,520 @@
+package glt;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which exons of a chromosome are present in which samples of a cohort,
+ * stored as one ExonBitmap per sample over the exons, which are the rows of
+ * the matrix. It is built once from the located exons of all samples, see
+ * Builder, and mapped read-only like the FmIndex, so questions like which
+ * exons are present in all samples never touch the .locations files again.
+ *
+ * The file consists of
+ *
+ * - the header: magic, version, the number of samples, exons and genes
+ * - the names of the samples, the IDs of the exons and the names of the genes
+ * - the gene of each exon
+ * - the offsets of the bitmaps within the file and the end of the last one
+ * - the bitmap of each sample, followed by the bitmap of the exons of each
+ * gene
+ *
+ * All reads are absolute, so one matrix can be shared by any number of
+ * threads.
+ *
+ * @author michael
+ *
+ */
+public class ExonMatrix {
+
+	static private final int MAGIC = 0x474c5458; // GLTX
+	static private final int VERSION = 1;
+
+	/**
+	 * Collects the exons found in each sample and writes the matrix. The
+	 * samples can be added by any number of threads.
+	 */
+	static public class Builder {
+
+		private final String chromosomeId;
+
+		// exon ID -> row, in the order of the model
+		private final Map<String, Integer> rows = new LinkedHashMap<String, Integer>();
+		private final List<Exon> exons = new ArrayList<Exon>();
+		private final List<Integer> exonGenes = new ArrayList<Integer>();
+
+		private final List<String> genes = new ArrayList<String>();
+		private final List<BitSet> geneRows = new ArrayList<BitSet>();
+
+		// sample name -> the rows which have been found, null until it has been added
+		private final Map<String, BitSet> samples = new LinkedHashMap<String, BitSet>();
+
+		/**
+		 * @param chromosome
+		 *            The chromosome, whose public exons are the rows
+		 * @param samples
+		 *            The names of the samples, which are the columns in this
+		 *            order
+		 */
+		public Builder(Chromosome chromosome, List<String> samples) {
+
+			this.chromosomeId = chromosome.getId();
+
+			for (String sample : samples) {
+				this.samples.put(sample, null);
+			}
+
+			for (Gene gene : chromosome.getGenes()) {
+
+				BitSet rows = new BitSet();
+
+				for (Accession accession : gene.getAccessions()) {
+					for (CDS cds : accession.getCCDSs()) {
+
+						if (!cds.isPublic()) {
+							continue;
+						}
+
+						for (Exon exon : cds.getExons()) {
+
+							Integer row = this.rows.get(exon.getId());
+
+							if (row == null) {
+								row = this.exons.size();
+								this.rows.put(exon.getId(), row);
+								this.exons.add(exon);
+								this.exonGenes.add(this.genes.size());
+							}
+
+							rows.set(row);
+						}
+					}
+				}
+
+				if (!rows.isEmpty()) {
+					this.genes.add(gene.getName());
+					this.geneRows.add(rows);
+				}
+			}
+		}
+
+		/**
+		 * Returns whether a sample has been added.
+		 *
+		 * @param sample
+		 *            The name of the sample
+		 * @return whether it has been added
+		 */
+		public synchronized boolean has(String sample) {
+			return this.samples.get(sample) != null;
+		}
+
+		/**
+		 * Adds a sample with the exons located in it, whether exactly or
+		 * approximately and on either strand.
+		 *
+		 * @param sample
+		 *            The name of the sample
+		 * @param locations
+		 *            Where its exons have been found
+		 * @return the Builder
+		 */
+		public synchronized Builder add(String sample, Locations locations) {
+
+			BitSet found = new BitSet(this.exons.size());
+
+			for (int row = 0; row < this.exons.size(); row++) {
+				if (locations.isLocated(this.exons.get(row))) {
+					found.set(row);
+				}
+			}
+
+			this.samples.put(sample, found);
+
+			return this;
+		}
+
+		/**
+		 * Adds a sample with the exons in the checkpoint log of an earlier
+		 * run, whether they have been found exactly or approximately, the
+		 * same as add(String, Locations).
+		 *
+		 * @param sample
+		 *            The name of the sample
+		 * @param fileName
+		 *            The checkpoint log
+		 * @return whether the log is there and its chromosome has been
+		 *         exported completely, otherwise the sample is left out
+		 * @throws IOException
+		 */
+		public boolean add(String sample, String fileName) throws IOException {
+
+			if (!new File(fileName).exists()) {
+				GLT.logger.warning("There is no checkpoint " + fileName + ", leaving out " + sample);
+				return false;
+			}
+
+			// -xm does not know the input of the sample, so whatever has been logged is taken
+			Checkpoint checkpoint = Checkpoint.open(fileName, null, true, Integer.MAX_VALUE);
+
+			try {
+
+				if (!checkpoint.isDone()) {
+					GLT.logger.warning("Chromosome " + this.chromosomeId + " of " + sample + " has not been exported completely, leaving it out");
+					return false;
+				}
+
+				BitSet found = new BitSet(this.exons.size());
+
+				for (int row = 0; row < this.exons.size(); row++) {
+					Exon exon = this.exons.get(row);
+					if (checkpoint.has(exon) && checkpoint.get(exon) != -1) {
+						found.set(row);
+					}
+				}
+
+				synchronized (this) {
+					this.samples.put(sample, found);
+				}
+
+			} finally {
+				checkpoint.close();
+			}
+
+			return true;
+		}
+
+		/**
+		 * Writes the matrix. It is written into a temporary file first, so a
+		 * killed run never leaves a broken matrix behind.
+		 *
+		 * @param fileName
+		 *            The matrix file
+		 * @throws IOException
+		 */
+		public synchronized void write(String fileName) throws IOException {
+
+			List<String> samples = new ArrayList<String>();
+			List<ExonBitmap> bitmaps = new ArrayList<ExonBitmap>();
+
+			// the ones which could not be added are left out
+			for (Map.Entry<String, BitSet> sample : this.samples.entrySet()) {
+				if (sample.getValue() != null) {
+					samples.add(sample.getKey());
+					bitmaps.add(ExonBitmap.of(sample.getValue()));
+				}
+			}
+
+			for (BitSet rows : this.geneRows) {
+				bitmaps.add(ExonBitmap.of(rows));
+			}
+
+			File file = new File(fileName + ".tmp");
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+
+			try {
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(samples.size());
+				out.writeInt(this.exons.size());
+				out.writeInt(this.genes.size());
+
+				for (String sample : samples) {
+					out.writeUTF(sample);
+				}
+
+				for (Exon exon : this.exons) {
+					out.writeUTF(exon.getId());
+				}
+
+				for (String gene : this.genes) {
+					out.writeUTF(gene);
+				}
+
+				for (int gene : this.exonGenes) {
+					out.writeInt(gene);
+				}
+
+				long offset = out.size() + 8L * (bitmaps.size() + 1);
+
+				for (ExonBitmap bitmap : bitmaps) {
+					out.writeLong(offset);
+					offset += bitmap.getSize();
+				}
+
+				out.writeLong(offset);
+
+				for (ExonBitmap bitmap : bitmaps) {
+					bitmap.write(out);
+				}
+
+			} finally {
+				out.close();
+			}
+
+			File target = new File(fileName);
+
+			if ((target.exists() && !target.delete()) || !file.renameTo(target)) {
+				throw new IOException("Could not rename " + file + " to " + fileName);
+			}
+
+			GLT.logger.info("Wrote " + fileName + " with " + this.exons.size() + " exons of " + samples.size() + " samples, "
+					+ target.length() + " bytes");
+		}
+	}
+
+	private String fileName = null;
+
+	private List<String> samples = new ArrayList<String>();
+	private List<String> exons = new ArrayList<String>();
+	private List<String> genes = new ArrayList<String>();
+	private int[] exonGenes = null;
+
+	private ByteBuffer buffer = null;
+	private long[] offsets = null;
+
+	private ExonMatrix(String fileName) throws IOException {
+
+		this.fileName = fileName;
+
+		RandomAccessFile in = new RandomAccessFile(fileName, "r");
+
+		try {
+
+			FileChannel channel = in.getChannel();
+
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(fileName + " is too large to be mapped");
+			}
+
+			// the mapping stays valid after the channel has been closed
+			this.buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+		} finally {
+			in.close();
+		}
+
+		ByteBuffer header = this.buffer.duplicate();
+
+		if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+			throw new IOException(fileName + " is not an exon matrix");
+		}
+
+		int samples = header.getInt();
+		int exons = header.getInt();
+		int genes = header.getInt();
+
+		ExonMatrix.readNames(header, samples, this.samples);
+		ExonMatrix.readNames(header, exons, this.exons);
+		ExonMatrix.readNames(header, genes, this.genes);
+
+		this.exonGenes = new int[exons];
+
+		for (int i = 0; i < exons; i++) {
+			this.exonGenes[i] = header.getInt();
+		}
+
+		this.offsets = new long[samples + genes + 1];
+
+		for (int i = 0; i < this.offsets.length; i++) {
+			this.offsets[i] = header.getLong();
+		}
+
+		GLT.logger.info("Mapped " + fileName + " with " + exons + " exons of " + samples + " samples");
+	}
+
+	/**
+	 * Reads names written with writeUTF(), i.e. their length followed by
+	 * their letters in modified UTF-8, so sample names need not be ASCII.
+	 */
+	static private void readNames(ByteBuffer in, int count, List<String> names) throws IOException {
+
+		for (int i = 0; i < count; i++) {
+
+			// the length is read again by readUTF()
+			byte[] bytes = new byte[2 + in.getChar(in.position())];
+
+			in.get(bytes);
+
+			names.add(new DataInputStream(new ByteArrayInputStream(bytes)).readUTF());
+		}
+	}
+
+	/**
+	 * Maps a matrix.
+	 *
+	 * @param fileName
+	 *            The matrix file
+	 * @return the matrix
+	 * @throws IOException
+	 */
+	static public ExonMatrix open(String fileName) throws IOException {
+		return new ExonMatrix(fileName);
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public List<String> getSamples() {
+		return this.samples;
+	}
+
+	/**
+	 * Returns the IDs of the exons, i.e. of the rows.
+	 *
+	 * @return the IDs in the order of the model
+	 */
+	public List<String> getExons() {
+		return this.exons;
+	}
+
+	public List<String> getGenes() {
+		return this.genes;
+	}
+
+	/**
+	 * Returns the gene of an exon. An exon shared by several genes belongs
+	 * to the first of them here, but is in the bitmaps of all of them.
+	 *
+	 * @param row
+	 *            The row of the exon
+	 * @return the index of the gene
+	 */
+	public int getGene(int row) {
+		return this.exonGenes[row];
+	}
+
+	private ExonBitmap getBitmap(int index) {
+
+		ByteBuffer bitmap = this.buffer.duplicate();
+
+		bitmap.position((int) this.offsets[index]).limit((int) this.offsets[index + 1]);
+
+		return ExonBitmap.wrap(bitmap.slice());
+	}
+
+	/**
+	 * Returns the exons present in a sample.
+	 *
+	 * @param sample
+	 *            The index of the sample
+	 * @return the rows of the exons
+	 */
+	public ExonBitmap getPresent(int sample) {
+		return this.getBitmap(sample);
+	}
+
+	/**
+	 * Returns the exons of a gene.
+	 *
+	 * @param gene
+	 *            The index of the gene
+	 * @return the rows of the exons
+	 */
+	public ExonBitmap getGeneExons(int gene) {
+		return this.getBitmap(this.samples.size() + gene);
+	}
+
+	/**
+	 * Returns the exons present in every sample.
+	 *
+	 * @return the rows of the exons, all of them if there are no samples
+	 */
+	public ExonBitmap getPresentInAll() {
+
+		ExonBitmap present = ExonBitmap.range(0, this.exons.size());
+
+		for (int i = 0; i < this.samples.size() && !present.isEmpty(); i++) {
+			present = present.and(this.getPresent(i));
+		}
+
+		return present;
+	}
+
+	/**
+	 * Returns the exons absent from at least one sample.
+	 *
+	 * @return the rows of the exons
+	 */
+	public ExonBitmap getAbsentInAny() {
+		return ExonBitmap.range(0, this.exons.size()).andNot(this.getPresentInAll());
+	}
+
+	/**
+	 * Returns in how many samples each exon is present.
+	 *
+	 * @return the number of samples per row
+	 */
+	public int[] countSamples() {
+
+		int[] counts = new int[this.exons.size()];
+
+		for (int i = 0; i < this.samples.size(); i++) {
+			for (int row : this.getPresent(i).toArray()) {
+				counts[row]++;
+			}
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Returns in how many samples every exon of each gene is present.
+	 *
+	 * @return the number of samples per gene
+	 */
+	public int[] countCompleteSamples() {
+
+		int[] counts = new int[this.genes.size()];
+
+		// the rows of every gene are expanded once instead of once per sample
+		int[][] geneRows = new int[this.genes.size()][];
+
+		for (int gene = 0; gene < this.genes.size(); gene++) {
+			geneRows[gene] = this.getGeneExons(gene).toArray();
+		}
+
+		BitSet present = new BitSet(this.exons.size());
+
+		for (int i = 0; i < this.samples.size(); i++) {
+
+			present.clear();
+
+			for (int row : this.getPresent(i).toArray()) {
+				present.set(row);
+			}
+
+			for (int gene = 0; gene < geneRows.length; gene++) {
+
+				boolean complete = true;
+
+				for (int j = 0; j < geneRows[gene].length && complete; j++) {
+					complete = present.get(geneRows[gene][j]);
+				}
+
+				if (complete) {
+					counts[gene]++;
+				}
+			}
+		}
+
+		return counts;
+	}
+}
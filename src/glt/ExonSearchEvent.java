@@ -0,0 +1,59 @@
+package glt;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for locating a single exon, so slow runs can be
+ * attributed to particular genes and exons, e.g. repetitive ones which force
+ * a scan of the whole chromosome.
+ * 
+ * @author michael
+ * 
+ */
+@Name("glt.ExonSearch")
+@Label("Exon Search")
+@Category({ "GenomeLaser Tools", "Search" })
+@Description("Locating an exon in the input chromosome")
+@StackTrace(false)
+public class ExonSearchEvent extends Event {
+
+	@Label("Chromosome")
+	public String chromosome;
+
+	@Label("Gene")
+	public String gene;
+
+	@Label("Exon")
+	public String exon;
+
+	@Label("Exon Length")
+	public int length;
+
+	@Label("Bytes Scanned")
+	@DataAmount
+	public long bytesScanned;
+
+	@Label("Found")
+	public boolean found;
+
+	@Label("Position")
+	public long position;
+
+	@Label("Tier")
+	@Description("How the exon has been resolved: checkpoint, locationCache, search or approximate")
+	public String tier;
+
+	@Label("Edits")
+	@Description("The number of edits of an approximate hit")
+	public int edits;
+
+	@Label("Strand")
+	@Description("The strand of the sample the exon has been found on")
+	public String strand;
+}
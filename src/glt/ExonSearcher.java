@@ -0,0 +1,313 @@
+package glt;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Locates exons of the reference within one sample chromosome, trying the
+ * checkpoint, the location cache and finally the Locator.
+ *
+ * Everything but the Locators is shared, so any number of threads can search
+ * with the same ExonSearcher as long as each of them brings its own Locators.
+ * What has been found goes into the Locations.
+ *
+ * Exons which can not be found as they are might be searched once more
+ * allowing for edits. Those hits are checkpointed with their edits, so a
+ * resumed run takes them as they are, but they are not cached, so they are
+ * searched again by later runs.
+ *
+ * If both strands are searched, the reverse complement of each exon is looked
+ * for in the same pass. A hit on the negative strand is checkpointed and
+ * cached as encoded by the Locations.
+ *
+ * If more than one copy is looked for, all copies are searched every time,
+ * as the checkpoint and the cache only know the first one.
+ *
+ * @author michael
+ *
+ */
+public class ExonSearcher {
+
+	private SequenceStore reference = null;
+	private SequenceProvider sequences = null;
+	private Checkpoint checkpoint = null;
+	private LocationCache cache = null; // null if there is none
+	private Locations locations = null;
+	private Metrics.Stage stage = null;
+	private boolean bothStrands = false;
+	private int maxHits = 1;
+
+	// the copies of the exon searched by the calling thread
+	private final ThreadLocal<LongList> hits = new ThreadLocal<LongList>() {
+		@Override
+		protected LongList initialValue() {
+			return new LongList();
+		}
+	};
+
+	private final AtomicInteger found = new AtomicInteger();
+	private final AtomicInteger resumed = new AtomicInteger();
+
+	/**
+	 * @param bothStrands
+	 *            Whether the reverse complements of the exons are looked for
+	 *            as well
+	 * @param maxHits
+	 *            The number of copies of an exon which are looked for on
+	 *            each strand, 1 for the first one only
+	 */
+	public ExonSearcher(SequenceStore reference, SequenceProvider sequences, Checkpoint checkpoint, LocationCache cache,
+			Locations locations, Metrics.Stage stage, boolean bothStrands, int maxHits) {
+
+		this.reference = reference;
+		this.sequences = sequences;
+		this.checkpoint = checkpoint;
+		this.cache = cache;
+		this.locations = locations;
+		this.stage = stage;
+		this.bothStrands = bothStrands;
+		this.maxHits = maxHits;
+	}
+
+	/**
+	 * Locates the exons one after the other.
+	 *
+	 * @param exons
+	 *            The exons
+	 * @param locator
+	 *            The Locator of the calling thread
+	 * @param approximate
+	 *            The ApproximateLocator of the calling thread, null to only
+	 *            look for the exons as they are
+	 * @throws IOException
+	 */
+	public void locate(List<Exon> exons, Locator locator, ApproximateLocator approximate) throws IOException {
+
+		for (Exon exon : exons) {
+			this.locate(exon, locator, approximate);
+		}
+	}
+
+	/**
+	 * Locates a single exon.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @param locator
+	 *            The Locator of the calling thread
+	 * @param approximate
+	 *            The ApproximateLocator of the calling thread, null to only
+	 *            look for the exon as it is
+	 * @return the position within the chromosome or -1 if it could not be
+	 *         found
+	 * @throws IOException
+	 */
+	public int locate(Exon exon, Locator locator, ApproximateLocator approximate) throws IOException {
+
+		Gene gene = exon.getCCDS().getAccession().getGene();
+
+		// always get the positive strand,
+		// because that is the one we are going to compare with other FASTA files
+		String letters = this.sequences.getLetters(this.reference, exon, Strand.Positive);
+		String reverseComplement = this.bothStrands ? this.sequences.getLetters(this.reference, exon, Strand.Negative) : null;
+
+		// the cache is shared by the runs searching one strand and both strands
+		String key = this.bothStrands ? letters + "/" + reverseComplement : letters;
+
+		long startInChromosome = 0;
+		Strand strand = Strand.Positive;
+
+		ExonSearchEvent event = new ExonSearchEvent();
+		long bytesRead = Metrics.getThreadBytesRead();
+		String tier = null;
+
+		event.begin();
+
+		boolean copies = this.maxHits > 1;
+
+		int length = letters.length();
+		int edits = 0;
+
+		if (!copies && this.checkpoint.has(exon)) {
+
+			// it has been located before the previous run was killed, exactly or not
+			startInChromosome = this.checkpoint.get(exon);
+			strand = Locations.decodeStrand(startInChromosome);
+			startInChromosome = Locations.decodePosition(startInChromosome);
+			length = this.checkpoint.getLength(exon);
+			edits = this.checkpoint.getEdits(exon);
+			this.resumed.incrementAndGet();
+
+			tier = "checkpoint";
+			this.stage.count("tier.checkpoint");
+
+		} else {
+
+			// the progress is logged by the metrics,
+			// so there is no need to format a line for every single exon
+			if (GLT.logger.isLoggable(Level.FINE)) {
+				GLT.logger.fine("Scanning chromosome(" + gene.getChromosome().getId() + "):Gene(" + gene.getName()
+						+ "):Exon " + exon.getId());
+			}
+
+			// we could load the chromosome completely into memory first,
+			// however this won't work on small machines, because the chromosomes are fairly huge.
+			// so the locator reads the segments between the gaps straight from the file
+			Long cached = !copies && this.cache != null ? this.cache.get(key) : null;
+
+			if (cached != null) {
+
+				startInChromosome = Locations.decodePosition(cached);
+				strand = Locations.decodeStrand(cached);
+
+				tier = "locationCache";
+				this.stage.count("tier.locationCache");
+
+			} else {
+
+				if (copies) {
+					long first = this.locateAll(exon, letters, reverseComplement, locator);
+					startInChromosome = Locations.decodePosition(first);
+					strand = Locations.decodeStrand(first);
+				} else if (this.bothStrands) {
+					startInChromosome = locator.locate(letters, reverseComplement);
+					strand = locator.getStrand();
+				} else {
+					startInChromosome = locator.locate(letters);
+				}
+
+				tier = "search";
+				this.stage.count("tier.search");
+
+				if (this.cache != null) {
+					this.cache.put(key, Locations.encode(startInChromosome, strand));
+				}
+			}
+
+			if (startInChromosome < 0 && approximate != null) {
+
+				// there is no exact hit, so one edit is as good as it gets
+				startInChromosome = approximate.locate(letters, reverseComplement, 1);
+
+				if (startInChromosome >= 0) {
+					length = approximate.getLength();
+					edits = approximate.getDistance();
+					strand = approximate.getStrand();
+					tier = "approximate";
+					this.stage.count("tier.approximate");
+				}
+			}
+
+			// the same as the export, so -xm and resumed samples see what this run sees
+			this.checkpoint.put(exon, (int) Locations.encode(startInChromosome, strand), length, edits);
+		}
+
+		// the bytes read by the locator of this thread, which might not be within the stage
+		long scanned = Metrics.getThreadBytesRead() - bytesRead;
+
+		this.stage.addExons(1, letters.length());
+
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.chromosome = gene.getChromosome().getId();
+			event.gene = gene.getName();
+			event.exon = exon.getId();
+			event.length = letters.length();
+			event.bytesScanned = scanned;
+			event.found = startInChromosome >= 0;
+			event.position = startInChromosome;
+			event.tier = tier;
+			event.edits = edits;
+			event.strand = strand.getSymbol();
+			event.commit();
+		}
+
+		// remember where it is in the input file
+		if (edits > 0) {
+			this.locations.put(exon, (int) startInChromosome, length, edits);
+		} else {
+			this.locations.put(exon, (int) startInChromosome);
+		}
+
+		this.locations.setStrand(exon, strand);
+
+		if (startInChromosome >= 0) {
+
+			this.found.incrementAndGet();
+
+			this.stage.count("found");
+
+		} else {
+
+			this.stage.count("notFound");
+
+			GLT.logger.info("Could not find exon:" + letters);
+		}
+
+		return (int) startInChromosome;
+	}
+
+	/**
+	 * Looks for all copies of an exon and keeps them in the Locations.
+	 *
+	 * @return the encoded position of the leftmost copy, -1 if there is none
+	 */
+	private long locateAll(Exon exon, String letters, String reverseComplement, Locator locator) throws IOException {
+
+		LongList hits = this.hits.get();
+		hits.clear();
+
+		int positive = locator.locateAll(letters, this.maxHits, hits);
+
+		if (reverseComplement != null) {
+			locator.locateAll(reverseComplement, this.maxHits, hits);
+		}
+
+		if (hits.isEmpty()) {
+			return -1;
+		}
+
+		long[] encoded = hits.toArray();
+		long first = -1;
+
+		for (int i = 0; i < encoded.length; i++) {
+
+			if (i >= positive) {
+				encoded[i] = Locations.encode(encoded[i], Strand.Negative);
+			}
+
+			if (first == -1 || Locations.decodePosition(encoded[i]) < Locations.decodePosition(first)) {
+				first = encoded[i];
+			}
+		}
+
+		this.locations.setHits(exon, encoded);
+
+		if (encoded.length > 1) {
+			this.stage.count("multiCopy");
+		}
+
+		return first;
+	}
+
+	/**
+	 * Returns the number of exons which have been found so far.
+	 *
+	 * @return the number of exons which have been found so far
+	 */
+	public int getFound() {
+		return this.found.get();
+	}
+
+	/**
+	 * Returns the number of exons which have been taken from the checkpoint.
+	 *
+	 * @return the number of exons which have been taken from the checkpoint
+	 */
+	public int getResumed() {
+		return this.resumed.get();
+	}
+}
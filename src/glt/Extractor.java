@@ -0,0 +1,119 @@
+package glt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extracts the bases of many exons from a chromosome at once. The exons are
+ * sorted by their position and neighbouring ones are merged into a single
+ * large read, so the chromosome is read sequentially in a few big blocks
+ * instead of seeking back and forth for every single exon.
+ * 
+ * @author michael
+ * 
+ */
+public class Extractor {
+
+	private SequenceStore store = null;
+	private SequenceProvider provider = null;
+	private int maximumGap = 0; // exons at most this far apart are read together
+	private int maximumReadSize = 0; // the largest single read
+
+	private int reads = 0;
+	private long readBytes = 0;
+
+	public Extractor(SequenceStore store, SequenceProvider provider, int maximumGap, int maximumReadSize) {
+		this.store = store;
+		this.provider = provider;
+		this.maximumGap = maximumGap;
+		this.maximumReadSize = maximumReadSize;
+	}
+
+	/**
+	 * Extracts the bases of all exons which are not cached by the provider yet
+	 * and adds them to it.
+	 * 
+	 * @param exons
+	 *            The exons in any order
+	 * @return The Extractor
+	 * @throws IOException
+	 */
+	public Extractor extract(Collection<Exon> exons) throws IOException {
+
+		List<Exon> sorted = new ArrayList<Exon>();
+
+		for (Exon exon : exons) {
+			if (!this.provider.contains(this.store, exon.getFrom(), exon.getTo())) {
+				sorted.add(exon);
+			}
+		}
+
+		Collections.sort(sorted);
+
+		int first = 0;
+
+		while (first < sorted.size()) {
+
+			// find the last exon which can still be read together with the first one
+			long from = sorted.get(first).getFrom();
+			long to = sorted.get(first).getTo();
+
+			int last = first;
+
+			while (last + 1 < sorted.size()) {
+
+				Exon next = sorted.get(last + 1);
+				long nextTo = Math.max(to, next.getTo());
+
+				if (next.getFrom() > to + 1 + this.maximumGap || nextTo - from + 1 > this.maximumReadSize) {
+					break;
+				}
+
+				to = nextTo;
+				last++;
+			}
+
+			// read them all in one go
+			int length = (int) (to - from + 1);
+			byte[] block = new byte[length];
+
+			this.store.read(from, block, 0, length);
+
+			this.reads++;
+			this.readBytes += length;
+
+			for (int i = first; i <= last; i++) {
+
+				Exon exon = sorted.get(i);
+				int offset = (int) (exon.getFrom() - from);
+
+				this.provider.put(this.store, exon.getFrom(), block, offset, exon.getLength());
+			}
+
+			first = last + 1;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Returns the number of reads so far.
+	 * 
+	 * @return the number of reads so far.
+	 */
+	public int getReads() {
+		return this.reads;
+	}
+
+	/**
+	 * Returns the number of bytes read so far.
+	 * 
+	 * @return the number of bytes read so far.
+	 */
+	public long getReadBytes() {
+		return this.readBytes;
+	}
+}
@@ -0,0 +1,637 @@
+package glt;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * An FM-index of a .bases file, stored in a sidecar file which is mapped
+ * read-only like the .bases file itself. It is built once per sample
+ * chromosome and reused by all later runs, see forFile().
+ *
+ * The chromosome is read as text over $ < A < C < G < T < N, where N stands
+ * for any letter but A, C, G and T and $ terminates the text. Soft-masked
+ * bases are read as upper case ones. Its suffix array is built with SA-IS and
+ * turned into the Burrows-Wheeler transform, so the range of suffixes
+ * starting with some bases is found in time proportional to their length,
+ * see find(). Every SAMPLE_RATE-th position of the text is kept to turn them
+ * back into positions, see locate(). The file consists of
+ *
+ * - the header: magic, version, the length and the last modification of the
+ * .bases file
+ * - C: the number of letters of the text which are smaller than each letter
+ * - the BWT: one byte per letter of the text
+ * - the occurrences of A, C, G, T and N within the BWT before each block of
+ * 64 letters
+ * - the marks of the sampled suffixes: one bit per letter and the number of
+ * marks before each long
+ * - the positions of the sampled suffixes
+ *
+ * Building it takes about 10 bytes of heap per base. All reads are absolute, so
+ * one index can be shared by any number of threads.
+ *
+ * @author michael
+ *
+ */
+public class FmIndex {
+
+	static public final String EXTENSION = ".fm";
+
+	static private final int MAGIC = 0x474c5446; // GLTF
+	static private final int VERSION = 1;
+
+	// the letters of the text
+	static private final int SENTINEL = 0;
+	static private final int OTHER = 5;
+	static private final int ALPHABET_SIZE = 6;
+
+	// every SAMPLE_RATE-th position of the text is kept
+	static private final int SAMPLE_RATE = 32;
+
+	// the occurrences are counted for blocks of the BWT that long
+	static private final int BLOCK_BITS = 6;
+
+	// the bases read at once while building
+	static private final int READ_SIZE = 1 << 20;
+
+	// letter -> letter of the text
+	static private final byte[] CODES = new byte[256];
+
+	static {
+		Arrays.fill(CODES, (byte) OTHER);
+		CODES['A'] = CODES['a'] = 1;
+		CODES['C'] = CODES['c'] = 2;
+		CODES['G'] = CODES['g'] = 3;
+		CODES['T'] = CODES['t'] = 4;
+	}
+
+	// index file name -> the index being opened or built right now
+	static final private InFlight<FmIndex> opening = new InFlight<FmIndex>();
+
+	private String fileName = null;
+	private long basesLength = 0;
+	private long basesLastModified = 0;
+
+	// the length of the text, i.e. the .bases file and $
+	private int length = 0;
+
+	private int[] c = new int[ALPHABET_SIZE + 1];
+
+	private ByteBuffer bwt = null;
+	private ByteBuffer occurrences = null;
+	private ByteBuffer marks = null;
+	private ByteBuffer ranks = null;
+	private ByteBuffer samples = null;
+
+	private FmIndex(String fileName) throws IOException {
+
+		this.fileName = fileName;
+
+		RandomAccessFile in = new RandomAccessFile(fileName, "r");
+
+		try {
+
+			FileChannel channel = in.getChannel();
+
+			long position = 0;
+
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, 4 + 4 + 8 + 8 + 4 * (ALPHABET_SIZE + 1));
+
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(fileName + " is not an FM-index");
+			}
+
+			this.basesLength = header.getLong();
+			this.basesLastModified = header.getLong();
+			this.length = (int) (this.basesLength + 1);
+
+			for (int i = 0; i <= ALPHABET_SIZE; i++) {
+				this.c[i] = header.getInt();
+			}
+
+			position += header.capacity();
+
+			// the mappings stay valid after the channel has been closed
+			this.bwt = channel.map(MapMode.READ_ONLY, position, this.length);
+			position += this.bwt.capacity();
+
+			this.occurrences = channel.map(MapMode.READ_ONLY, position, 4L * (OTHER) * FmIndex.blocks(this.length));
+			position += this.occurrences.capacity();
+
+			int longs = (this.length + 63) / 64;
+
+			this.marks = channel.map(MapMode.READ_ONLY, position, 8L * longs);
+			position += this.marks.capacity();
+
+			this.ranks = channel.map(MapMode.READ_ONLY, position, 4L * longs);
+			position += this.ranks.capacity();
+
+			this.samples = channel.map(MapMode.READ_ONLY, position, channel.size() - position);
+
+		} finally {
+			in.close();
+		}
+
+		GLT.logger.info("Mapped " + fileName + " with " + this.length + " suffixes");
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * Returns the letter of the text for a base.
+	 *
+	 * @param b
+	 *            The base
+	 * @return 1..4 for A, C, G and T, in any case, 5 for anything else
+	 */
+	static public int code(int b) {
+		return CODES[b & 0xff];
+	}
+
+	/**
+	 * Returns the range of the suffixes starting with the letters.
+	 *
+	 * @param letters
+	 *            The bases, A, C, G and T only
+	 * @return {from, to} of the suffixes, from == to if there is none
+	 */
+	public int[] find(String letters) {
+
+		int from = 0;
+		int to = this.length;
+
+		for (int i = letters.length() - 1; i >= 0 && from < to; i--) {
+
+			int letter = FmIndex.code(letters.charAt(i));
+
+			from = this.c[letter] + this.occurrences(letter, from);
+			to = this.c[letter] + this.occurrences(letter, to);
+		}
+
+		return new int[] { from, Math.max(from, to) };
+	}
+
+	/**
+	 * Returns the position of a suffix within the text. The suffixes are
+	 * followed back letter by letter until one which has been sampled.
+	 *
+	 * @param suffix
+	 *            The index of the suffix within the suffix array
+	 * @return its position
+	 */
+	public long locate(int suffix) {
+
+		int steps = 0;
+
+		while (!this.isSampled(suffix)) {
+
+			// the suffix at 0 is always sampled, so this is never $
+			int letter = this.bwt.get(suffix);
+
+			suffix = this.c[letter] + this.occurrences(letter, suffix);
+			steps++;
+		}
+
+		return (this.samples.getInt(4 * this.rank(suffix)) & 0xffffffffL) + steps;
+	}
+
+	/**
+	 * Returns the number of letters within the BWT before the index.
+	 */
+	private int occurrences(int letter, int index) {
+
+		int block = index >>> BLOCK_BITS;
+
+		int n = this.occurrences.getInt(4 * (block * OTHER + letter - 1));
+
+		for (int i = block << BLOCK_BITS; i < index; i++) {
+			if (this.bwt.get(i) == letter) {
+				n++;
+			}
+		}
+
+		return n;
+	}
+
+	private boolean isSampled(int suffix) {
+		return (this.marks.getLong(8 * (suffix >>> 6)) & (1L << (suffix & 63))) != 0;
+	}
+
+	/**
+	 * Returns the number of sampled suffixes before this one.
+	 */
+	private int rank(int suffix) {
+		long below = this.marks.getLong(8 * (suffix >>> 6)) & ((1L << (suffix & 63)) - 1);
+		return this.ranks.getInt(4 * (suffix >>> 6)) + Long.bitCount(below);
+	}
+
+	/**
+	 * Returns whether the index has been built from the file as it is now.
+	 */
+	private boolean isFor(File basesFile) {
+		return this.basesLength == basesFile.length() && this.basesLastModified == basesFile.lastModified();
+	}
+
+	/**
+	 * Returns the index of a .bases file. It is read from the sidecar if it is
+	 * up to date, otherwise it is built and the sidecar is (re-)written. The
+	 * threads asking for the same file at the same time share one index,
+	 * while those asking for other files are not held up by the build. It is
+	 * not kept afterwards, so it is unmapped once the Locators of the pass
+	 * over the chromosome are gone.
+	 *
+	 * @param store
+	 *            The .bases file
+	 * @param indexFileName
+	 *            The sidecar file
+	 * @return the index
+	 * @throws IOException
+	 */
+	static public FmIndex forFile(final SequenceStore store, final String indexFileName) throws IOException {
+
+		return FmIndex.opening.get(indexFileName, new Callable<FmIndex>() {
+			@Override
+			public FmIndex call() throws IOException {
+				return FmIndex.open(store, indexFileName);
+			}
+		});
+	}
+
+	static private FmIndex open(SequenceStore store, String indexFileName) throws IOException {
+
+		File basesFile = new File(store.getFileName());
+
+		if (new File(indexFileName).exists()) {
+
+			FmIndex index = new FmIndex(indexFileName);
+
+			// it might belong to a different version of the file
+			if (index.isFor(basesFile)) {
+				return index;
+			}
+
+			GLT.logger.info(indexFileName + " is out of date");
+		}
+
+		FmIndex.build(store, indexFileName);
+
+		return new FmIndex(indexFileName);
+	}
+
+	/**
+	 * Builds the index of a .bases file. It is written into a temporary file
+	 * first, so a killed run never leaves a broken index behind.
+	 *
+	 * @param store
+	 *            The .bases file
+	 * @param indexFileName
+	 *            The sidecar file
+	 * @throws IOException
+	 */
+	static public void build(SequenceStore store, String indexFileName) throws IOException {
+
+		// the text needs one more letter and the positions must fit into an int
+		if (store.length() >= Integer.MAX_VALUE - 1) {
+			throw new IOException(store.getFileName() + " is too large to be indexed");
+		}
+
+		GLT.logger.info("Building the FM-index of " + store.getFileName());
+
+		Metrics.Stage stage = Metrics.stage("buildIndex");
+		stage.start();
+
+		try {
+
+			int length = (int) store.length() + 1;
+
+			int[] text = new int[length];
+
+			byte[] block = new byte[READ_SIZE];
+
+			for (long position = 0; position < store.length(); position += READ_SIZE) {
+
+				int read = (int) Math.min(READ_SIZE, store.length() - position);
+
+				store.read(position, block, 0, read);
+
+				for (int i = 0; i < read; i++) {
+					text[(int) position + i] = CODES[block[i] & 0xff];
+				}
+			}
+
+			text[length - 1] = SENTINEL;
+
+			int[] sa = new int[length];
+
+			FmIndex.sais(text, sa, length, ALPHABET_SIZE);
+
+			// the BWT takes the place of the text
+			byte[] bwt = new byte[length];
+
+			for (int i = 0; i < length; i++) {
+				bwt[i] = (byte) (sa[i] > 0 ? text[sa[i] - 1] : SENTINEL);
+			}
+
+			int[] c = new int[ALPHABET_SIZE + 1];
+
+			for (int i = 0; i < length; i++) {
+				c[text[i] + 1]++;
+			}
+
+			for (int i = 1; i <= ALPHABET_SIZE; i++) {
+				c[i] += c[i - 1];
+			}
+
+			text = null;
+
+			File file = new File(indexFileName + ".tmp");
+			File basesFile = new File(store.getFileName());
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+
+			try {
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(basesFile.length());
+				out.writeLong(basesFile.lastModified());
+
+				for (int i = 0; i <= ALPHABET_SIZE; i++) {
+					out.writeInt(c[i]);
+				}
+
+				out.write(bwt);
+
+				// the occurrences of A, C, G, T and N before every block
+				int[] counts = new int[ALPHABET_SIZE];
+
+				for (int i = 0; i < FmIndex.blocks(length); i++) {
+
+					for (int letter = 1; letter <= OTHER; letter++) {
+						out.writeInt(counts[letter]);
+					}
+
+					for (int j = i << BLOCK_BITS; j < Math.min(length, (long) (i + 1) << BLOCK_BITS); j++) {
+						counts[bwt[j]]++;
+					}
+				}
+
+				// the marks of the sampled suffixes and how many there are before each long
+				int longs = (length + 63) / 64;
+
+				for (int i = 0; i < longs; i++) {
+
+					long marks = 0;
+
+					for (int j = i * 64; j < Math.min(length, (i + 1) * 64L); j++) {
+						if (sa[j] % SAMPLE_RATE == 0) {
+							marks |= 1L << (j & 63);
+						}
+					}
+
+					out.writeLong(marks);
+				}
+
+				int rank = 0;
+
+				for (int i = 0; i < longs; i++) {
+
+					out.writeInt(rank);
+
+					for (int j = i * 64; j < Math.min(length, (i + 1) * 64L); j++) {
+						if (sa[j] % SAMPLE_RATE == 0) {
+							rank++;
+						}
+					}
+				}
+
+				for (int i = 0; i < length; i++) {
+					if (sa[i] % SAMPLE_RATE == 0) {
+						out.writeInt(sa[i]);
+					}
+				}
+
+			} finally {
+				out.close();
+			}
+
+			stage.addBytesWritten(file.length());
+
+			File indexFile = new File(indexFileName);
+
+			if (indexFile.exists() && !indexFile.delete()) {
+				throw new IOException("Could not replace " + indexFileName);
+			}
+
+			if (!file.renameTo(indexFile)) {
+				throw new IOException("Could not rename " + file + " to " + indexFileName);
+			}
+
+			GLT.logger.info("Indexed " + length + " suffixes in " + indexFileName);
+
+		} finally {
+			stage.stop();
+		}
+	}
+
+	/**
+	 * Returns the number of blocks of the BWT, including the one after it.
+	 */
+	static private int blocks(int length) {
+		return (length >>> BLOCK_BITS) + 1;
+	}
+
+	/**
+	 * Builds the suffix array of the text with SA-IS: the LMS substrings are
+	 * sorted by inducing, named and, unless all names differ, the suffix array
+	 * of the names is built recursively. The sorted LMS suffixes then induce
+	 * all others.
+	 *
+	 * @param text
+	 *            The text, ending with a unique 0
+	 * @param sa
+	 *            The suffix array
+	 * @param n
+	 *            The length of the text
+	 * @param k
+	 *            The size of the alphabet
+	 */
+	static void sais(int[] text, int[] sa, int n, int k) {
+
+		if (n == 1) {
+			sa[0] = 0;
+			return;
+		}
+
+		// S-type suffixes are smaller than the next one
+		boolean[] s = new boolean[n];
+
+		s[n - 1] = true;
+
+		for (int i = n - 2; i >= 0; i--) {
+			s[i] = text[i] < text[i + 1] || (text[i] == text[i + 1] && s[i + 1]);
+		}
+
+		int[] buckets = new int[k];
+
+		// sort the LMS substrings
+		Arrays.fill(sa, 0, n, -1);
+
+		FmIndex.bucketEnds(text, n, buckets);
+
+		for (int i = 1; i < n; i++) {
+			if (FmIndex.isLms(s, i)) {
+				sa[--buckets[text[i]]] = i;
+			}
+		}
+
+		FmIndex.induce(text, sa, s, n, buckets);
+
+		// move them to the front
+		int n1 = 0;
+
+		for (int i = 0; i < n; i++) {
+			if (FmIndex.isLms(s, sa[i])) {
+				sa[n1++] = sa[i];
+			}
+		}
+
+		// name them, two LMS substrings never start next to each other
+		Arrays.fill(sa, n1, n, -1);
+
+		int names = 0;
+		int previous = -1;
+
+		for (int i = 0; i < n1; i++) {
+
+			int position = sa[i];
+
+			if (previous < 0 || !FmIndex.equalLms(text, s, previous, position)) {
+				names++;
+				previous = position;
+			}
+
+			sa[n1 + position / 2] = names - 1;
+		}
+
+		int[] text1 = new int[n1];
+
+		for (int i = n1, j = 0; i < n; i++) {
+			if (sa[i] >= 0) {
+				text1[j++] = sa[i];
+			}
+		}
+
+		// sort the LMS suffixes
+		int[] sa1 = new int[n1];
+
+		if (names < n1) {
+			FmIndex.sais(text1, sa1, n1, names);
+		} else {
+			for (int i = 0; i < n1; i++) {
+				sa1[text1[i]] = i;
+			}
+		}
+
+		// back to positions of the text
+		for (int i = 1, j = 0; i < n; i++) {
+			if (FmIndex.isLms(s, i)) {
+				text1[j++] = i;
+			}
+		}
+
+		Arrays.fill(sa, 0, n, -1);
+
+		FmIndex.bucketEnds(text, n, buckets);
+
+		for (int i = n1 - 1; i >= 0; i--) {
+			int position = text1[sa1[i]];
+			sa[--buckets[text[position]]] = position;
+		}
+
+		FmIndex.induce(text, sa, s, n, buckets);
+	}
+
+	/**
+	 * Induces the L-type suffixes from the left and then the S-type ones from
+	 * the right.
+	 */
+	static private void induce(int[] text, int[] sa, boolean[] s, int n, int[] buckets) {
+
+		FmIndex.bucketStarts(text, n, buckets);
+
+		for (int i = 0; i < n; i++) {
+			int j = sa[i] - 1;
+			if (j >= 0 && !s[j]) {
+				sa[buckets[text[j]]++] = j;
+			}
+		}
+
+		FmIndex.bucketEnds(text, n, buckets);
+
+		for (int i = n - 1; i >= 0; i--) {
+			int j = sa[i] - 1;
+			if (j >= 0 && s[j]) {
+				sa[--buckets[text[j]]] = j;
+			}
+		}
+	}
+
+	static private boolean isLms(boolean[] s, int i) {
+		return i > 0 && s[i] && !s[i - 1];
+	}
+
+	/**
+	 * Returns whether the LMS substrings at both positions are the same.
+	 */
+	static private boolean equalLms(int[] text, boolean[] s, int a, int b) {
+
+		for (int d = 0;; d++) {
+
+			if (text[a + d] != text[b + d] || s[a + d] != s[b + d]) {
+				return false;
+			}
+
+			if (d > 0 && (FmIndex.isLms(s, a + d) || FmIndex.isLms(s, b + d))) {
+				return FmIndex.isLms(s, a + d) && FmIndex.isLms(s, b + d);
+			}
+		}
+	}
+
+	static private void bucketStarts(int[] text, int n, int[] buckets) {
+
+		Arrays.fill(buckets, 0);
+
+		for (int i = 0; i < n; i++) {
+			buckets[text[i]]++;
+		}
+
+		for (int i = 0, sum = 0; i < buckets.length; i++) {
+			sum += buckets[i];
+			buckets[i] = sum - buckets[i];
+		}
+	}
+
+	static private void bucketEnds(int[] text, int n, int[] buckets) {
+
+		Arrays.fill(buckets, 0);
+
+		for (int i = 0; i < n; i++) {
+			buckets[text[i]]++;
+		}
+
+		for (int i = 1; i < buckets.length; i++) {
+			buckets[i] += buckets[i - 1];
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package glt;
+
+import java.io.IOException;
+
+/**
+ * Locates bases with the FmIndex of the chromosome: the range of the suffixes
+ * starting with them is found in time proportional to their length and the
+ * smallest of their positions is the first occurrence, just like with the
+ * other Locators.
+ *
+ * Bases with other letters than A, C, G and T are handed to another Locator.
+ *
+ * @author michael
+ *
+ */
+public class FmIndexLocator implements Locator {
+
+	private FmIndex index = null;
+	private Locator fallback = null;
+
+	// the strand of the last hit
+	private Strand strand = Strand.Positive;
+
+	// the positions of the suffixes of locateAll(), kept to spare allocating them each time
+	private LongList suffixes = new LongList();
+
+	public FmIndexLocator(FmIndex index, Locator fallback) {
+
+		this.index = index;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public long locate(String letters) throws IOException {
+
+		for (int i = 0; i < letters.length(); i++) {
+			char letter = letters.charAt(i);
+			if (letter != 'A' && letter != 'C' && letter != 'G' && letter != 'T') {
+				return this.fallback.locate(letters);
+			}
+		}
+
+		int[] range = this.index.find(letters);
+
+		long first = -1;
+
+		for (int suffix = range[0]; suffix < range[1]; suffix++) {
+
+			long position = this.index.locate(suffix);
+
+			if (first < 0 || position < first) {
+				first = position;
+			}
+		}
+
+		return first;
+	}
+
+	@Override
+	public int locateAll(String letters, int cap, LongList positions) throws IOException {
+
+		for (int i = 0; i < letters.length(); i++) {
+			char letter = letters.charAt(i);
+			if (letter != 'A' && letter != 'C' && letter != 'G' && letter != 'T') {
+				return this.fallback.locateAll(letters, cap, positions);
+			}
+		}
+
+		int[] range = this.index.find(letters);
+
+		// the suffixes are in lexicographic order, so their positions have to be sorted
+		this.suffixes.clear();
+
+		for (int suffix = range[0]; suffix < range[1]; suffix++) {
+			this.suffixes.add(this.index.locate(suffix));
+		}
+
+		this.suffixes.sort();
+
+		int found = 0;
+		long free = 0; // the first position after the last occurrence
+
+		for (int i = 0; i < this.suffixes.size() && found < cap; i++) {
+
+			long position = this.suffixes.get(i);
+
+			if (position >= free) {
+				positions.add(position);
+				found++;
+				free = position + letters.length();
+			}
+		}
+
+		return found;
+	}
+
+	@Override
+	public long locate(String letters, String reverseComplement) throws IOException {
+
+		// looking them up hardly reads the chromosome, so there is no point in doing both at once
+		long position = this.locate(letters);
+		long reverse = this.locate(reverseComplement);
+
+		this.strand = Strand.Positive;
+
+		if (reverse >= 0 && (position < 0 || reverse < position)) {
+			this.strand = Strand.Negative;
+			position = reverse;
+		}
+
+		return position;
+	}
+
+	@Override
+	public Strand getStrand() {
+		return this.strand;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the index is shared, so it stays open
+		this.fallback.close();
+	}
+}
@@ -0,0 +1,61 @@
+package glt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Converts the letters to upper case while they are read, so soft-masked
+ * (lower case) regions can be searched like any other without having to
+ * normalise the whole file first.
+ * 
+ * Closing it does not close the underlying channel.
+ * 
+ * @author michael
+ * 
+ */
+public class FoldingChannel implements ReadableByteChannel {
+
+	private ReadableByteChannel channel = null;
+	private boolean open = true;
+
+	public FoldingChannel(ReadableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+
+		int position = dst.position();
+		int read = this.channel.read(dst);
+
+		if (read > 0) {
+
+			Metrics.addBytesRead(read);
+
+			if (dst.hasArray()) {
+
+				int offset = dst.arrayOffset() + position;
+				Alphabet.upper(dst.array(), offset, offset + read);
+
+			} else {
+
+				for (int i = position; i < position + read; i++) {
+					dst.put(i, Alphabet.upper(dst.get(i)));
+				}
+			}
+		}
+
+		return read;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.open = false;
+	}
+}
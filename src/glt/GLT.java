@@ -2,28 +2,47 @@ package glt;
 
 import glt.CDS.MatchType;
 import glt.CDS.Status;
+import glt.Config.LocatorType;
+import glt.Config.MatcherType;
+import glt.Config.SoftMasking;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
+import java.io.Writer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.MatchResult;
 
 import ml.options.OptionSet;
 import ml.options.Options;
@@ -34,6 +53,9 @@ public class GLT {
 
 	public static Logger logger = Logger.getLogger("com.GLT");
 
+	// the letters of the exons shared by all stages, see -sequences
+	static private SequenceProvider sequences = new SequenceProvider(new Config().getSequenceCacheSize());
+
 	/**
 	 * The CCDS file structure
 	 * 
@@ -56,11 +78,17 @@ public class GLT {
 
 	/**
 	 * Converts the .fa files into .bases files needed for the Exon export.
+	 * Soft-masked bases are kept, converted to upper case or converted to
+	 * upper case with their positions written to a .mask bitmap, all in the
+	 * same pass.
 	 */
-	static private void convertFasta(Config config, String chromosomeId) {
+	static void convertFasta(Config config, String chromosomeId) {
 
 		logger.info("Converting .fasta files");
 
+		Metrics.Stage stage = Metrics.stage("convertFasta");
+		stage.start();
+
 		try {
 
 			String fastaFileName = config.getInputChromosomeFastaFileName(chromosomeId);
@@ -69,12 +97,21 @@ public class GLT {
 			FileReader fr = new FileReader(fastaFileName);
 			BufferedReader br = new BufferedReader(fr);
 
-			FileWriter fw = new FileWriter(basesFileName);
-			BufferedWriter bw = new BufferedWriter(fw);
+			FileOutputStream fos = new FileOutputStream(basesFileName);
+			BufferedOutputStream bos = new BufferedOutputStream(fos);
+
+			SoftMasking softMasking = config.getSoftMasking();
+			SoftMask mask = null;
 
 			logger.info("Reading from:" + fastaFileName);
 			logger.info("Writing to:" + basesFileName);
 
+			if (softMasking == SoftMasking.Bitmap) {
+				String maskFileName = config.getOutputChromosomeMaskFileName(chromosomeId);
+				logger.info("Writing soft-mask to:" + maskFileName);
+				mask = new SoftMask(maskFileName);
+			}
+
 			while (br.ready()) {
 
 				String line = br.readLine();
@@ -82,13 +119,34 @@ public class GLT {
 				// only use it if it is a proper letter
 				if ((line.length() > 0)
 						&& Character.isLetter(line.codePointAt(0))) {
-					bw.write(line);
+
+					byte[] bases = line.getBytes(StandardCharsets.US_ASCII);
+					int length = bases.length;
+
+					if (mask != null) {
+						mask.add(bases, length);
+					}
+
+					if (softMasking != SoftMasking.Keep) {
+						Alphabet.upper(bases, 0, length);
+					}
+
+					bos.write(bases, 0, length);
+
+					stage.addExons(0, length);
+					stage.addBytesWritten(length);
 				}
 			}
 
-			bw.close();
+			stage.addBytesRead(new File(fastaFileName).length());
+
+			if (mask != null) {
+				mask.close();
+			}
+
+			bos.close();
 			br.close();
-			fw.close();
+			fos.close();
 			fr.close();
 
 		} catch (FileNotFoundException e) {
@@ -99,6 +157,8 @@ public class GLT {
 			e.getLocalizedMessage();
 		}
 
+		stage.stop();
+
 		logger.info("Converting .fasta files finished");
 	}
 
@@ -120,6 +180,33 @@ public class GLT {
 		config.setOutputChromosomeBasesFileName(out);
 	}
 
+	/**
+	 * Extracts the bases of all public exons of the chromosome from the reference,
+	 * reading the chromosome in a few large sequential blocks instead of one seek per exon.
+	 */
+	static private void extractExons(Config config, SequenceStore reference, Chromosome chromosome) throws IOException {
+
+		List<Exon> exons = new ArrayList<Exon>();
+
+		for (Gene gene : chromosome.getGenes()) {
+			for (Accession accession : gene.getAccessions()) {
+				for (CDS cds : accession.getCCDSs()) {
+					if (cds.isPublic()) {
+						exons.addAll(cds.getExons());
+					}
+				}
+			}
+		}
+
+		Extractor extractor = new Extractor(reference, GLT.sequences, config.getCoalesceGap(), config.getMaximumReadSize());
+		extractor.extract(exons);
+
+		if (extractor.getReads() > 0) {
+			GLT.logger.info("Extracted " + exons.size() + " exons with " + extractor.getReads() + " reads of "
+					+ extractor.getReadBytes() + " bytes");
+		}
+	}
+
 	/**
 	 * Exports the exons into two files per chromosome.
 	 * One containing the bases and the other one the locations
@@ -128,7 +215,10 @@ public class GLT {
 
 		GLT.logger.info("Exporting reference exon-data");
 
-		RandomAccessFile in = null;
+		Metrics.Stage stage = Metrics.stage("exportReferenceExons");
+		stage.start();
+
+		SequenceStore in = null;
 		RandomAccessFile outBin = null;
 		RandomAccessFile outLocations = null;
 
@@ -139,7 +229,10 @@ public class GLT {
 			// open the bases-file for that chromosome
 			String chromosomeFileName = config.getReferenceChromosomeBasesFileName(chromosomeId);
 
-			in = new RandomAccessFile(chromosomeFileName, "r");
+			in = SequenceStore.open(chromosomeFileName);
+
+			// read all exons in coordinate order first
+			GLT.extractExons(config, in, chromosome);
 
 			// create the output files
 			String binFilename = config.getOutputChromosomeBasesFileName(chromosomeId);
@@ -177,22 +270,23 @@ public class GLT {
 							// loop over all the exons
 							for (Exon exon : exons) {
 
-								exon.setSourceFile(in);
-
 								// always get the positive strand,
 								// because that is the one we are going to compare with other FASTA files
-								Bases bases = exon.getBases(Strand.Positive);
+								String letters = GLT.sequences.getLetters(in, exon, Strand.Positive);
 								
 								// write the strand to the new file
-								outBin.writeBytes(bases.getLetters());
+								outBin.writeBytes(letters);
 
-								int length = bases.length();
+								int length = letters.length();
 								Strand strand = exon.getStrand();
 								
 								// write [from],[length] into index file
 								String location = "" + currentWritePosition + "," + length + "," + strand.getSymbol() + "\n";
 								outLocations.writeBytes(location);
 
+								stage.addExons(1, length);
+								stage.addBytesWritten(length + location.length());
+
 								currentWritePosition += length;
 							}
 							
@@ -203,7 +297,6 @@ public class GLT {
 				}
 			}
 			
-			in.close();
 			outLocations.close();
 			outBin.close();
 
@@ -214,6 +307,9 @@ public class GLT {
 			System.err.println("I/O error");
 			e.getLocalizedMessage();
 		}
+
+		stage.stop();
+
 		GLT.logger.info("Exporting exon-data finished");
 	}
 
@@ -222,10 +318,13 @@ public class GLT {
 	 * 
 	 * @return ArrayList of Exon-objects
 	 */
-	static private ArrayList<Exon> compileExons(Config config, String chromosomeId) {
+	static ArrayList<Exon> compileExons(Config config, String chromosomeId) {
 
 		logger.info("Compiling exon-data");
 
+		Metrics.Stage stage = Metrics.stage("compileExons");
+		stage.start();
+
 		String fileName = config.getExonsFileName();
 
 		ArrayList<Exon> exons = new ArrayList<Exon>();
@@ -249,7 +348,7 @@ public class GLT {
 					// get the Chromosome
 					String chrId = columns[GLT.CCDSColumnIds.CHROMOSOME];
 					
-					if (chromosomeId == chrId) {
+					if (chromosomeId.equals(chrId)) {
 						
 						Chromosome chromosome = Chromosome.factory(chromosomeId);
 	
@@ -329,6 +428,8 @@ public class GLT {
 								Exon exon = Exon.factory(start, stop, cds);
 	
 								exons.add(exon);
+
+								stage.addExons(1, exon.getLength());
 							}
 						}
 					}
@@ -338,6 +439,8 @@ public class GLT {
 			in.close();
 			fr.close();
 
+			stage.addBytesRead(new File(fileName).length());
+
 		} catch (FileNotFoundException e) {
 			System.err.println("Could not open file");
 			e.getLocalizedMessage();
@@ -347,158 +450,489 @@ public class GLT {
 		}
 
 		GLT.logger.info("Found " + exons.size() + " exons in all chromosomes");
+		stage.stop();
+
 		GLT.logger.info("Compiling exon-data finished");
 
 		return exons;
 	}
 
+	/**
+	 * Returns the Locator searching the input bases file.
+	 * 
+	 * @param matchers
+	 *            The Matchers prepared for the exons, null if there are none
+	 * @param filter
+	 *            The Bloom filter of the input bases file, null for none
+	 * @return the Locator as configured
+	 */
+	static Locator createLocator(Config config, String chromosomeFileName, Gaps gaps, Map<String, Matcher> matchers,
+			BloomFilter filter) throws IOException {
+
+		Locator locator = null;
+
+		switch (config.getLocatorType()) {
+		case Window:
+			GLT.logger.info("Streaming through a window of " + config.getWindowSize() + " bytes using " + config.getMatcherType());
+			locator = new WindowLocator(SequenceStore.open(chromosomeFileName), gaps, config.getWindowSize(), config.getMatcherType(), matchers);
+			break;
+		case Index:
+			// the index is built once and then shared by all threads and later runs,
+			// the window only gets the exons which are too short to be looked up
+			SequenceStore store = SequenceStore.open(chromosomeFileName);
+			KmerIndex index = KmerIndex.forFile(store, chromosomeFileName + KmerIndex.EXTENSION, config.getKmerLength());
+			locator = new IndexLocator(index, store, new WindowLocator(store, gaps, config.getWindowSize(), config.getMatcherType(), matchers));
+			break;
+		case FmIndex:
+			// the same as the k-mer index, but the exons with other letters than A, C, G and T go to the window
+			SequenceStore fmStore = SequenceStore.open(chromosomeFileName);
+			FmIndex fmIndex = FmIndex.forFile(fmStore, chromosomeFileName + FmIndex.EXTENSION);
+			locator = new FmIndexLocator(fmIndex, new WindowLocator(fmStore, gaps, config.getWindowSize(), config.getMatcherType(), matchers));
+			break;
+		default:
+			locator = new ScannerLocator(chromosomeFileName, gaps);
+			break;
+		}
+
+		// exons which are not there for sure are rejected before any of the above reads the chromosome
+		if (filter != null) {
+			locator = new BloomFilterLocator(filter, locator);
+		}
+
+		return locator;
+	}
+
+	/**
+	 * Returns the Locator searching the input bases file for the exons which
+	 * could not be found as they are.
+	 * 
+	 * @return the ApproximateLocator, null if no edits are allowed
+	 */
+	static ApproximateLocator createApproximateLocator(Config config, String chromosomeFileName, Gaps gaps) throws IOException {
+
+		if (config.getMaxEdits() <= 0) {
+			return null;
+		}
+
+		return new ApproximateLocator(SequenceStore.open(chromosomeFileName), gaps, config.getMaxEdits());
+	}
+
+	/**
+	 * Prepares the reference side of a chromosome once for any number of samples:
+	 * the letters of all public exons are read and, if the window is used,
+	 * their Matchers are preprocessed.
+	 * 
+	 * @return pattern -> Matcher, null if the locator does not use any
+	 */
+	static Map<String, Matcher> prepareReference(Config config, Chromosome chromosome) {
+
+		GLT.logger.info("Preparing reference exons");
+
+		Metrics.Stage stage = Metrics.stage("prepareReference");
+		stage.start();
+
+		Map<String, Matcher> matchers = null;
+
+		try {
+
+			SequenceStore reference = SequenceStore.open(config.getReferenceChromosomeBasesFileName(chromosome.getId()));
+
+			GLT.extractExons(config, reference, chromosome);
+
+			if (config.getLocatorType() == LocatorType.Window) {
+
+				List<String> patterns = new ArrayList<String>();
+
+				for (Gene gene : chromosome.getGenes()) {
+					for (Accession accession : gene.getAccessions()) {
+						for (CDS cds : accession.getCCDSs()) {
+							if (cds.isPublic()) {
+								for (Exon exon : cds.getExons()) {
+									String letters = GLT.sequences.getLetters(reference, exon, Strand.Positive);
+									patterns.add(letters);
+									stage.addExons(1, letters.length());
+
+									if (config.isBothStrands()) {
+										patterns.add(GLT.sequences.getLetters(reference, exon, Strand.Negative));
+									}
+								}
+							}
+						}
+					}
+				}
+
+				matchers = Matchers.prepare(config.getMatcherType(), patterns);
+
+				GLT.logger.info("Prepared " + matchers.size() + " " + config.getMatcherType() + " matchers");
+			}
+
+		} catch (IOException e) {
+			System.err.println("I/O error");
+			System.err.println(e.getLocalizedMessage());
+		}
+
+		stage.stop();
+
+		return matchers;
+	}
+
 	/**
 	 * Locates the exons in the input bases file.
+	 * Exons which are in the checkpoint already are not searched again,
+	 * all others are added to it.
+	 * 
+	 * @param matchers
+	 *            The Matchers prepared for the exons, null if there are none
+	 * @return where the exons have been found, null if the search failed, so
+	 *         some of them might not have been searched at all
 	 */
-	static private void locateExons(Config config, Chromosome chromosome) {
+	static private Locations locateExons(Config config, Chromosome chromosome, Checkpoint checkpoint, Map<String, Matcher> matchers) {
 
 		GLT.logger.info("Locating exons");
 
+		Metrics.Stage stage = Metrics.stage("locateExons");
+		stage.start();
+
 		String chromosomeId = chromosome.getId();
 
+		Locations locations = new Locations();
+
 		try {
 
 			// open the reference genome FASTA for reading
 			String referenceChromosomeFileName = config.getReferenceChromosomeBasesFileName(chromosomeId);
-			RandomAccessFile referenceChromosomeIn = new RandomAccessFile(referenceChromosomeFileName, "r");
+			SequenceStore referenceChromosomeIn = SequenceStore.open(referenceChromosomeFileName);
+
+			// read all exons in coordinate order first, unless they have been prepared
+			GLT.extractExons(config, referenceChromosomeIn, chromosome);
 
 			// open the to be scanned .bases file
 			String chromosomeFileName = config.getInputChromosomeBasesFileName(chromosomeId);
 
-			GLT.logger.info("Scanning Chromosome " + chromosomeId);
-
-			// get all genes for the chromosome
-			Collection<Gene> genes = chromosome.getGenes();
-
-			int foundNumberExons = 0;
-			int geneN = 0;
-			int genesCount = genes.size();
-			
-			for (Gene gene : genes) {
+			// there is no point in scanning the runs of N,
+			// so only the sequenced segments between them are searched
+			String gapsFileName = config.getInputChromosomeGapsFileName(chromosomeId);
+			Gaps gaps = Gaps.forFile(chromosomeFileName, gapsFileName, config.getMinimumGapLength());
 
-				geneN++;
-				
-				// get all accessions for this gene
-				Collection<Accession> accessions = gene.getAccessions();
+			// where the exons have been found in previous runs on the same chromosome
+			LocationCache cache = null;
 
-				for (Accession accession : accessions) {
+			if (config.hasLocationCache()) {
+				String hashFileName = config.getInputChromosomeHashFileName(chromosomeId);
+				cache = LocationCache.open(config.getLocationCacheDirectory(), SequenceStore.open(chromosomeFileName), hashFileName);
+			}
 
-					// store all the exons that could not be found,
-					// so we can remove them from the CDS
-					Set<Exon> notFoundExons = new HashSet<Exon>();
-					
-					// get all CCDSs for the accession
-					Collection<CDS> cdss = accession.getCCDSs();
+			GLT.logger.info("Scanning Chromosome " + chromosomeId);
 
-					for (CDS cds : cdss) {
+			// only work the public CCDSs and disregard the withdrawn ones
+			List<Exon> exons = new ArrayList<Exon>();
 
-						// only work the public ones
-						// and disregard the withdrawn ones
+			for (Gene gene : chromosome.getGenes()) {
+				for (Accession accession : gene.getAccessions()) {
+					for (CDS cds : accession.getCCDSs()) {
 						if (cds.isPublic()) {
+							exons.addAll(cds.getExons());
+						}
+					}
+				}
+			}
 
-							// get all exons for the ccds
-							Collection<Exon> exons = cds.getExons();
+			// built for this pass only, so it is dropped as soon as the chromosome has been searched
+			BloomFilter filter = null;
 
-							String msg = null;
-							int exonN = 0;
-							int exonsCount = exons.size();
-							
-							// loop over all the exons
-							for (Exon exon : exons) {
+			if (config.getBloomFilterBits() > 0) {
+				filter = BloomFilter.build(SequenceStore.open(chromosomeFileName), config.getBloomFilterBits());
+			}
+
+			ExonSearcher searcher = new ExonSearcher(referenceChromosomeIn, GLT.sequences, checkpoint, cache, locations, stage,
+					config.isBothStrands(), config.getMaxHits());
+
+			if (config.getSearchThreads() > 1) {
+				GLT.searchInParallel(config, chromosomeFileName, gaps, matchers, filter, searcher, exons);
+			} else {
+				Locator locator = GLT.createLocator(config, chromosomeFileName, gaps, matchers, filter);
+				ApproximateLocator approximate = GLT.createApproximateLocator(config, chromosomeFileName, gaps);
+				try {
+					searcher.locate(exons, locator, approximate);
+				} finally {
+					locator.close();
+				}
+			}
 
-								exonN++;
+			for (Gene gene : chromosome.getGenes()) {
+				for (Accession accession : gene.getAccessions()) {
 
-								exon.setSourceFile(referenceChromosomeIn);
+					int notFoundNumberExons = 0;
 
-								// always get the positive strand,
-								// because that is the one we are going to compare with other FASTA files
-								Bases positiveBases = exon.getBases(Strand.Positive);
-								String letters = positiveBases.getLetters();
-								
-								msg = String.format("Scanning chromosome(%s):Gene(%s) %d/%d:Exon %d/%d", 
-										chromosome.getId(), gene.getName(), geneN, genesCount, exonN, exonsCount);
-								GLT.logger.info(msg);
-
-								// @TODO: there must be a better way than opening the file all the time??
-								// we could load it completely into memory first,
-								// however this won't work on small machines, because the chromosomes are fairly huge
-								File chromosomeFile = new File(chromosomeFileName);  
-								FileInputStream chromosomeFIS = new FileInputStream(chromosomeFile);  
-								FileChannel chromosomeFC = chromosomeFIS.getChannel();  
-
-								// see: http://stackoverflow.com/a/4338841
-								// apparently .findWithinHorizon() already uses BoyerMoore internally.
-								Scanner s = new Scanner(chromosomeFile);
-								
-						        if (s.findWithinHorizon(letters, 0) != null) {
-						        	
-						            MatchResult mr = s.match();
-						            int startInChromosome = mr.start();
-
-						            // set the new start based on where it is in the input file
-						            exon.setFrom(startInChromosome);
-
-						            foundNumberExons++;
-						            
-						        } else {
-						        	
-						        	notFoundExons.add(exon);
-						        	
-						        	msg = "Could not find exon:" + letters;
-						        	logger.info(msg);
-						        }
-						        
-						        s.close();
-								
-								chromosomeFC.close();
-								chromosomeFIS.close();
+					for (CDS cds : accession.getCCDSs()) {
+						if (cds.isPublic()) {
+							for (Exon exon : cds.getExons()) {
+								if (!locations.isLocated(exon)) {
+									notFoundNumberExons++;
+								}
 							}
 						}
 					}
-					
-					// anything to throw away?
-					if (!notFoundExons.isEmpty()) {
-						
-						logger.info("Could not locate " + notFoundExons.size() + " exons. Removing them from the CDS");
-						
-						// remove all the ones we could not find,
-						// so the data is clean
-						for (Exon exon : notFoundExons) {
-							exon.remove();
-						}
+
+					// the ones we could not find are not exported,
+					// the model itself stays as it is for the other samples
+					if (notFoundNumberExons > 0) {
+						logger.info("Could not locate " + notFoundNumberExons + " exons. Leaving them out of the export");
 					}
 				}
 			}
+
+			if (cache != null) {
+				cache.close();
+				GLT.logger.info("Location cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+			}
 			
-			GLT.logger.info("Found " + foundNumberExons + " exons");
+			checkpoint.sync();
+
+			GLT.logger.info("Found " + searcher.getFound() + " exons, " + searcher.getResumed() + " of them located before resuming");
+			GLT.logger.info("Sequence cache: " + GLT.sequences);
 			
 		} catch (FileNotFoundException e) {
 			System.err.println("Could not open file");
 			System.err.println(e.getLocalizedMessage());
+			locations = null;
 		} catch (IOException e) {
 			System.err.println("I/O error");
 			System.err.println(e.getLocalizedMessage());
+			locations = null;
 		}
 
+		stage.stop();
+
 		GLT.logger.info("Locating exons finished");
+
+		return locations;
 	}
 	
+	/**
+	 * Searches the exons with several threads, see runBatches(). Every thread
+	 * has a Locator of its own, but they all read the same mapping of the
+	 * input bases file.
+	 * 
+	 * @param filter
+	 *            The Bloom filter shared by the threads, null for none
+	 * @param searcher
+	 *            The searcher shared by the threads
+	 * @param exons
+	 *            The exons in the order of the model
+	 * @throws IOException
+	 */
+	static private void searchInParallel(final Config config, final String chromosomeFileName, final Gaps gaps,
+			final Map<String, Matcher> matchers, final BloomFilter filter, final ExonSearcher searcher, List<Exon> exons)
+			throws IOException {
+
+		GLT.runBatches(config, exons, Metrics.stage("locateExons"), new Callable<BatchWorker>() {
+			@Override
+			public BatchWorker call() throws IOException {
+
+				final Locator locator = GLT.createLocator(config, chromosomeFileName, gaps, matchers, filter);
+				final ApproximateLocator approximate = GLT.createApproximateLocator(config, chromosomeFileName, gaps);
+
+				return new BatchWorker() {
+					@Override
+					public void work(List<Exon> batch) throws IOException {
+						searcher.locate(batch, locator, approximate);
+					}
+
+					@Override
+					public void close() throws IOException {
+						locator.close();
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Works the batches of exons taken by one thread, see runBatches().
+	 */
+	static private interface BatchWorker extends Closeable {
+
+		void work(List<Exon> batch) throws IOException;
+	}
+
+	/**
+	 * Works the exons with several threads of a ForkJoinPool. The exons are
+	 * split into batches, which the threads take one after the other, so a
+	 * thread stuck with long exons does not hold up the others.
+	 * 
+	 * @param exons
+	 *            The exons in the order of the model
+	 * @param stage
+	 *            The stage counting the bytes read by the threads
+	 * @param workers
+	 *            Creates the BatchWorker of each thread, which is closed when
+	 *            there are no batches left
+	 * @throws IOException
+	 */
+	static private void runBatches(Config config, List<Exon> exons, final Metrics.Stage stage,
+			final Callable<BatchWorker> workers) throws IOException {
+
+		final Queue<List<Exon>> batches = new ConcurrentLinkedQueue<List<Exon>>();
+
+		for (int i = 0; i < exons.size(); i += config.getSearchBatchSize()) {
+			batches.add(exons.subList(i, Math.min(i + config.getSearchBatchSize(), exons.size())));
+		}
+
+		int threads = Math.max(1, Math.min(config.getSearchThreads(), batches.size()));
+
+		GLT.logger.info("Working " + batches.size() + " batches of exons with " + threads + " threads for " + stage.getName());
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+		for (int i = 0; i < threads; i++) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+
+					// so the bytes read by this thread are counted as well
+					stage.start();
+
+					try {
+						BatchWorker worker = workers.call();
+
+						try {
+							List<Exon> batch = null;
+							while ((batch = batches.poll()) != null) {
+								worker.work(batch);
+							}
+						} finally {
+							worker.close();
+						}
+					} finally {
+						stage.stop();
+					}
+
+					return null;
+				}
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		try {
+			for (Future<Void> task : pool.invokeAll(tasks)) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while working the exons for " + stage.getName());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Compares the exons which have been found with the reference and writes
+	 * the summary next to the output locations, see VariantSummary.
+	 * 
+	 * @param locations
+	 *            Where the exons have been found
+	 * @return whether the summary has been written
+	 */
+	static private boolean compareExons(final Config config, Chromosome chromosome, Locations locations) {
+
+		GLT.logger.info("Comparing exons with the reference");
+
+		final Metrics.Stage stage = Metrics.stage("compareExons");
+		stage.start();
+
+		String chromosomeId = chromosome.getId();
+		boolean written = false;
+
+		try {
+
+			SequenceStore reference = SequenceStore.open(config.getReferenceChromosomeBasesFileName(chromosomeId));
+			SequenceStore sample = SequenceStore.open(config.getInputChromosomeBasesFileName(chromosomeId));
+
+			final VariantSummary summary = new VariantSummary(reference, sample, GLT.sequences, locations);
+
+			List<Exon> exons = new ArrayList<Exon>();
+
+			for (Gene gene : chromosome.getGenes()) {
+				for (Accession accession : gene.getAccessions()) {
+					for (CDS cds : accession.getCCDSs()) {
+						if (cds.isPublic()) {
+							exons.addAll(cds.getExons());
+						}
+					}
+				}
+			}
+
+			GLT.runBatches(config, exons, stage, new Callable<BatchWorker>() {
+				@Override
+				public BatchWorker call() {
+					return new BatchWorker() {
+						@Override
+						public void work(List<Exon> batch) throws IOException {
+							for (Exon exon : batch) {
+								if (summary.compare(exon) != null) {
+									stage.addExons(1, exon.getLength());
+								}
+							}
+						}
+
+						@Override
+						public void close() {
+						}
+					};
+				}
+			});
+
+			// streamed in the order of the model, so it does not have to be held in memory
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(config.getVariantsFileName(chromosomeId)), StandardCharsets.US_ASCII));
+
+			try {
+				summary.write(chromosome, out);
+			} finally {
+				out.close();
+			}
+
+			written = true;
+
+		} catch (IOException e) {
+			System.err.println("I/O error");
+			System.err.println(e.getLocalizedMessage());
+		}
+
+		stage.stop();
+
+		return written;
+	}
+
 	/**
 	 * Exports the exons into two files per chromosome.
 	 * One containing the bases and the other one the locations
+	 * 
+	 * @param locations
+	 *            Where the exons have been found, the others are left out
+	 * @return whether all exons have been exported
 	 */
-	static private void exportExons(Config config, Chromosome chromosome) {
+	static private boolean exportExons(Config config, Chromosome chromosome, Locations locations) {
+
+		boolean exported = false;
 
 		GLT.logger.info("Exporting exon-data");
 
-		RandomAccessFile referenceChromosomeIn = null;
+		Metrics.Stage stage = Metrics.stage("exportExons");
+		stage.start();
+
+		SequenceStore referenceChromosomeIn = null;
 		RandomAccessFile outBases = null;
 		RandomAccessFile outLocations = null;
+		RandomAccessFile outCopies = null;
 
 		String chromosomeId = chromosome.getId();
 
@@ -506,10 +940,14 @@ public class GLT {
 
 			// open the reference genome FASTA for reading
 			String referenceChromosomeFileName = config.getReferenceChromosomeBasesFileName(chromosomeId);
-			referenceChromosomeIn = new RandomAccessFile(referenceChromosomeFileName, "r");
+			referenceChromosomeIn = SequenceStore.open(referenceChromosomeFileName);
+
+			// anything which has not been read while locating is read in coordinate order
+			GLT.extractExons(config, referenceChromosomeIn, chromosome);
 
 			// open the to be scanned .bases file
 			String chromosomeFileName = config.getInputChromosomeBasesFileName(chromosomeId);
+			SequenceStore chromosomeIn = SequenceStore.open(chromosomeFileName);
 
 			File chromosomeFile = new File(chromosomeFileName);  
 			FileInputStream chromosomeFIS = new FileInputStream(chromosomeFile);  
@@ -522,6 +960,15 @@ public class GLT {
 			outBases = new RandomAccessFile(outputBasesFilename, "rw");
 			outLocations = new RandomAccessFile(outputLocationsFilename, "rw");
 
+			// the number of copies of every exon, the ones which could not be found as well
+			if (config.getMaxHits() > 1) {
+				outCopies = new RandomAccessFile(config.getCopiesFileName(chromosomeId), "rw");
+				outCopies.setLength(0);
+			}
+
+			// copies -> number of exons
+			Map<Integer, Integer> copyNumbers = new TreeMap<Integer, Integer>();
+
 			GLT.logger.info("Exporting Chromosome " + chromosomeId);
 
 			int exportedNumberExons = 0;
@@ -553,20 +1000,56 @@ public class GLT {
 							// loop over all the exons
 							for (Exon exon : exons) {
 
-								exon.setSourceFile(referenceChromosomeIn);
+								if (outCopies != null) {
+
+									int copies = locations.getCopies(exon);
+									Integer count = copyNumbers.get(copies);
+									copyNumbers.put(copies, count != null ? count + 1 : 1);
+
+									outCopies.writeBytes(gene.getName() + "," + exon.getId() + "," + copies + "\n");
+								}
 
-								Bases bases = exon.getBases();
+								// the ones which could not be found are left out
+								if (!locations.isLocated(exon)) {
+									continue;
+								}
+
+								String letters = GLT.sequences.getLetters(referenceChromosomeIn, exon);
+
+								int from = locations.get(exon);
+								int distance = locations.getDistance(exon);
+								Strand strand = locations.getStrand(exon);
+
+								// an approximate hit differs from the reference, so take the bases of the sample.
+								// a hit on the negative strand holds the exon the other way round
+								if (distance > 0) {
+									Strand within = strand == Strand.Positive ? exon.getStrand()
+											: exon.getStrand() == Strand.Positive ? Strand.Negative : Strand.Positive;
+									letters = GLT.sequences.getLetters(chromosomeIn, from, from + locations.getLength(exon) - 1, within);
+								}
 
 								// write the strand to the new file
-								outBases.writeBytes(bases.getLetters());
+								outBases.writeBytes(letters);
 
-								int from = exon.getFrom();
-								int length = bases.length();
+								int length = letters.length();
 								
-								// write [from],[length] into index file
-								String location = "" + currentWritePosition + "," + length + "," + from + "\n";
+								// write [from],[length] into index file, and the edits if there might be any
+								String location = "" + currentWritePosition + "," + length + "," + from;
+								if (config.getMaxEdits() > 0) {
+									location += "," + distance;
+								}
+								if (config.isBothStrands()) {
+									location += "," + strand.getSymbol();
+								}
+								if (config.getMaxHits() > 1) {
+									location += "," + GLT.formatHits(locations, exon, config.isBothStrands());
+								}
+								location += "\n";
 								outLocations.writeBytes(location);
 
+								stage.addExons(1, length);
+								stage.addBytesWritten(length + location.length());
+
 								currentWritePosition += length;
 								
 								exportedNumberExons++;
@@ -578,11 +1061,17 @@ public class GLT {
 			
 			chromosomeFC.close();
 			chromosomeFIS.close();
-			referenceChromosomeIn.close();
 			outLocations.close();
 			outBases.close();
 
+			if (outCopies != null) {
+				outCopies.close();
+				GLT.logger.info("Copies per exon (copies=exons): " + copyNumbers);
+			}
+
 			GLT.logger.info("Exported " + exportedNumberExons + " exons");
+			exported = true;
+			GLT.logger.info("Sequence cache: " + GLT.sequences);
 
 		} catch (FileNotFoundException e) {
 			System.err.println("Could not open file");
@@ -592,37 +1081,481 @@ public class GLT {
 			e.getLocalizedMessage();
 		}
 
+		stage.stop();
+
 		GLT.logger.info("Exporting exon-data finished");
+
+		return exported;
 	}
 
 	/**
-	 * Exports all exons from the file provided by RB
+	 * Returns the copies of an exon as the multi-hit part of its line in the
+	 * locations: the number of copies and their positions separated by ";".
 	 * 
-	 * @return ArrayList of Exon-objects
+	 * @param strands
+	 *            Whether each position is followed by the strand
 	 */
-	static private void exportRBExons(Config config, String chromosomeId) {
+	static private String formatHits(Locations locations, Exon exon, boolean strands) {
 
-		logger.info("Exporting exon-data");
+		long[] hits = locations.getHits(exon);
 
-		int numberExons = 0;
+		// found by the approximate search, which only knows the best hit
+		if (hits == null) {
+			hits = new long[] { Locations.encode(locations.get(exon), locations.getStrand(exon)) };
+		}
 
-		try {
+		StringBuilder formatted = new StringBuilder();
 
-			String fastaFileName = config.getInputChromosomeFastaFileName(chromosomeId);
+		formatted.append(hits.length).append(',');
 
-			FileReader fr = new FileReader(fastaFileName);
-			BufferedReader br = new BufferedReader(fr);
+		for (int i = 0; i < hits.length; i++) {
 
-			// create the output files
-			String outputBasesFilename = config.getOutputExonBasesFileName(chromosomeId);
-			String outputLocationsFilename = config.getOutputExonLocationsFileName(chromosomeId);
+			if (i > 0) {
+				formatted.append(';');
+			}
 
-			RandomAccessFile outBases = new RandomAccessFile(outputBasesFilename, "rw");
-			RandomAccessFile outLocations = new RandomAccessFile(outputLocationsFilename, "rw");
-			
-			logger.info("Reading from:" + fastaFileName);
+			formatted.append(Locations.decodePosition(hits[i]));
 
-			boolean first = true;
+			if (strands) {
+				formatted.append(Locations.decodeStrand(hits[i]).getSymbol());
+			}
+		}
+
+		return formatted.toString();
+	}
+
+	static private void closeCheckpoint(Checkpoint checkpoint) {
+		try {
+			checkpoint.close();
+		} catch (IOException e) {
+			System.err.println("I/O error");
+			System.err.println(e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Returns whether a chromosome of a sample has been exported completely
+	 * by a previous run, which is only the case when resuming.
+	 */
+	static boolean isExported(Config config, String chromosomeId) {
+
+		if (!config.isResume()) {
+			return false;
+		}
+
+		boolean done = false;
+
+		try {
+			Checkpoint checkpoint = Checkpoint.open(config.getCheckpointFileName(chromosomeId), Checkpoint.header(config, chromosomeId), true,
+					config.getCheckpointInterval());
+			done = checkpoint.isDone();
+			checkpoint.close();
+		} catch (IOException e) {
+			System.err.println("I/O error");
+			System.err.println(e.getLocalizedMessage());
+		}
+
+		return done;
+	}
+
+	/**
+	 * Locates and exports the exons of a chromosome in a single sample.
+	 * 
+	 * @param matchers
+	 *            The Matchers prepared for the exons, null if there are none
+	 * @return whether all exons have been exported
+	 */
+	static boolean exportSample(Config config, Chromosome chromosome, Map<String, Matcher> matchers) {
+		return GLT.exportSample(config, chromosome, matchers, null);
+	}
+
+	/**
+	 * Locates and exports the exons of a chromosome in a single sample.
+	 * 
+	 * @param matchers
+	 *            The Matchers prepared for the exons, null if there are none
+	 * @param matrix
+	 *            The exon matrix the sample is added to once it has been
+	 *            exported, null if there is none
+	 * @return whether all exons have been exported
+	 */
+	static boolean exportSample(Config config, Chromosome chromosome, Map<String, Matcher> matchers, ExonMatrix.Builder matrix) {
+
+		String id = chromosome.getId();
+
+		Checkpoint checkpoint = null;
+
+		try {
+			checkpoint = Checkpoint.open(config.getCheckpointFileName(id), Checkpoint.header(config, id), config.isResume(),
+					config.getCheckpointInterval());
+		} catch (IOException e) {
+			System.err.println("I/O error");
+			System.err.println(e.getLocalizedMessage());
+			return false;
+		}
+
+		GLT.logger.info("Working on " + config.getInputChromosomeBasesFileName(id));
+
+		try {
+			return GLT.exportSample(config, chromosome, matchers, matrix, checkpoint);
+		} finally {
+			// the sample is not read again, unlike the reference which is shared by all samples
+			SequenceStore.release(config.getInputChromosomeBasesFileName(id));
+		}
+	}
+
+	/**
+	 * Locates and exports the exons of a chromosome in a single sample, see
+	 * exportSample(Config, Chromosome, Map, ExonMatrix.Builder).
+	 * 
+	 * @param checkpoint
+	 *            The log of the exons located in the sample, it is closed
+	 *            afterwards
+	 * @return whether all exons have been exported
+	 */
+	static private boolean exportSample(Config config, Chromosome chromosome, Map<String, Matcher> matchers, ExonMatrix.Builder matrix,
+			Checkpoint checkpoint) {
+
+		String id = chromosome.getId();
+
+		// find them in the input file
+		Locations locations = GLT.locateExons(config, chromosome, checkpoint, matchers);
+
+		// the exons which have not been searched must not be exported as absent,
+		// so the chromosome is not done and a resumed run searches them
+		if (locations == null) {
+			GLT.logger.severe("Locating the exons of " + config.getInputChromosomeBasesFileName(id) + " failed, not exporting them");
+			GLT.closeCheckpoint(checkpoint);
+			return false;
+		}
+
+		if (config.isVariants()) {
+			GLT.compareExons(config, chromosome, locations);
+		}
+
+		boolean exported = GLT.exportExons(config, chromosome, locations);
+
+		if (exported) {
+			try {
+				checkpoint.done();
+			} catch (IOException e) {
+				System.err.println("I/O error");
+				System.err.println(e.getLocalizedMessage());
+				exported = false;
+			}
+		}
+
+		if (exported && matrix != null) {
+			matrix.add(config.getSampleName(), locations);
+		}
+
+		GLT.closeCheckpoint(checkpoint);
+
+		return exported;
+	}
+
+	/**
+	 * Compiles the exons of a chromosome and removes the duplicate ones.
+	 * 
+	 * @return the chromosome, null if it does not have any exons
+	 */
+	static Chromosome compileChromosome(Config config, String chromosomeId) {
+
+		GLT.compileExons(config, chromosomeId);
+
+		Chromosome chromosome = Chromosome.get(chromosomeId);
+
+		if (chromosome == null) {
+			GLT.logger.warning("There are no exons for chromosome " + chromosomeId);
+			return null;
+		}
+
+		// we may have picked up duplicate ones, so throw those away first,
+		// because it is unnecessary to process them twice
+		GLT.removeDuplicateExons(config, chromosome);
+
+		return chromosome;
+	}
+
+	/**
+	 * Locates and exports the exons of all chromosomes in every sample. The
+	 * reference side, i.e. the model, the exon letters and the Matchers, is
+	 * only prepared once per chromosome and shared by all samples, which are
+	 * worked on by Config.getSampleThreads() threads at the same time.
+	 * 
+	 * If there is an exon matrix, every sample is added to it once it has
+	 * been exported, and it is written after the last one.
+	 * 
+	 * @param samples
+	 *            The configuration of each sample
+	 */
+	static private void exportSamples(Config config, List<Config> samples) {
+
+		List<String> names = new ArrayList<String>();
+
+		for (Config sample : samples) {
+			names.add(sample.getSampleName());
+		}
+
+		for (String id : config.getChromosomeIds()) {
+
+			final List<Config> pending = new ArrayList<Config>();
+
+			for (Config sample : samples) {
+				if (GLT.isExported(sample, id)) {
+					GLT.logger.info("Chromosome " + id + " of " + sample.getInputChromosomeBasesFileName(id)
+							+ " has been exported before, skipping it");
+				} else {
+					pending.add(sample);
+				}
+			}
+
+			// the samples exported before still go into the matrix
+			if (pending.isEmpty() && !config.isExonMatrix()) {
+				continue;
+			}
+
+			final Chromosome chromosome = GLT.compileChromosome(config, id);
+
+			if (chromosome == null) {
+				continue;
+			}
+
+			final ExonMatrix.Builder matrix = config.isExonMatrix() ? new ExonMatrix.Builder(chromosome, names) : null;
+
+			if (!pending.isEmpty()) {
+				GLT.exportSamples(config, chromosome, pending, matrix);
+			}
+
+			if (matrix != null) {
+				GLT.writeExonMatrix(config, id, samples, matrix);
+			}
+
+			// every sample is done with the reference of this chromosome
+			SequenceStore.release(config.getReferenceChromosomeBasesFileName(id));
+		}
+	}
+
+	/**
+	 * Locates and exports the exons of a chromosome in the samples, see
+	 * exportSamples(Config, List).
+	 * 
+	 * @param matrix
+	 *            The exon matrix the samples are added to, null if there is
+	 *            none
+	 */
+	static private void exportSamples(Config config, final Chromosome chromosome, List<Config> pending, final ExonMatrix.Builder matrix) {
+
+		final Map<String, Matcher> matchers = GLT.prepareReference(config, chromosome);
+
+		int threads = Math.min(config.getSampleThreads(), pending.size());
+
+		if (threads <= 1) {
+
+			for (Config sample : pending) {
+				GLT.exportSample(sample, chromosome, matchers, matrix);
+			}
+
+		} else {
+
+			GLT.logger.info("Working on " + pending.size() + " samples with " + threads + " threads");
+
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+
+			for (final Config sample : pending) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						GLT.exportSample(sample, chromosome, matchers, matrix);
+					}
+				}));
+			}
+
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					GLT.logger.log(Level.SEVERE, "Exporting a sample failed", e.getCause());
+				}
+			}
+
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Writes the exon matrix of a chromosome. The samples which have not been
+	 * added while they were exported, e.g. because a previous run has exported
+	 * them already, are read from their checkpoint logs.
+	 * 
+	 * @param samples
+	 *            The configuration of each sample
+	 * @param matrix
+	 *            The exon matrix
+	 * @return whether the matrix has been written
+	 */
+	static private boolean writeExonMatrix(Config config, String chromosomeId, List<Config> samples, ExonMatrix.Builder matrix) {
+
+		Metrics.Stage stage = Metrics.stage("writeExonMatrix");
+		stage.start();
+
+		boolean written = false;
+
+		try {
+
+			for (Config sample : samples) {
+				if (!matrix.has(sample.getSampleName())) {
+					matrix.add(sample.getSampleName(), sample.getCheckpointFileName(chromosomeId));
+				}
+			}
+
+			matrix.write(config.getExonMatrixFileName(chromosomeId));
+
+			written = true;
+
+		} catch (IOException e) {
+			System.err.println("I/O error");
+			System.err.println(e.getLocalizedMessage());
+		}
+
+		stage.stop();
+
+		return written;
+	}
+
+	/**
+	 * Builds the exon matrix of every chromosome from the checkpoint logs of
+	 * samples which have been exported before.
+	 * 
+	 * @param samples
+	 *            The configuration of each sample
+	 */
+	static private void buildExonMatrices(Config config, List<Config> samples) {
+
+		List<String> names = new ArrayList<String>();
+
+		for (Config sample : samples) {
+			names.add(sample.getSampleName());
+		}
+
+		for (String id : config.getChromosomeIds()) {
+
+			Chromosome chromosome = GLT.compileChromosome(config, id);
+
+			if (chromosome != null) {
+				GLT.writeExonMatrix(config, id, samples, new ExonMatrix.Builder(chromosome, names));
+			}
+		}
+	}
+
+	/**
+	 * Answers a question about the exon matrix of every chromosome, one line
+	 * per exon or gene on stdout:
+	 * 
+	 * all: [chromosome],[gene],[exon] of the exons present in every sample
+	 * absent: [chromosome],[gene],[exon],[samples],[absent samples] of the
+	 * exons absent from at least one sample, the absent ones separated by ;
+	 * genes: [chromosome],[gene],[exons],[exons present in every sample],
+	 * [samples with all exons]
+	 * 
+	 * @param query
+	 *            all, absent or genes
+	 */
+	static private void queryExonMatrices(Config config, String query) {
+
+		for (String id : config.getChromosomeIds()) {
+
+			String fileName = config.getExonMatrixFileName(id);
+
+			if (!new File(fileName).exists()) {
+				GLT.logger.warning("There is no exon matrix " + fileName);
+				continue;
+			}
+
+			try {
+
+				ExonMatrix matrix = ExonMatrix.open(fileName);
+
+				List<String> exons = matrix.getExons();
+				List<String> genes = matrix.getGenes();
+				List<String> samples = matrix.getSamples();
+
+				switch (query.toLowerCase()) {
+				case "all":
+					for (int row : matrix.getPresentInAll().toArray()) {
+						System.out.println(id + "," + genes.get(matrix.getGene(row)) + "," + exons.get(row));
+					}
+					break;
+				case "absent":
+					for (int row : matrix.getAbsentInAny().toArray()) {
+
+						StringBuilder absent = new StringBuilder();
+
+						for (int i = 0; i < samples.size(); i++) {
+							if (!matrix.getPresent(i).contains(row)) {
+								absent.append(absent.length() > 0 ? ";" : "").append(samples.get(i));
+							}
+						}
+
+						System.out.println(id + "," + genes.get(matrix.getGene(row)) + "," + exons.get(row) + "," + samples.size() + "," + absent);
+					}
+					break;
+				case "genes":
+					ExonBitmap all = matrix.getPresentInAll();
+					int[] complete = matrix.countCompleteSamples();
+
+					for (int gene = 0; gene < genes.size(); gene++) {
+						ExonBitmap geneExons = matrix.getGeneExons(gene);
+						System.out.println(id + "," + genes.get(gene) + "," + geneExons.getCardinality() + ","
+								+ geneExons.and(all).getCardinality() + "," + complete[gene]);
+					}
+					break;
+				default:
+					System.err.println("Unknown query " + query + ", expected all, absent or genes");
+					return;
+				}
+
+			} catch (IOException e) {
+				System.err.println("I/O error");
+				System.err.println(e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * Exports all exons from the file provided by RB
+	 * 
+	 * @return ArrayList of Exon-objects
+	 */
+	static private void exportRBExons(Config config, String chromosomeId) {
+
+		logger.info("Exporting exon-data");
+
+		Metrics.Stage stage = Metrics.stage("exportRBExons");
+		stage.start();
+
+		int numberExons = 0;
+
+		try {
+
+			String fastaFileName = config.getInputChromosomeFastaFileName(chromosomeId);
+
+			FileReader fr = new FileReader(fastaFileName);
+			BufferedReader br = new BufferedReader(fr);
+
+			// create the output files
+			String outputBasesFilename = config.getOutputExonBasesFileName(chromosomeId);
+			String outputLocationsFilename = config.getOutputExonLocationsFileName(chromosomeId);
+
+			RandomAccessFile outBases = new RandomAccessFile(outputBasesFilename, "rw");
+			RandomAccessFile outLocations = new RandomAccessFile(outputLocationsFilename, "rw");
+			
+			logger.info("Reading from:" + fastaFileName);
+
+			boolean first = true;
 			
 			// @TODO: really not the best code.
 			// we should have a class holding this details, but it's one day before leaving to the desert
@@ -685,6 +1618,9 @@ public class GLT {
 				// write [from],[length] into index file
 				location = "" + startPositions.get(i) + "," + lengths.get(i) + "," + sourcePositions.get(i) + "\n";
 				outLocations.writeBytes(location);
+
+				stage.addExons(1, lengths.get(i));
+				stage.addBytesWritten(lengths.get(i) + location.length());
 			}
 			
 			br.close();
@@ -692,6 +1628,8 @@ public class GLT {
 			outBases.close();
 			outLocations.close();
 
+			stage.addBytesRead(new File(fastaFileName).length());
+
 		} catch (FileNotFoundException e) {
 			System.err.println("Could not open file");
 			e.getLocalizedMessage();
@@ -700,6 +1638,8 @@ public class GLT {
 			e.getLocalizedMessage();
 		}
 
+		stage.stop();
+
 		GLT.logger.info("Found " + numberExons + " exons in chromosome " + chromosomeId);
 		GLT.logger.info("Exporting exon-data finished");
 	}
@@ -711,6 +1651,9 @@ public class GLT {
 
 		GLT.logger.info("Removing duplicate exons");
 
+		Metrics.Stage stage = Metrics.stage("removeDuplicateExons");
+		stage.start();
+
 		// get all genes for the chromosome
 		Collection<Gene> genes = chromosome.getGenes();
 
@@ -738,6 +1681,8 @@ public class GLT {
 					// loop over all the exons
 					for (Exon exon : exons) {
 
+						stage.addExons(1, exon.getLength());
+
 						// do we have this exon already?
 						if (uniqueExons.contains(exon)) {
 
@@ -757,6 +1702,9 @@ public class GLT {
 		for (Exon exon : duplicateExons) {
 			exon.remove();
 		}
+
+		stage.count("duplicates", duplicateExons.size());
+		stage.stop();
 		
 		GLT.logger.info("Removed " + duplicateExons.size() + " duplicates; " + uniqueExons.size() + " remaining");
 	}
@@ -791,22 +1739,128 @@ public class GLT {
 		help.add("      arg1: chromosome FASTA-filename template");
 		help.add("      arg2: chromomsome GLT-filename template");
 		help.add("      A ? in the filename template is replaced with the chromosome ID being processed");
+		help.add("      -s normalise converts soft-masked (lower case) bases to upper case.");
+		help.add("      -s bitmap does the same and also writes their positions to a .mask file next to the output.");
+		help.add("      -s keep leaves them as they are, which is the default.");
+		help.add("      Either way they are matched case-insensitively when locating exons.");
 		help.add("-ee - extract Exons.");
 		help.add("      arg1: Reference chromosome GLT-filename template");
 		help.add("      arg2: source chromosome GLT-filename templatee");
 		help.add("      arg3: output exon.bases filename template");
 		help.add("      arg4: output exon.locations filename template");
 		help.add("      A ? in the filename template is replaced with the chromosome ID being processed");
+		help.add("-eb - extract Exons from many samples against the same reference in one go.");
+		help.add("      arg1: Reference chromosome GLT-filename template");
+		help.add("      arg2: source chromosome GLT-filename template");
+		help.add("      arg3: output exon.bases filename template");
+		help.add("      arg4: output exon.locations filename template");
+		help.add("      arg5...: the sample names, or @file to read them from a file with one name per line");
+		help.add("      A ? in the filename template is replaced with the chromosome ID being processed,");
+		help.add("      a * with the sample name.");
+		help.add("      The CCDS file, the reference exons and the matchers are only prepared once per chromosome.");
+		help.add("      Takes the same options as -ee.");
+		help.add("      -t - set the number of samples worked on at the same time. Defaults to 1.");
+		help.add("      -matrix - write the exon matrix of all samples into this file, see -xm.");
+		help.add("-xm - build the exon matrix: which exons are present in which samples, as one compressed bitmap per sample.");
+		help.add("      arg1: exon.locations filename template of the samples exported before");
+		help.add("      arg2: output matrix filename template");
+		help.add("      arg3...: the sample names, or @file to read them from a file with one name per line");
+		help.add("      A ? in the filename template is replaced with the chromosome ID being processed,");
+		help.add("      a * with the sample name.");
+		help.add("      The exons are read from the .checkpoint logs next to the locations, exact and approximate hits alike.");
+		help.add("-xq - query the exon matrix, one line per exon or gene.");
+		help.add("      arg1: matrix filename template");
+		help.add("      arg2: all - the exons present in every sample: chromosome,gene,exon");
+		help.add("            absent - the exons absent from any sample: chromosome,gene,exon,samples,absent samples separated by ;");
+		help.add("            genes - chromosome,gene,exons,exons present in every sample,samples with all exons");
+		help.add("-daemon - keep the exons and the reference resident and work on jobs, one command per line.");
+		help.add("      arg1: the Unix domain socket file to read the commands from, stdin for stdin");
+		help.add("      ee <reference> <input> <exon.bases> <exon.locations> [c=1,2] [l=window] [m=regex] [w=n] [k=n] [e=n] [strands]");
+		help.add("         [hits=n] [variants] [bloom=n] [p=n] [batch=n] [g=n] [cache=dir] [resume] [checkpoint=n] [coalesce=n] [readsize=n]");
+		help.add("      cf <fasta> <bases> [c=1,2] [s=normalise]");
+		help.add("      status [job], wait <job>, shutdown");
+		help.add("      Every command is answered with lines, the last one starting with ok or error.");
+		help.add("      ee and cf take the same templates and options as -ee and -cf and answer with the job number.");
+		help.add("      -t - set the number of jobs worked on at the same time. Defaults to the number of processors.");
+		help.add("      -queue - set the number of jobs waiting at most. Defaults to 100.");
 		help.add("-rb - extract Exons from RB files.");
 		help.add("      arg1: source chromosome FASTA-filename templatee");
 		help.add("      arg2: output exon.GLT filename template");
 		help.add("      arg3: output exon.locations filename template");
 		help.add("      A ? in the filename template is replaced with the chromosome ID being processed");
+		help.add("-sg - synthesize a genome for testing without the NCBI files.");
+		help.add("      arg1: output reference chromosome FASTA-filename template");
+		help.add("      arg2: output sample chromosome FASTA-filename template");
+		help.add("      A ? in the filename template is replaced with the chromosome ID being processed");
+		help.add("      The matching CCDS.current.txt is written into the working directory and the SNPs");
+		help.add("      and indels of each sample into a .variants file next to it.");
+		help.add("      The same seed always gives the same files.");
+		help.add("      -seed - the seed of all random numbers. Defaults to 1.");
+		help.add("      -scale - the share of the GRCh37 length of each chromosome. Defaults to 0.01, 1 is full size.");
+		help.add("      -length - the length of every chromosome instead.");
+		help.add("      -gc - the GC content. Defaults to 0.41.");
+		help.add("      -gaps - the number of runs of N besides the telomeres and the centromere. Defaults to 4.");
+		help.add("      -repeats - the share of bases within repeats. Defaults to 0.1.");
+		help.add("      -mask - soft-mask the repeats, i.e. write them in lower case.");
+		help.add("      -genes - the number of genes per megabase. Defaults to 8.");
+		help.add("      -snps - the chance of a SNP at every base of a sample. Defaults to 0.001.");
+		help.add("      -indels - the chance of an indel at every base of a sample. Defaults to 0.0001.");
 		help.add("");
 		help.add("-d - set the working directory where to find/store the files.");
 		help.add("     Wrap it with quotation marks to be on the safe side.");
 		help.add("     Add a trailing /");
 		help.add("     Defaults to the current directory.");
+		help.add("-g - set the minimum length of a run of N that is skipped when locating exons.");
+		help.add("     The runs are stored next to the source chromosome in a .gaps file.");
+		help.add("     0 searches the whole chromosome. Defaults to 1000.");
+		help.add("-l - set how exons are located: \"scanner\", \"window\", \"index\" or \"fmindex\". Defaults to scanner.");
+		help.add("     window streams the source chromosome through a window of a fixed size,");
+		help.add("     so the memory needed does not depend on the size of the chromosome.");
+		help.add("     index looks the exons up in a k-mer index of the source chromosome.");
+		help.add("     It is built once into a .kmers file next to the source chromosome and reused by later runs.");
+		help.add("     fmindex looks the exons up in an FM-index of the source chromosome, in time proportional to their length.");
+		help.add("     It is built once into a .fm file, which takes about 10 bytes of heap per base.");
+		help.add("-w - set the size of the window in bytes. Defaults to 4194304.");
+		help.add("-k - set the length of the k-mers of the index, 1..13. Defaults to 12.");
+		help.add("     The index takes 4^k + 1 ints plus one int per base of the source chromosome.");
+		help.add("-bloom - set the bits per base of a Bloom filter of all 20-mers of the source chromosome. Defaults to 0, i.e. none.");
+		help.add("     Exons with a 20-mer which is not in the filter are rejected without searching for them.");
+		help.add("     The filter is built in one pass and takes that many bits per base of heap, 8 is a good start.");
+		help.add("-e - set the number of edits (substituted, inserted or deleted bases) an exon may have. Defaults to 0.");
+		help.add("     Exons which can not be found as they are are searched once more allowing for that many edits.");
+		help.add("     The best hit is exported with the bases of the source chromosome");
+		help.add("     and the number of its edits is added to each line of the locations.");
+		help.add("-strands - look for the exons on the negative strand of the source chromosome as well, in the same pass.");
+		help.add("     The strand of each hit is added to each line of the locations, \"-\" meaning that the source chromosome");
+		help.add("     holds the reverse complement of the exon. The bases are exported on the strand of the exon either way.");
+		help.add("-hits - set the number of copies of an exon which are looked for, e.g. within gene families. Defaults to 1.");
+		help.add("     Copies do not overlap each other and are found in the same pass as the first one.");
+		help.add("     The number of copies and their positions separated by \";\" are added to each line of the locations,");
+		help.add("     the first one is exported as before. The number of copies of every exon goes into a .copies file");
+		help.add("     next to the output locations. Every exon is searched again, even with -resume or -cache.");
+		help.add("-variants - compare the exons which have been found with the reference and write a .variants file");
+		help.add("     next to the output locations: one line per exon with its mismatches, whether it has an indel and its identity,");
+		help.add("     followed by the totals of its CDS and gene. The exons are compared by as many threads as they are searched.");
+		help.add("-p - set the number of threads searching the exons of one chromosome. Defaults to 1.");
+		help.add("     They share the mapping of the source chromosome and take batches of exons one after the other.");
+		help.add("-batch - set the number of exons of such a batch. Defaults to 32.");
+		help.add("-coalesce - set the bytes between two exons of the reference which are still read in one go. Defaults to 65536.");
+		help.add("-readsize - set the bytes of the largest single read of the reference. Defaults to 16777216.");
+		help.add("-m - set the matcher used by the window: \"adaptive\", \"boyermoore\", \"horspool\", \"shiftor\", \"twoway\" or \"regex\".");
+		help.add("     Defaults to adaptive, which picks one for each exon: shiftor for up to 64 bases, twoway for repetitive ones,");
+		help.add("     horspool for up to 256 bases and boyermoore for longer ones. The metrics count how often each has been picked.");
+		help.add("-cache - set the directory remembering where exons have been found in earlier runs.");
+		help.add("     Entries are keyed by the content of the source chromosome and of the exon,");
+		help.add("     so re-running with a new CCDS release only searches for the changed exons.");
+		help.add("-resume - carry on where a killed -ee run stopped.");
+		help.add("     Located exons are logged to a .checkpoint file next to the output locations,");
+		help.add("     chromosomes which have been exported completely are skipped.");
+		help.add("-checkpoint - set the number of located exons between two syncs of the .checkpoint file to disk. Defaults to 256.");
+		help.add("-sequences - set the megabytes of exon letters kept in memory, shared by all samples and jobs. Defaults to 64.");
+		help.add("-progress - set the seconds between two progress lines. 0 turns them off. Defaults to 60.");
+		help.add("-metrics - write a JSON summary of all stages into this file at exit.");
+		help.add("     Running the JVM with -XX:StartFlightRecording also records glt.Stage, glt.ExonSearch");
+		help.add("     and glt.SequenceRead events for every stage, exon and read.");
 		help.add("-c - set the list of chromosomes that should be worked on. Defaults to all chromosomes.");
 		help.add("     Wrap it with quotation marks to be on the safe side.");
 		help.add("     e.g. \"1,2,20,21,X\"");
@@ -819,6 +1873,15 @@ public class GLT {
 		help.add("Extract convert FASTA to internal format. Files are in a particular directory. Process all chromosomes:");
 		help.add("-d \"/home/michael/GLT/resources/\" -ee \"hs_ref_GRCh37.p10_chr?.bases\" \"chr?.bases\" \"chr?.exon.bases\" \"chr?.locations\"");
 		help.add("");
+		help.add("Synthesize soft-masked chromosomes 1 and 2 at a tenth of their size:");
+		help.add("-d \"/tmp/synthetic/\" -c \"1,2\" -scale 0.1 -mask -seed 42 -sg \"ref_chr?.fa\" \"chr?.fa\"");
+		help.add("");
+		help.add("Extract the exons of three samples, two at a time:");
+		help.add("-d \"/home/michael/GLT/resources/\" -l window -t 2 -eb \"hs_ref_GRCh37.p10_chr?.bases\" \"*_chr?.bases\" \"*_chr?.exon.bases\" \"*_chr?.locations\" alex neil vincent");
+		help.add("");
+		help.add("Keep chromosomes 1 and 2 resident and wait for jobs on a socket:");
+		help.add("-d \"/home/michael/GLT/resources/\" -c \"1,2\" -t 4 -daemon \"/tmp/glt.socket\"");
+		help.add("");
 		help.add("Extract data from the RB files:");
 		help.add("-d \"/home/michael/GLT/resources/\" -rb \"chr?.fa\" \"chr?.exon.bases\" \"chr?.locations\"");
 
@@ -830,6 +1893,115 @@ public class GLT {
 		}
 	}
 
+	/**
+	 * Sets the options shared by -ee and -eb.
+	 */
+	static private void setSearchOptions(Config config, OptionSet set) {
+
+		// Config rejects bad values, before any model has been compiled
+		try {
+			if (set.isSet("g")) {
+				config.setMinimumGapLength(Integer.parseInt(set.getOption("g").getResultValue(0)));
+			}
+
+			// the same names as the daemon takes
+			if (set.isSet("l")) {
+				config.setLocatorType(Config.valueOf(LocatorType.values(), set.getOption("l").getResultValue(0)));
+			}
+
+			if (set.isSet("m")) {
+				config.setMatcherType(Config.valueOf(MatcherType.values(), set.getOption("m").getResultValue(0)));
+			}
+
+			if (set.isSet("w")) {
+				config.setWindowSize(Integer.parseInt(set.getOption("w").getResultValue(0)));
+			}
+
+			if (set.isSet("e")) {
+				config.setMaxEdits(Integer.parseInt(set.getOption("e").getResultValue(0)));
+			}
+
+			config.setBothStrands(set.isSet("strands"));
+			config.setVariants(set.isSet("variants"));
+
+			if (set.isSet("hits")) {
+				config.setMaxHits(Integer.parseInt(set.getOption("hits").getResultValue(0)));
+			}
+
+			if (set.isSet("bloom")) {
+				config.setBloomFilterBits(Integer.parseInt(set.getOption("bloom").getResultValue(0)));
+			}
+
+			if (set.isSet("k")) {
+				config.setKmerLength(Integer.parseInt(set.getOption("k").getResultValue(0)));
+			}
+
+			if (set.isSet("p")) {
+				config.setSearchThreads(Integer.parseInt(set.getOption("p").getResultValue(0)));
+			}
+
+			if (set.isSet("batch")) {
+				config.setSearchBatchSize(Integer.parseInt(set.getOption("batch").getResultValue(0)));
+			}
+
+			if (set.isSet("checkpoint")) {
+				config.setCheckpointInterval(Integer.parseInt(set.getOption("checkpoint").getResultValue(0)));
+			}
+
+			if (set.isSet("coalesce")) {
+				config.setCoalesceGap(Integer.parseInt(set.getOption("coalesce").getResultValue(0)));
+			}
+
+			if (set.isSet("readsize")) {
+				config.setMaximumReadSize(Integer.parseInt(set.getOption("readsize").getResultValue(0)));
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println("Invalid option");
+			System.err.println(e.getLocalizedMessage());
+			System.exit(1);
+		}
+
+		config.setResume(set.isSet("resume"));
+
+		if (set.isSet("cache")) {
+			config.setLocationCacheDirectory(set.getOption("cache").getResultValue(0));
+		}
+	}
+
+	/**
+	 * Returns the sample names, reading those given as @file from the file
+	 * with one name per line.
+	 */
+	static private List<String> readSampleNames(List<String> arguments) throws IOException {
+
+		List<String> names = new ArrayList<String>();
+
+		for (String argument : arguments) {
+
+			if (argument.startsWith("@")) {
+
+				BufferedReader in = new BufferedReader(new FileReader(argument.substring(1)));
+
+				try {
+					String line = null;
+					while ((line = in.readLine()) != null) {
+						line = line.trim();
+						if (line.length() > 0 && !line.startsWith("#")) {
+							names.add(line);
+						}
+					}
+				} finally {
+					in.close();
+				}
+
+			} else {
+				names.add(argument);
+			}
+		}
+
+		return names;
+	}
+
 	static public void main(String[] arguments) {
 
 		String msg = null;
@@ -843,16 +2015,101 @@ public class GLT {
 		
 		// convert fasta: arg1 = fasta files, arg2 = bases files
 		// c = comma separated list of chromosomes e.g. "1,3,18,X" 
-		opt.addSet("cfset", 2).addOption("cf").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		// s = what to do with soft-masked bases: "keep", "normalise" or "bitmap"
+		opt.addSet("cfset", 2).addOption("cf").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("s", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
 		// extract exons: arg1 = reference bases, arg2 = input bases, arg3 = output exon.bases, arg4 = output exon.locations
 		// c = comma separated list of chromosomes e.g. "1,3,18,X"
-		opt.addSet("eeset", 4).addOption("ee").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		// g = minimum length of a run of N which is skipped
+		// l = locator "scanner" or "window", m = matcher "adaptive", "boyermoore", "horspool", "shiftor", "twoway" or "regex", w = window size in bytes
+		// k = length of the k-mers of the index, e = number of edits an exon may have
+		// strands = look for the exons on both strands of the input chromosome
+		// hits = number of copies of an exon which are looked for
+		// variants = compare the exons which have been found with the reference
+		// bloom = bits per base of the Bloom filter rejecting absent exons
+		// p = number of threads searching a chromosome, batch = number of exons per search task
+		// cache = directory remembering the exon locations across runs
+		// resume = carry on where a killed run stopped, checkpoint = exons between two syncs of its log
+		// coalesce = bytes between reference exons read together, readsize = largest read of the reference
+		opt.addSet("eeset", 4).addOption("ee").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("g", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("l", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("m", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("w", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("k", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("e", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("strands", Multiplicity.ZERO_OR_ONE)
+				.addOption("hits", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("variants", Multiplicity.ZERO_OR_ONE)
+				.addOption("bloom", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("p", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("batch", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("cache", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("resume", Multiplicity.ZERO_OR_ONE)
+				.addOption("checkpoint", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("coalesce", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("readsize", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		// extract exons in batch: arg1 = reference bases, arg2 = input bases, arg3 = output exon.bases, arg4 = output exon.locations
+		// with * replaced by the sample name, arg5... = sample names or @file with one sample name per line
+		// t = number of samples worked on at the same time, matrix = exon matrix of all samples, all other options as for -ee
+		opt.addSet("ebset", 5, Integer.MAX_VALUE).addOption("eb").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("g", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("l", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("m", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("w", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("k", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("e", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("strands", Multiplicity.ZERO_OR_ONE)
+				.addOption("hits", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("variants", Multiplicity.ZERO_OR_ONE)
+				.addOption("bloom", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("p", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("batch", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("cache", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("resume", Multiplicity.ZERO_OR_ONE)
+				.addOption("checkpoint", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("coalesce", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("readsize", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("t", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("matrix", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		// build the exon matrix: arg1 = exon.locations of the samples with * replaced by the sample name,
+		// arg2 = output matrix, arg3... = sample names or @file with one sample name per line
+		opt.addSet("xmset", 3, Integer.MAX_VALUE).addOption("xm").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		// query the exon matrix: arg1 = matrix, arg2 = all, absent or genes
+		opt.addSet("xqset", 2).addOption("xq").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		// daemon: works on jobs submitted through a Unix domain socket or stdin
+		// arg1 = the socket file or stdin, t = number of jobs worked on at the same time
+		// queue = number of jobs waiting at most
+		opt.addSet("dset", 1).addOption("daemon").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("t", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("queue", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
 		// extracts exons from the file provided by RB
 		// arg2 = input .fa, arg2 = output exon.bases, arg3 = output exon.locations
 		opt.addSet("rbset", 3).addOption("rb").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
 
+		// synthesize genome: arg1 = reference fasta files, arg2 = sample fasta files, the CCDS file goes into the directory
+		// seed = seed of all random numbers, scale = share of the GRCh37 lengths, length = length of every chromosome
+		// gc = GC content, gaps = number of gaps, repeats = share of bases within repeats, mask = soft-mask the repeats
+		// genes = genes per megabase, snps/indels = chance of a SNP/indel at every base of a sample
+		opt.addSet("sgset", 2).addOption("sg").addOption("c", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("seed", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("scale", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("length", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("gc", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("gaps", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("repeats", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("mask", Multiplicity.ZERO_OR_ONE)
+				.addOption("genes", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("snps", Separator.BLANK, Multiplicity.ZERO_OR_ONE)
+				.addOption("indels", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+
 		// add -d to all of them
 		opt.addOptionAllSets("d", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		// progress = seconds between two progress lines, metrics = JSON summary file written at exit
+		// sequences = megabytes of exon letters kept in memory
+		opt.addOptionAllSets("sequences", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		opt.addOptionAllSets("progress", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
+		opt.addOptionAllSets("metrics", Separator.BLANK, Multiplicity.ZERO_OR_ONE);
 		
 		OptionSet set = opt.getMatchingSet();
 		if (set == null) {
@@ -879,12 +2136,61 @@ public class GLT {
 
 		msg = "Working with chromosomes " + config.getChromosomeIds().toString();
 		GLT.logger.info(msg);
+
+		if (set.isSet("sequences")) {
+			try {
+				config.setSequenceCacheSize(Long.parseLong(set.getOption("sequences").getResultValue(0)) << 20);
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid option");
+				System.err.println(e.getLocalizedMessage());
+				System.exit(1);
+			}
+		}
+
+		GLT.sequences = new SequenceProvider(config.getSequenceCacheSize());
+
+		if (set.isSet("progress")) {
+			config.setProgressInterval(Integer.parseInt(set.getOption("progress").getResultValue(0)));
+		}
+
+		if (set.isSet("metrics")) {
+			config.setMetricsFileName(set.getOption("metrics").getResultValue(0));
+		}
+
+		Metrics.startProgress(config.getProgressInterval());
+
+		// write the summary even if we get killed
+		final String metricsFileName = config.getMetricsFileName();
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				if (metricsFileName != null) {
+					try {
+						Metrics.writeJson(metricsFileName, GLT.sequences);
+					} catch (IOException e) {
+						System.err.println("I/O error");
+						System.err.println(e.getLocalizedMessage());
+					}
+				}
+			}
+		});
 		
 		int i = 0;
 
 		// Evaluate the different option sets
 		if (set.getSetName().equals("cfset")) {
 		  
+			if (set.isSet("s")) {
+				try {
+					config.setSoftMasking(Config.valueOf(SoftMasking.values(), set.getOption("s").getResultValue(0)));
+				} catch (IllegalArgumentException e) {
+					System.err.println("Invalid option");
+					System.err.println(e.getLocalizedMessage());
+					System.exit(1);
+				}
+			}
+
 			// set the different file name masks
 			config.setInputChromosomeFastaFileName(set.getData().get(i++));
 			config.setOutputChromosomeBasesFileName(set.getData().get(i++));
@@ -896,32 +2202,118 @@ public class GLT {
 		
 		if (set.getSetName().equals("eeset")) {
 			
+			GLT.setSearchOptions(config, set);
+
 			// set the different file name masks
 			config.setReferenceChromosomeBasesFileName(set.getData().get(i++));
 			config.setInputChromosomeBasesFileName(set.getData().get(i++));
 			config.setOutputExonBasesFileName(set.getData().get(i++));
 			config.setOutputExonLocationsFileName(set.getData().get(i++));
 
-			for (String id : config.getChromosomeIds()) {
-	
-				GLT.compileExons(config, id);
-				
-				Chromosome chromosome = Chromosome.get(id);
-				
-				// we may have picked up duplicate ones, so throw those away first,
-				// because it is unnecessary to process them twice
-				GLT.removeDuplicateExons(config, chromosome);
-				
-				// find them in the input file
-				GLT.locateExons(config, chromosome);
-				
-				// and throw the duplicated ones away again for good measure
-				GLT.removeDuplicateExons(config, chromosome);
-				
-				GLT.exportExons(config, chromosome);
-			}
+			GLT.exportSamples(config, Collections.singletonList(config));
 		}
 		
+		if (set.getSetName().equals("ebset")) {
+
+			GLT.setSearchOptions(config, set);
+
+			if (set.isSet("t")) {
+				config.setSampleThreads(Integer.parseInt(set.getOption("t").getResultValue(0)));
+			}
+
+			if (set.isSet("matrix")) {
+				config.setExonMatrixFileName(set.getOption("matrix").getResultValue(0));
+			}
+
+			// set the different file name masks, a * is replaced with the sample name
+			config.setReferenceChromosomeBasesFileName(set.getData().get(i++));
+
+			String inputTemplate = set.getData().get(i++);
+			String exonBasesTemplate = set.getData().get(i++);
+			String exonLocationsTemplate = set.getData().get(i++);
+
+			try {
+
+				List<Config> samples = new ArrayList<Config>();
+
+				for (String name : GLT.readSampleNames(set.getData().subList(i, set.getData().size()))) {
+					samples.add(config.copy()
+							.setSampleName(name)
+							.setInputChromosomeBasesFileName(inputTemplate.replace("*", name))
+							.setOutputExonBasesFileName(exonBasesTemplate.replace("*", name))
+							.setOutputExonLocationsFileName(exonLocationsTemplate.replace("*", name)));
+				}
+
+				GLT.logger.info("Working on " + samples.size() + " samples");
+
+				GLT.exportSamples(config, samples);
+
+			} catch (IOException e) {
+				System.err.println("I/O error");
+				System.err.println(e.getLocalizedMessage());
+			}
+		}
+
+		if (set.getSetName().equals("xmset")) {
+
+			String exonLocationsTemplate = set.getData().get(i++);
+
+			config.setExonMatrixFileName(set.getData().get(i++));
+
+			try {
+
+				List<Config> samples = new ArrayList<Config>();
+
+				for (String name : GLT.readSampleNames(set.getData().subList(i, set.getData().size()))) {
+					samples.add(config.copy()
+							.setSampleName(name)
+							.setOutputExonLocationsFileName(exonLocationsTemplate.replace("*", name)));
+				}
+
+				GLT.buildExonMatrices(config, samples);
+
+			} catch (IOException e) {
+				System.err.println("I/O error");
+				System.err.println(e.getLocalizedMessage());
+			}
+		}
+
+		if (set.getSetName().equals("xqset")) {
+
+			config.setExonMatrixFileName(set.getData().get(i++));
+
+			GLT.queryExonMatrices(config, set.getData().get(i++));
+		}
+
+		if (set.getSetName().equals("dset")) {
+
+			int workers = Runtime.getRuntime().availableProcessors();
+			int queueSize = 100;
+
+			if (set.isSet("t")) {
+				workers = Integer.parseInt(set.getOption("t").getResultValue(0));
+			}
+
+			if (set.isSet("queue")) {
+				queueSize = Integer.parseInt(set.getOption("queue").getResultValue(0));
+			}
+
+			Daemon daemon = new Daemon(config, workers, queueSize);
+
+			String socketFileName = set.getData().get(i++);
+
+			try {
+				if (socketFileName.equals("stdin")) {
+					daemon.serve();
+				} else {
+					daemon.serve(socketFileName);
+				}
+			} catch (IOException e) {
+				System.err.println("I/O error");
+				System.err.println(e.getLocalizedMessage());
+			}
+		}
+
 		if (set.getSetName().equals("rbset")) {
 			
 			// set the different file name masks
@@ -934,5 +2326,75 @@ public class GLT {
 				GLT.exportRBExons(config, id);
 			}
 		}
+
+		if (set.getSetName().equals("sgset")) {
+
+			Synthesizer synthesizer = new Synthesizer();
+
+			if (set.isSet("seed")) {
+				synthesizer.setSeed(Long.parseLong(set.getOption("seed").getResultValue(0)));
+			}
+
+			if (set.isSet("scale")) {
+				synthesizer.setScale(Double.parseDouble(set.getOption("scale").getResultValue(0)));
+			}
+
+			if (set.isSet("length")) {
+				synthesizer.setLength(Integer.parseInt(set.getOption("length").getResultValue(0)));
+			}
+
+			if (set.isSet("gc")) {
+				synthesizer.setGcContent(Double.parseDouble(set.getOption("gc").getResultValue(0)));
+			}
+
+			if (set.isSet("gaps")) {
+				synthesizer.setGapCount(Integer.parseInt(set.getOption("gaps").getResultValue(0)));
+			}
+
+			if (set.isSet("repeats")) {
+				synthesizer.setRepeatFraction(Double.parseDouble(set.getOption("repeats").getResultValue(0)));
+			}
+
+			synthesizer.setSoftMasked(set.isSet("mask"));
+
+			if (set.isSet("genes")) {
+				synthesizer.setGenesPerMegabase(Double.parseDouble(set.getOption("genes").getResultValue(0)));
+			}
+
+			if (set.isSet("snps")) {
+				synthesizer.setSnpRate(Double.parseDouble(set.getOption("snps").getResultValue(0)));
+			}
+
+			if (set.isSet("indels")) {
+				synthesizer.setIndelRate(Double.parseDouble(set.getOption("indels").getResultValue(0)));
+			}
+
+			// set the different file name masks
+			config.setReferenceChromosomeFastaFileName(set.getData().get(i++));
+			config.setInputChromosomeFastaFileName(set.getData().get(i++));
+
+			try {
+
+				for (String id : config.getChromosomeIds()) {
+
+					GLT.logger.info("Synthesizing chromosome " + id);
+
+					synthesizer.writeReference(id, config.getReferenceChromosomeFastaFileName(id));
+					synthesizer.writeSample(id, config.getInputChromosomeFastaFileName(id), config.getInputChromosomeVariantsFileName(id));
+				}
+
+				synthesizer.writeCcds(config.getChromosomeIds(), config.getExonsFileName());
+
+			} catch (IOException e) {
+				System.err.println("I/O error");
+				System.err.println(e.getLocalizedMessage());
+			}
+		}
+
+		Metrics.stopProgress();
+
+		for (Metrics.Stage stage : Metrics.getStages()) {
+			GLT.logger.info("Metrics: " + stage);
+		}
 	}
 }
@@ -0,0 +1,322 @@
+package glt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The runs of N (unsequenced bases) within a chromosome .bases file, e.g.
+ * centromeres, telomeres and the heterochromatin of chromosome Y.
+ *
+ * The gaps are either computed with a single pass over the .bases file or
+ * read from a sidecar file next to it, so they only have to be computed once
+ * per chromosome.
+ *
+ * @author michael
+ *
+ */
+public class Gaps {
+
+	// the size of the buffer when scanning the .bases file
+	static private final int BUFFER_SIZE = 1 << 20;
+
+	private long length = 0; // the length of the whole chromosome
+	private long lastModified = 0; // the last modification of the .bases file
+	private int minimumLength = 0; // the minimum length of a run of N
+	private final List<Interval> gaps = new ArrayList<Interval>();
+
+	private Gaps(long length, long lastModified, int minimumLength) {
+		this.length = length;
+		this.lastModified = lastModified;
+		this.minimumLength = minimumLength;
+	}
+
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Returns whether the gaps have been found in this version of the .bases
+	 * file, i.e. its length and last modification are exactly the ones it had
+	 * when it was scanned. A file which has been replaced, even with one of
+	 * the same length and an older modification, e.g. by cp -p, does not
+	 * match.
+	 *
+	 * @param basesFile
+	 *            The .bases file
+	 * @return whether they belong to it
+	 */
+	public boolean isFor(File basesFile) {
+		return this.length == basesFile.length() && this.lastModified == basesFile.lastModified();
+	}
+
+	/**
+	 * Returns all runs of N.
+	 *
+	 * @return all runs of N ordered by their position.
+	 */
+	public List<Interval> getGaps() {
+		return Collections.unmodifiableList(this.gaps);
+	}
+
+	/**
+	 * Returns the total number of bases within all gaps.
+	 *
+	 * @return the total number of bases within all gaps.
+	 */
+	public long getGapLength() {
+
+		long length = 0;
+
+		for (Interval gap : this.gaps) {
+			length += gap.getLength();
+		}
+
+		return length;
+	}
+
+	/**
+	 * Returns the sequenced regions between the gaps, which are the only ones
+	 * worth searching.
+	 *
+	 * @return the searchable segments ordered by their position.
+	 */
+	public List<Interval> getSegments() {
+
+		List<Interval> segments = new ArrayList<Interval>();
+
+		long from = 0;
+
+		for (Interval gap : this.gaps) {
+
+			if (gap.getFrom() > from) {
+				segments.add(new Interval(from, gap.getFrom() - 1));
+			}
+
+			from = gap.getTo() + 1;
+		}
+
+		if (from < this.length) {
+			segments.add(new Interval(from, this.length - 1));
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Scans the .bases file for runs of N.
+	 *
+	 * @param fileName
+	 *            The .bases file.
+	 * @param minimumLength
+	 *            The minimum length of a run to be regarded as gap. Shorter
+	 *            ones are not worth skipping.
+	 * @return The gaps.
+	 * @throws IOException
+	 */
+	static public Gaps scan(String fileName, int minimumLength) throws IOException {
+
+		File file = new File(fileName);
+		Gaps gaps = new Gaps(file.length(), file.lastModified(), minimumLength);
+
+		FileInputStream in = new FileInputStream(file);
+
+		try {
+
+			byte[] buffer = new byte[BUFFER_SIZE];
+
+			long position = 0;
+			long runFrom = -1; // the start of the current run of N, -1 if none
+
+			int read = 0;
+
+			Kernels kernels = Kernels.factory();
+
+			while ((read = in.read(buffer)) > 0) {
+
+				// jump from one end of a run to the other
+				for (int i = 0; i < read;) {
+
+					if (runFrom < 0) {
+
+						i = kernels.indexOfN(buffer, i, read);
+
+						if (i < read) {
+							runFrom = position + i;
+						}
+
+					} else {
+
+						i = kernels.indexOfNotN(buffer, i, read);
+
+						if (i < read) {
+							gaps.add(runFrom, position + i - 1, minimumLength);
+							runFrom = -1;
+						}
+					}
+				}
+
+				position += read;
+			}
+
+			// a run at the very end of the file, e.g. the q-telomere
+			if (runFrom >= 0) {
+				gaps.add(runFrom, position - 1, minimumLength);
+			}
+
+		} finally {
+			in.close();
+		}
+
+		return gaps;
+	}
+
+	/**
+	 * Reads the gaps from a sidecar file.
+	 *
+	 * @param fileName
+	 *            The sidecar file.
+	 * @return The gaps.
+	 * @throws IOException
+	 */
+	static public Gaps load(String fileName) throws IOException {
+
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+
+		Gaps gaps = null;
+
+		try {
+
+			// the first line holds the length of the chromosome, the minimum length of the runs
+			// and the last modification of the .bases file, which older sidecars do not have
+			String[] header = in.readLine().split(",");
+			gaps = new Gaps(Long.parseLong(header[0]), header.length > 2 ? Long.parseLong(header[2]) : 0, Integer.parseInt(header[1]));
+
+			String line = null;
+
+			while ((line = in.readLine()) != null) {
+
+				if (line.length() > 0) {
+					String[] fromTo = line.split(",");
+					gaps.gaps.add(new Interval(Long.parseLong(fromTo[0]), Long.parseLong(fromTo[1])));
+				}
+			}
+
+		} finally {
+			in.close();
+		}
+
+		return gaps;
+	}
+
+	/**
+	 * Writes the gaps into a sidecar file.
+	 *
+	 * @param fileName
+	 *            The sidecar file.
+	 * @throws IOException
+	 */
+	public void save(String fileName) throws IOException {
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+
+		try {
+
+			out.write("" + this.length + "," + this.minimumLength + "," + this.lastModified);
+			out.newLine();
+
+			for (Interval gap : this.gaps) {
+				out.write(gap.toString());
+				out.newLine();
+			}
+
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the gaps for a .bases file. They are read from the sidecar if it
+	 * is up to date, otherwise they are computed and the sidecar is
+	 * (re-)written.
+	 *
+	 * @param basesFileName
+	 *            The .bases file.
+	 * @param gapsFileName
+	 *            The sidecar file.
+	 * @param minimumLength
+	 *            The minimum length of a run to be regarded as gap. 0 disables
+	 *            the gaps, so the whole chromosome is one segment.
+	 * @return The gaps.
+	 * @throws IOException
+	 */
+	static public Gaps forFile(String basesFileName, String gapsFileName, int minimumLength) throws IOException {
+
+		File basesFile = new File(basesFileName);
+
+		if (minimumLength <= 0) {
+			return new Gaps(basesFile.length(), basesFile.lastModified(), minimumLength);
+		}
+
+		File gapsFile = new File(gapsFileName);
+
+		Gaps gaps = null;
+
+		if (gapsFile.exists()) {
+
+			gaps = Gaps.load(gapsFileName);
+
+			// it might belong to a different version of the file or miss the shorter runs.
+			// if it has been computed with a smaller minimum length, just drop the shorter runs
+			if (!gaps.isFor(basesFile) || gaps.minimumLength > minimumLength) {
+				gaps = null;
+			} else {
+				gaps.filter(minimumLength);
+			}
+		}
+
+		if (gaps == null) {
+
+			GLT.logger.info("Scanning for gaps in " + basesFileName);
+
+			gaps = Gaps.scan(basesFileName, minimumLength);
+
+			try {
+				gaps.save(gapsFileName);
+			} catch (IOException e) {
+				// not being able to write the sidecar is not fatal,
+				// it only means we have to scan again next time
+				GLT.logger.warning("Could not write " + gapsFileName + ":" + e.getLocalizedMessage());
+			}
+		}
+
+		GLT.logger.info("Skipping " + gaps.getGaps().size() + " gaps with " + gaps.getGapLength() + " bases");
+
+		return gaps;
+	}
+
+	private void add(long from, long to, int minimumLength) {
+
+		if (to - from + 1 >= minimumLength) {
+			this.gaps.add(new Interval(from, to));
+		}
+	}
+
+	private void filter(int minimumLength) {
+
+		List<Interval> gaps = new ArrayList<Interval>(this.gaps);
+		this.gaps.clear();
+		this.minimumLength = minimumLength;
+
+		for (Interval gap : gaps) {
+			this.add(gap.getFrom(), gap.getTo(), minimumLength);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package glt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Horspool's simplification of Boyer-Moore: only the bad character rule is
+ * applied, always to the letter below the last one of the pattern. It takes
+ * less work per shift than the full Boyer-Moore and its table is built in no
+ * time, which pays off for patterns of moderate length.
+ * 
+ * @author michael
+ * 
+ */
+public class Horspool implements Matcher {
+
+	private byte[] pattern = null;
+
+	// letter -> how far the pattern may be shifted if it is below its last letter
+	private int[] shift = new int[256];
+
+	public Horspool(String pattern) {
+
+		this.pattern = pattern.getBytes(StandardCharsets.US_ASCII);
+
+		int m = this.pattern.length;
+
+		for (int i = 0; i < 256; i++) {
+			this.shift[i] = m;
+		}
+
+		for (int i = 0; i < m - 1; i++) {
+			this.shift[this.pattern[i] & 0xff] = m - 1 - i;
+		}
+	}
+
+	@Override
+	public int length() {
+		return this.pattern.length;
+	}
+
+	@Override
+	public int match(byte[] text, int from, int to) {
+
+		int m = this.pattern.length;
+		byte last = this.pattern[m - 1];
+
+		for (int i = from; i + m <= to; i += this.shift[text[i + m - 1] & 0xff]) {
+
+			if (text[i + m - 1] != last) {
+				continue;
+			}
+
+			int j = m - 2;
+
+			while (j >= 0 && this.pattern[j] == text[i + j]) {
+				j--;
+			}
+
+			if (j < 0) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,65 @@
+package glt;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs a computation once for all threads asking for the same key at the
+ * same time, e.g. building the index of a file, while the threads asking for
+ * other keys go ahead. Nothing is kept once the computation has finished, so
+ * the next thread asking for the key runs it again.
+ *
+ * @author michael
+ *
+ */
+public class InFlight<T> {
+
+	// key -> the computation running right now
+	private final ConcurrentHashMap<String, FutureTask<T>> running = new ConcurrentHashMap<String, FutureTask<T>>();
+
+	/**
+	 * Returns the result of the computation, which is either run by the
+	 * calling thread or by another one which is running it already.
+	 *
+	 * @param key
+	 *            What is computed, e.g. the name of the file
+	 * @param computation
+	 *            The computation
+	 * @return the result
+	 * @throws IOException
+	 */
+	public T get(String key, Callable<T> computation) throws IOException {
+
+		FutureTask<T> task = new FutureTask<T>(computation);
+		FutureTask<T> other = this.running.putIfAbsent(key, task);
+
+		if (other == null) {
+			try {
+				task.run();
+			} finally {
+				this.running.remove(key, task);
+			}
+		} else {
+			task = other;
+		}
+
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + key);
+		}
+	}
+}
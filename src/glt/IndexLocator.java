@@ -0,0 +1,149 @@
+package glt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Locates bases by looking up their rarest k-mer in the KmerIndex of the
+ * chromosome and comparing the bases at each of its positions. Every
+ * occurrence of the bases contains the k-mer at the same offset and its
+ * positions are in ascending order, so the first candidate which matches is
+ * the first occurrence, just like with the other Locators.
+ *
+ * Bases which are shorter than k or contain nothing but k-mers with other
+ * letters than A, C, G and T are handed to another Locator.
+ *
+ * @author michael
+ *
+ */
+public class IndexLocator implements Locator {
+
+	private KmerIndex index = null;
+	private SequenceStore store = null;
+	private Locator fallback = null;
+
+	private byte[] candidate = new byte[0];
+
+	// the hit of locate(), kept to spare allocating a list each time
+	private LongList first = new LongList(1);
+
+	// the strand of the last hit
+	private Strand strand = Strand.Positive;
+
+	public IndexLocator(KmerIndex index, SequenceStore store, Locator fallback) {
+
+		this.index = index;
+		this.store = store;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public long locate(String letters) throws IOException {
+
+		this.first.clear();
+
+		return this.locateAll(letters, 1, this.first) > 0 ? this.first.get(0) : -1;
+	}
+
+	@Override
+	public int locateAll(String letters, int cap, LongList positions) throws IOException {
+
+		int length = letters.length();
+		int k = this.index.getK();
+
+		// the k-mer with the fewest positions and where it is within the letters
+		int seed = -1;
+		int seedOffset = -1;
+		int seedCount = Integer.MAX_VALUE;
+
+		for (int offset = 0; offset + k <= length; offset++) {
+
+			int kmer = this.index.kmer(letters, offset);
+
+			if (kmer < 0) {
+				continue;
+			}
+
+			int count = this.index.count(kmer);
+
+			// a k-mer which is not there at all rules out the letters right away
+			if (count == 0) {
+				return 0;
+			}
+
+			if (count < seedCount) {
+				seed = kmer;
+				seedOffset = offset;
+				seedCount = count;
+			}
+		}
+
+		if (seed < 0) {
+			return this.fallback.locateAll(letters, cap, positions);
+		}
+
+		if (this.candidate.length < length) {
+			this.candidate = new byte[length];
+		}
+
+		byte[] pattern = letters.getBytes(StandardCharsets.US_ASCII);
+
+		int first = this.index.first(seed);
+		int found = 0;
+		long free = 0; // the first position after the last occurrence
+
+		for (int i = first; i < first + seedCount && found < cap; i++) {
+
+			long position = this.index.getPosition(i) - seedOffset;
+
+			if (position >= free && position + length <= this.store.length() && this.matches(position, pattern)) {
+				positions.add(position);
+				found++;
+				free = position + length;
+			}
+		}
+
+		return found;
+	}
+
+	@Override
+	public long locate(String letters, String reverseComplement) throws IOException {
+
+		// looking them up hardly reads the chromosome, so there is no point in doing both at once
+		long position = this.locate(letters);
+		long reverse = this.locate(reverseComplement);
+
+		this.strand = Strand.Positive;
+
+		if (reverse >= 0 && (position < 0 || reverse < position)) {
+			this.strand = Strand.Negative;
+			position = reverse;
+		}
+
+		return position;
+	}
+
+	@Override
+	public Strand getStrand() {
+		return this.strand;
+	}
+
+	/**
+	 * Returns whether the letters are at the position of the chromosome.
+	 * Soft-masked bases match as well.
+	 */
+	private boolean matches(long position, byte[] letters) throws IOException {
+
+		int length = letters.length;
+
+		this.store.read(position, this.candidate, 0, length);
+
+		return Kernels.factory().mismatch(this.candidate, 0, letters, 0, length) < 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the index and the store are shared, so they stay open
+		this.fallback.close();
+	}
+}
@@ -0,0 +1,60 @@
+package glt;
+
+/**
+ * A closed interval [from, to] of positions within a chromosome .bases file.
+ * 
+ * @author michael
+ * 
+ */
+public class Interval implements Comparable<Interval> {
+
+	private long from = 0; // the first position
+	private long to = 0; // the last position
+
+	public Interval(long from, long to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	public long getFrom() {
+		return this.from;
+	}
+
+	public long getTo() {
+		return this.to;
+	}
+
+	public long getLength() {
+		return this.to - this.from + 1;
+	}
+
+	/**
+	 * Returns whether the position lies within the interval.
+	 * 
+	 * @param position
+	 *            The position within the chromosome.
+	 * @return whether the position lies within the interval.
+	 */
+	public boolean contains(long position) {
+		return position >= this.from && position <= this.to;
+	}
+
+	@Override
+	public int compareTo(Interval o) {
+
+		int ret = 0;
+
+		if (this.from == o.getFrom()) {
+			ret = Long.compare(this.to, o.getTo());
+		} else {
+			ret = this.from < o.getFrom() ? -1 : 1;
+		}
+
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "" + this.from + "," + this.to;
+	}
+}
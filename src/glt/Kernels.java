@@ -0,0 +1,201 @@
+package glt;
+
+/**
+ * The byte-level inner loops over bases: comparing them, reverse
+ * complementing them, scanning them for N and converting them to upper case.
+ *
+ * These are the scalar versions, which work everywhere. VectorKernels does
+ * the same with SIMD instructions using the Vector API, which is an
+ * incubator module and has to be added to the JVM with
+ * --add-modules jdk.incubator.vector. factory() returns it if it can be
+ * used and these otherwise, so the callers do not have to care.
+ *
+ * @author michael
+ *
+ */
+public class Kernels {
+
+	// byte -> complement byte, soft-masked bases stay soft-masked and all other bytes map to themselves
+	static protected final byte[] COMPLEMENT = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			COMPLEMENT[i] = (byte) i;
+		}
+		COMPLEMENT['A'] = 'T';
+		COMPLEMENT['T'] = 'A';
+		COMPLEMENT['C'] = 'G';
+		COMPLEMENT['G'] = 'C';
+		COMPLEMENT['a'] = 't';
+		COMPLEMENT['t'] = 'a';
+		COMPLEMENT['c'] = 'g';
+		COMPLEMENT['g'] = 'c';
+	}
+
+	// the kernels used by everyone, created when they are needed for the first time
+	static private class Holder {
+		static private final Kernels kernels = Kernels.create();
+	}
+
+	/**
+	 * Returns the fastest kernels this JVM can run. They are shared, as they
+	 * have no state.
+	 *
+	 * @return the VectorKernels if the Vector API is there and the CPU has
+	 *         vectors of at least 16 bytes, the scalar Kernels otherwise
+	 */
+	static public Kernels factory() {
+		return Holder.kernels;
+	}
+
+	static private Kernels create() {
+
+		Kernels kernels = null;
+
+		// -Dglt.kernels=scalar turns them off, e.g. to compare the results
+		if ("scalar".equalsIgnoreCase(System.getProperty("glt.kernels"))) {
+			kernels = new Kernels();
+		} else {
+			try {
+				kernels = VectorKernels.isUseful() ? new VectorKernels() : new Kernels();
+			} catch (LinkageError e) {
+				// the module has not been added
+				kernels = new Kernels();
+			}
+		}
+
+		GLT.logger.info("Using " + kernels);
+
+		return kernels;
+	}
+
+	/**
+	 * Returns the first position at which the bases differ from the letters.
+	 * Soft-masked bases count as upper case ones.
+	 *
+	 * @param bases
+	 *            The bases, e.g. of the chromosome
+	 * @param basesFrom
+	 *            The first base to compare
+	 * @param letters
+	 *            The upper case letters, e.g. of an exon
+	 * @param lettersFrom
+	 *            The first letter to compare
+	 * @param length
+	 *            The number of bases to compare
+	 * @return the offset of the first difference from basesFrom, -1 if they
+	 *         are the same
+	 */
+	public int mismatch(byte[] bases, int basesFrom, byte[] letters, int lettersFrom, int length) {
+
+		for (int i = 0; i < length; i++) {
+			if (Alphabet.upper(bases[basesFrom + i]) != letters[lettersFrom + i]) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the number of positions at which the bases differ from the
+	 * letters, i.e. the Hamming distance. Soft-masked bases count as upper
+	 * case ones.
+	 *
+	 * @see #mismatch(byte[], int, byte[], int, int)
+	 * @return the number of differences
+	 */
+	public int mismatches(byte[] bases, int basesFrom, byte[] letters, int lettersFrom, int length) {
+
+		int mismatches = 0;
+
+		for (int i = 0; i < length; i++) {
+			if (Alphabet.upper(bases[basesFrom + i]) != letters[lettersFrom + i]) {
+				mismatches++;
+			}
+		}
+
+		return mismatches;
+	}
+
+	/**
+	 * Reverse complements the bases in place. A, C, G and T are
+	 * complemented in either case, all other bytes, e.g. N, stay as they are.
+	 *
+	 * @param bases
+	 *            The bases
+	 * @param from
+	 *            The first base
+	 * @param to
+	 *            The position after the last base
+	 */
+	public void reverseComplement(byte[] bases, int from, int to) {
+
+		for (int i = from, j = to - 1; i <= j; i++, j--) {
+			byte b = COMPLEMENT[bases[i] & 0xff];
+			bases[i] = COMPLEMENT[bases[j] & 0xff];
+			bases[j] = b;
+		}
+	}
+
+	/**
+	 * Returns the position of the first N or n.
+	 *
+	 * @param bases
+	 *            The bases
+	 * @param from
+	 *            The first position to look at
+	 * @param to
+	 *            The position after the last one to look at
+	 * @return the position, to if there is none
+	 */
+	public int indexOfN(byte[] bases, int from, int to) {
+
+		for (int i = from; i < to; i++) {
+			if (bases[i] == 'N' || bases[i] == 'n') {
+				return i;
+			}
+		}
+
+		return to;
+	}
+
+	/**
+	 * Returns the position of the first byte which is neither N nor n, i.e.
+	 * the end of a run of N.
+	 *
+	 * @see #indexOfN(byte[], int, int)
+	 * @return the position, to if there is none
+	 */
+	public int indexOfNotN(byte[] bases, int from, int to) {
+
+		for (int i = from; i < to; i++) {
+			if (bases[i] != 'N' && bases[i] != 'n') {
+				return i;
+			}
+		}
+
+		return to;
+	}
+
+	/**
+	 * Converts the letters to upper case in place.
+	 *
+	 * @param bases
+	 *            The letters
+	 * @param from
+	 *            The first letter to convert
+	 * @param to
+	 *            The position after the last letter to convert
+	 */
+	public void upper(byte[] bases, int from, int to) {
+		for (int i = from; i < to; i++) {
+			bases[i] = Alphabet.upper(bases[i]);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "scalar kernels";
+	}
+}
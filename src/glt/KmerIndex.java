@@ -0,0 +1,419 @@
+package glt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.Callable;
+
+/**
+ * The positions of all k-mers of a .bases file, stored in a sidecar file
+ * which is mapped read-only like the .bases file itself. It is built once per
+ * sample chromosome and reused by all later runs, see forFile().
+ *
+ * A k-mer is 2-bit encoded (A=0, C=1, G=2, T=3), so k-mers containing any
+ * other letter, e.g. the runs of N, are not indexed. Soft-masked bases are
+ * indexed as upper case ones. The file consists of
+ *
+ * - the header: magic, version, k, the length and the last modification of
+ * the .bases file and the number of positions
+ * - the offsets: 4^k + 1 ints, the positions of k-mer h are at offsets[h] up
+ * to offsets[h + 1]
+ * - the positions: ints in ascending order for each k-mer
+ *
+ * All reads are absolute, so one index can be shared by any number of
+ * threads. It is not kept by this class, so it is unmapped once the Locators
+ * of the pass over the chromosome are gone, see forFile().
+ *
+ * @author michael
+ *
+ */
+public class KmerIndex {
+
+	static public final String EXTENSION = ".kmers";
+
+	static private final int MAGIC = 0x474c544b; // GLTK
+	static private final int VERSION = 1;
+	static private final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 8;
+
+	// the positions are mapped in chunks, a ByteBuffer can not be larger than 2 GB
+	static private final int CHUNK_BITS = 30;
+	static private final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+	// the bases read at once while building
+	static private final int BLOCK_SIZE = 1 << 20;
+
+	// letter -> 2-bit code, -1 for anything else
+	static private final byte[] CODES = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			CODES[i] = -1;
+		}
+		CODES['A'] = CODES['a'] = 0;
+		CODES['C'] = CODES['c'] = 1;
+		CODES['G'] = CODES['g'] = 2;
+		CODES['T'] = CODES['t'] = 3;
+	}
+
+	// index file name -> the index being opened or built right now
+	static final private InFlight<KmerIndex> opening = new InFlight<KmerIndex>();
+
+	private String fileName = null;
+	private int k = 0;
+	private long basesLength = 0;
+	private long basesLastModified = 0;
+	private long count = 0;
+
+	private ByteBuffer offsets = null;
+	private MappedByteBuffer[] positions = null;
+
+	private KmerIndex(String fileName) throws IOException {
+
+		this.fileName = fileName;
+
+		RandomAccessFile in = new RandomAccessFile(fileName, "r");
+
+		try {
+
+			FileChannel channel = in.getChannel();
+
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(fileName + " is not a k-mer index");
+			}
+
+			this.k = header.getInt();
+			this.basesLength = header.getLong();
+			this.basesLastModified = header.getLong();
+			this.count = header.getLong();
+
+			long offsetsSize = 4L * (KmerIndex.kmers(this.k) + 1);
+
+			this.offsets = channel.map(MapMode.READ_ONLY, HEADER_SIZE, offsetsSize);
+
+			long from = HEADER_SIZE + offsetsSize;
+			long size = 4L * this.count;
+
+			this.positions = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+
+			for (int i = 0; i < this.positions.length; i++) {
+				// the mapping stays valid after the channel has been closed
+				this.positions[i] = channel.map(MapMode.READ_ONLY, from + i * CHUNK_SIZE, Math.min(CHUNK_SIZE, size - i * CHUNK_SIZE));
+			}
+
+		} finally {
+			in.close();
+		}
+
+		GLT.logger.info("Mapped " + fileName + " with " + this.count + " " + this.k + "-mers");
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * Returns the length of the k-mers.
+	 *
+	 * @return the length of the k-mers
+	 */
+	public int getK() {
+		return this.k;
+	}
+
+	/**
+	 * Returns the k-mer starting at the offset of the letters.
+	 *
+	 * @param letters
+	 *            The letters
+	 * @param offset
+	 *            The first letter of the k-mer
+	 * @return the 2-bit encoded k-mer or -1 if it contains anything but
+	 *         A, C, G and T
+	 */
+	public int kmer(String letters, int offset) {
+
+		int kmer = 0;
+
+		for (int i = offset; i < offset + this.k; i++) {
+
+			int code = CODES[letters.charAt(i) & 0xff];
+
+			if (code < 0) {
+				return -1;
+			}
+
+			kmer = (kmer << 2) | code;
+		}
+
+		return kmer;
+	}
+
+	/**
+	 * Returns how often the k-mer occurs in the chromosome.
+	 *
+	 * @param kmer
+	 *            The 2-bit encoded k-mer
+	 * @return the number of its positions
+	 */
+	public int count(int kmer) {
+		return this.offsets.getInt(4 * (kmer + 1)) - this.offsets.getInt(4 * kmer);
+	}
+
+	/**
+	 * Returns the first position of the k-mer within the positions, see
+	 * getPosition().
+	 *
+	 * @param kmer
+	 *            The 2-bit encoded k-mer
+	 * @return the index of its first position
+	 */
+	public int first(int kmer) {
+		return this.offsets.getInt(4 * kmer);
+	}
+
+	/**
+	 * Returns a position of a k-mer within the chromosome.
+	 *
+	 * @param i
+	 *            The index within the positions, from first() to first() +
+	 *            count() of the k-mer
+	 * @return the position of the k-mer within the chromosome
+	 */
+	public long getPosition(long i) {
+
+		long position = 4 * i;
+
+		return this.positions[(int) (position >>> CHUNK_BITS)].getInt((int) (position & (CHUNK_SIZE - 1)));
+	}
+
+	/**
+	 * Returns whether the index has been built from the file as it is now,
+	 * with k-mers of the length.
+	 */
+	private boolean isFor(File basesFile, int k) {
+		return this.k == k && this.basesLength == basesFile.length() && this.basesLastModified == basesFile.lastModified();
+	}
+
+	/**
+	 * Returns the index of a .bases file. It is read from the sidecar if it is
+	 * up to date, otherwise it is built and the sidecar is (re-)written. The
+	 * threads asking for the same file at the same time share one index,
+	 * while those asking for other files are not held up by the build.
+	 *
+	 * @param store
+	 *            The .bases file
+	 * @param indexFileName
+	 *            The sidecar file
+	 * @param k
+	 *            The length of the k-mers
+	 * @return the index
+	 * @throws IOException
+	 */
+	static public KmerIndex forFile(final SequenceStore store, final String indexFileName, final int k) throws IOException {
+
+		File basesFile = new File(store.getFileName());
+
+		KmerIndex index = null;
+
+		// the one opened by another thread might be for another k
+		while (index == null || !index.isFor(basesFile, k)) {
+			index = KmerIndex.opening.get(indexFileName, new Callable<KmerIndex>() {
+				@Override
+				public KmerIndex call() throws IOException {
+					return KmerIndex.open(store, indexFileName, k);
+				}
+			});
+		}
+
+		return index;
+	}
+
+	static private KmerIndex open(SequenceStore store, String indexFileName, int k) throws IOException {
+
+		File basesFile = new File(store.getFileName());
+
+		if (new File(indexFileName).exists()) {
+
+			KmerIndex index = new KmerIndex(indexFileName);
+
+			// it might belong to a different version of the file or another k
+			if (index.isFor(basesFile, k)) {
+				return index;
+			}
+
+			GLT.logger.info(indexFileName + " is out of date");
+		}
+
+		KmerIndex.build(store, indexFileName, k);
+
+		return new KmerIndex(indexFileName);
+	}
+
+	/**
+	 * Builds the index of a .bases file in two passes: the first one counts
+	 * the k-mers, the second one writes their positions. It is written into a
+	 * temporary file first, so a killed run never leaves a broken index
+	 * behind.
+	 *
+	 * @param store
+	 *            The .bases file
+	 * @param indexFileName
+	 *            The sidecar file
+	 * @param k
+	 *            The length of the k-mers
+	 * @throws IOException
+	 */
+	static public void build(SequenceStore store, String indexFileName, int k) throws IOException {
+
+		if (k < 1 || k > 13) {
+			throw new IOException("The length of the k-mers must be between 1 and 13, not " + k);
+		}
+
+		if (store.length() > Integer.MAX_VALUE) {
+			throw new IOException(store.getFileName() + " is too large to be indexed");
+		}
+
+		GLT.logger.info("Building the " + k + "-mer index of " + store.getFileName());
+
+		Metrics.Stage stage = Metrics.stage("buildIndex");
+		stage.start();
+
+		try {
+
+			int kmers = KmerIndex.kmers(k);
+
+			// k-mer -> number of positions, later the next index within the positions
+			int[] counts = new int[kmers];
+
+			KmerIndex.scan(store, k, counts, null);
+
+			long count = 0;
+
+			for (int i = 0; i < kmers; i++) {
+				int n = counts[i];
+				counts[i] = (int) count;
+				count += n;
+			}
+
+			File file = new File(indexFileName + ".tmp");
+			File basesFile = new File(store.getFileName());
+
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+
+			try {
+
+				FileChannel channel = out.getChannel();
+
+				long offsetsSize = 4L * (kmers + 1);
+
+				channel.truncate(0);
+
+				MappedByteBuffer head = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + offsetsSize);
+
+				head.putInt(MAGIC).putInt(VERSION).putInt(k);
+				head.putLong(basesFile.length()).putLong(basesFile.lastModified()).putLong(count);
+
+				for (int i = 0; i < kmers; i++) {
+					head.putInt(counts[i]);
+				}
+
+				head.putInt((int) count);
+				head.force();
+
+				long from = HEADER_SIZE + offsetsSize;
+				long size = 4L * count;
+
+				MappedByteBuffer[] positions = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+
+				for (int i = 0; i < positions.length; i++) {
+					positions[i] = channel.map(MapMode.READ_WRITE, from + i * CHUNK_SIZE, Math.min(CHUNK_SIZE, size - i * CHUNK_SIZE));
+				}
+
+				// the chromosome is scanned in ascending order,
+				// so the positions of every k-mer are in ascending order as well
+				KmerIndex.scan(store, k, counts, positions);
+
+				for (MappedByteBuffer chunk : positions) {
+					chunk.force();
+				}
+
+				stage.addBytesWritten(from + size);
+
+			} finally {
+				out.close();
+			}
+
+			File indexFile = new File(indexFileName);
+
+			if (indexFile.exists() && !indexFile.delete()) {
+				throw new IOException("Could not replace " + indexFileName);
+			}
+
+			if (!file.renameTo(indexFile)) {
+				throw new IOException("Could not rename " + file + " to " + indexFileName);
+			}
+
+			GLT.logger.info("Indexed " + count + " " + k + "-mers in " + indexFileName);
+
+		} finally {
+			stage.stop();
+		}
+	}
+
+	/**
+	 * Runs over all k-mers of the .bases file. Without positions it counts
+	 * them, otherwise it writes their positions at counts[k-mer] and
+	 * increments it.
+	 */
+	static private void scan(SequenceStore store, int k, int[] counts, MappedByteBuffer[] positions) throws IOException {
+
+		int mask = KmerIndex.kmers(k) - 1;
+
+		byte[] block = new byte[BLOCK_SIZE];
+
+		int kmer = 0;
+		int valid = 0; // the number of A, C, G and T in a row so far
+
+		for (long position = 0; position < store.length(); position += BLOCK_SIZE) {
+
+			int read = (int) Math.min(BLOCK_SIZE, store.length() - position);
+
+			store.read(position, block, 0, read);
+
+			for (int i = 0; i < read; i++) {
+
+				int code = CODES[block[i] & 0xff];
+
+				if (code < 0) {
+					valid = 0;
+					continue;
+				}
+
+				kmer = ((kmer << 2) | code) & mask;
+
+				if (++valid >= k) {
+
+					if (positions == null) {
+						counts[kmer]++;
+					} else {
+						long index = 4L * counts[kmer]++;
+						positions[(int) (index >>> CHUNK_BITS)].putInt((int) (index & (CHUNK_SIZE - 1)), (int) (position + i - k + 1));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of different k-mers.
+	 */
+	static private int kmers(int k) {
+		return 1 << (2 * k);
+	}
+}
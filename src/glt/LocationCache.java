@@ -0,0 +1,256 @@
+package glt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers where exons have been located across runs. The cache is keyed by
+ * the content of the input chromosome and the letters of the exon, so it
+ * stays valid no matter how the files are named or which CCDS release the
+ * exons come from, and never returns anything for a changed chromosome.
+ * 
+ * There is one append-only file per input chromosome content within the
+ * cache directory, with one line per exon: [exon hash],[position] where the
+ * position is -1 if the exon could not be found. It can be shared by the
+ * threads searching a chromosome.
+ * 
+ * @author michael
+ * 
+ */
+public class LocationCache {
+
+	// the size of the blocks when hashing a chromosome
+	static private final int BLOCK_SIZE = 1 << 24;
+
+	// exon hash -> position
+	private final Map<String, Long> locations = new HashMap<String, Long>();
+
+	private BufferedWriter out = null;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	private LocationCache(String fileName) throws IOException {
+
+		File file = new File(fileName);
+
+		if (file.exists()) {
+
+			BufferedReader in = new BufferedReader(new FileReader(file));
+
+			try {
+
+				String line = null;
+
+				while ((line = in.readLine()) != null) {
+
+					String[] hashPosition = line.split(",");
+
+					// ignore a line which has been cut off by a killed run
+					if (hashPosition.length == 2) {
+						try {
+							this.locations.put(hashPosition[0], Long.parseLong(hashPosition[1]));
+						} catch (NumberFormatException e) {
+							GLT.logger.warning("Ignoring broken line in " + fileName);
+						}
+					}
+				}
+
+			} finally {
+				in.close();
+			}
+		}
+
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.US_ASCII));
+
+		GLT.logger.info("Read " + this.locations.size() + " cached exon locations from " + fileName);
+	}
+
+	/**
+	 * Returns the cached position of the exon.
+	 * 
+	 * @param letters
+	 *            The letters of the exon
+	 * @return the position within the chromosome, -1 if it is known not to
+	 *         be there or null if it has not been searched yet.
+	 */
+	public synchronized Long get(String letters) {
+
+		Long position = this.locations.get(LocationCache.hash(letters));
+
+		if (position != null) {
+			this.hits++;
+		} else {
+			this.misses++;
+		}
+
+		return position;
+	}
+
+	/**
+	 * Adds the position of the exon.
+	 * 
+	 * @param letters
+	 *            The letters of the exon
+	 * @param position
+	 *            The position within the chromosome or -1 if it could not be
+	 *            found.
+	 * @throws IOException
+	 */
+	public synchronized void put(String letters, long position) throws IOException {
+
+		String hash = LocationCache.hash(letters);
+
+		if (!this.locations.containsKey(hash)) {
+
+			this.locations.put(hash, position);
+
+			this.out.write(hash + "," + position);
+			this.out.newLine();
+		}
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized void close() throws IOException {
+		this.out.close();
+	}
+
+	/**
+	 * Opens the cache for the input chromosome.
+	 * 
+	 * @param directory
+	 *            The cache directory
+	 * @param store
+	 *            The input chromosome
+	 * @param hashFileName
+	 *            The sidecar holding the hash of the chromosome, so it only
+	 *            has to be computed once.
+	 * @return the cache
+	 * @throws IOException
+	 */
+	static public LocationCache open(String directory, SequenceStore store, String hashFileName) throws IOException {
+
+		new File(directory).mkdirs();
+
+		String hash = LocationCache.hash(store, hashFileName);
+
+		return new LocationCache(new File(directory, hash + ".locations").getPath());
+	}
+
+	/**
+	 * Returns the hash of the chromosome's content. It is read from the
+	 * sidecar if that has been written for exactly this length and last
+	 * modification of the chromosome, otherwise it is computed and the
+	 * sidecar is (re-)written. The sidecar holds the hash on the first line
+	 * and [length],[last modification] on the second one.
+	 */
+	static private String hash(SequenceStore store, String hashFileName) throws IOException {
+
+		File basesFile = new File(store.getFileName());
+		File hashFile = new File(hashFileName);
+
+		// taken before hashing, so a file changed meanwhile is hashed again next time
+		String version = basesFile.length() + "," + basesFile.lastModified();
+
+		String hash = null;
+
+		if (hashFile.exists()) {
+
+			BufferedReader in = new BufferedReader(new FileReader(hashFile));
+
+			try {
+				hash = in.readLine();
+
+				// a sidecar of a different version of the file, e.g. one replaced
+				// by cp -p with an older modification, or one without the version
+				if (!version.equals(in.readLine())) {
+					hash = null;
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		if (hash == null || hash.isEmpty()) {
+
+			GLT.logger.info("Hashing " + store.getFileName());
+
+			MessageDigest digest = LocationCache.digest();
+
+			byte[] block = new byte[BLOCK_SIZE];
+			long length = store.length();
+
+			for (long position = 0; position < length; position += BLOCK_SIZE) {
+
+				int n = (int) Math.min(BLOCK_SIZE, length - position);
+
+				store.read(position, block, 0, n);
+				digest.update(block, 0, n);
+			}
+
+			hash = LocationCache.toHex(digest.digest());
+
+			try {
+				BufferedWriter out = new BufferedWriter(new FileWriter(hashFile));
+				out.write(hash);
+				out.newLine();
+				out.write(version);
+				out.newLine();
+				out.close();
+			} catch (IOException e) {
+				// not being able to write the sidecar is not fatal,
+				// it only means we have to hash again next time
+				GLT.logger.warning("Could not write " + hashFileName + ":" + e.getLocalizedMessage());
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Returns the hash of the exon's letters.
+	 */
+	static private String hash(String letters) {
+
+		return LocationCache.toHex(LocationCache.digest().digest(letters.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	static private MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static private String toHex(byte[] bytes) {
+
+		StringBuilder sb = new StringBuilder(2 * bytes.length);
+
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+
+		return sb.toString();
+	}
+}
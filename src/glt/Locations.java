@@ -0,0 +1,227 @@
+package glt;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Where the exons of a chromosome have been found within one sample.
+ *
+ * The model is shared by all samples of a batch, so what has been found in
+ * a single sample is kept here instead of in the exons themselves.
+ *
+ * Where both strands are searched, a hit on the negative strand at position p
+ * is encoded as -2 - p, so -1 still means that there is none, see encode().
+ *
+ * @author michael
+ *
+ */
+public class Locations {
+
+	// exon -> the start position within the sample, -1 if it could not be found
+	private final Map<Exon, Integer> positions = new ConcurrentHashMap<Exon, Integer>();
+
+	// exon -> {length, edits} of the approximate hits, the exact ones are not in here
+	private final Map<Exon, int[]> approximate = new ConcurrentHashMap<Exon, int[]>();
+
+	// the exons which have been found on the negative strand of the sample
+	private final Set<Exon> negative = ConcurrentHashMap.newKeySet();
+
+	// exon -> the encoded positions of all its copies, if they have been looked for
+	private final Map<Exon, long[]> hits = new ConcurrentHashMap<Exon, long[]>();
+
+	/**
+	 * Sets where an exon has been found.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @param position
+	 *            The start position within the sample, -1 if it could not be
+	 *            found
+	 * @return the Locations
+	 */
+	public Locations put(Exon exon, int position) {
+		this.positions.put(exon, position);
+		return this;
+	}
+
+	/**
+	 * Sets where an exon has been found with edits.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @param position
+	 *            The start position within the sample
+	 * @param length
+	 *            The number of bases within the sample
+	 * @param distance
+	 *            The number of edits
+	 * @return the Locations
+	 */
+	public Locations put(Exon exon, int position, int length, int distance) {
+		this.approximate.put(exon, new int[] { length, distance });
+		this.positions.put(exon, position);
+		return this;
+	}
+
+	/**
+	 * Sets the strand of the sample an exon has been found on.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @param strand
+	 *            The strand, negative if the sample holds the reverse
+	 *            complement of the exon
+	 * @return the Locations
+	 */
+	public Locations setStrand(Exon exon, Strand strand) {
+		if (strand == Strand.Negative) {
+			this.negative.add(exon);
+		} else {
+			this.negative.remove(exon);
+		}
+		return this;
+	}
+
+	/**
+	 * Returns where an exon has been found.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return the start position within the sample, -1 if it could not be
+	 *         found or has not been searched for
+	 */
+	public int get(Exon exon) {
+		Integer position = this.positions.get(exon);
+		return position != null ? position : -1;
+	}
+
+	public boolean isLocated(Exon exon) {
+		return this.get(exon) >= 0;
+	}
+
+	/**
+	 * Returns the number of bases an exon takes within the sample.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return the number of bases, -1 if it has been found as it is
+	 */
+	public int getLength(Exon exon) {
+		int[] hit = this.approximate.get(exon);
+		return hit != null ? hit[0] : -1;
+	}
+
+	/**
+	 * Returns the number of edits between an exon and where it has been
+	 * found.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return the number of edits, 0 if it has been found as it is
+	 */
+	public int getDistance(Exon exon) {
+		int[] hit = this.approximate.get(exon);
+		return hit != null ? hit[1] : 0;
+	}
+
+	/**
+	 * Returns the strand of the sample an exon has been found on.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return the strand, positive if it has only been searched for on that
+	 *         one
+	 */
+	public Strand getStrand(Exon exon) {
+		return this.negative.contains(exon) ? Strand.Negative : Strand.Positive;
+	}
+
+	/**
+	 * Sets where all copies of an exon have been found.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @param hits
+	 *            The encoded positions of the copies within the sample
+	 * @return the Locations
+	 */
+	public Locations setHits(Exon exon, long[] hits) {
+		this.hits.put(exon, hits);
+		return this;
+	}
+
+	/**
+	 * Returns where all copies of an exon have been found.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return the encoded positions of the copies, null if they have not been
+	 *         looked for
+	 */
+	public long[] getHits(Exon exon) {
+		return this.hits.get(exon);
+	}
+
+	/**
+	 * Returns the number of copies of an exon within the sample.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return the number of copies, at most 1 if they have not been looked
+	 *         for
+	 */
+	public int getCopies(Exon exon) {
+		long[] hits = this.hits.get(exon);
+		return hits != null ? hits.length : this.isLocated(exon) ? 1 : 0;
+	}
+
+	/**
+	 * Returns how a hit is checkpointed and cached.
+	 *
+	 * @param position
+	 *            The position within the sample, -1 for none
+	 * @param strand
+	 *            The strand of the sample
+	 * @return the position on the positive strand, -2 - position on the
+	 *         negative one
+	 */
+	static public long encode(long position, Strand strand) {
+		return position >= 0 && strand == Strand.Negative ? -2 - position : position;
+	}
+
+	static public long decodePosition(long encoded) {
+		return encoded < -1 ? -2 - encoded : encoded;
+	}
+
+	static public Strand decodeStrand(long encoded) {
+		return encoded < -1 ? Strand.Negative : Strand.Positive;
+	}
+
+	/**
+	 * Returns the number of exons which have been found.
+	 *
+	 * @return the number of exons which have been found
+	 */
+	public int getFound() {
+
+		int found = 0;
+
+		for (int position : this.positions.values()) {
+			if (position >= 0) {
+				found++;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns the number of exons which have been searched for.
+	 *
+	 * @return the number of exons which have been searched for
+	 */
+	public int size() {
+		return this.positions.size();
+	}
+}
@@ -0,0 +1,64 @@
+package glt;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Locates bases within a sample chromosome.
+ * 
+ * @author michael
+ * 
+ */
+public interface Locator extends Closeable {
+
+	/**
+	 * Returns the position of the first occurrence of the letters.
+	 * 
+	 * @param letters
+	 *            The bases to look for.
+	 * @return the position within the chromosome or -1 if they could not be
+	 *         found.
+	 * @throws IOException
+	 */
+	public long locate(String letters) throws IOException;
+
+	/**
+	 * Returns the position of the first occurrence of the letters or of
+	 * their reverse complement, whichever comes first. Both are looked for
+	 * while reading the chromosome once.
+	 * 
+	 * @param letters
+	 *            The bases to look for.
+	 * @param reverseComplement
+	 *            The reverse complement of the bases.
+	 * @return the position within the chromosome or -1 if neither could be
+	 *         found. getStrand() tells which one it has been.
+	 * @throws IOException
+	 */
+	public long locate(String letters, String reverseComplement) throws IOException;
+
+	/**
+	 * Returns the strand of the last hit of locate(letters,
+	 * reverseComplement).
+	 * 
+	 * @return Positive if the letters have been found, Negative if their
+	 *         reverse complement has been found
+	 */
+	public Strand getStrand();
+
+	/**
+	 * Adds the positions of the occurrences of the letters which do not
+	 * overlap each other, from left to right, in a single pass.
+	 * 
+	 * @param letters
+	 *            The bases to look for.
+	 * @param cap
+	 *            The largest number of occurrences of interest, the search
+	 *            stops as soon as that many have been found
+	 * @param positions
+	 *            The positions within the chromosome are added to these
+	 * @return the number of positions which have been added
+	 * @throws IOException
+	 */
+	public int locateAll(String letters, int cap, LongList positions) throws IOException;
+}
@@ -0,0 +1,98 @@
+package glt;
+
+import java.util.Arrays;
+
+/**
+ * A list of longs which grows as needed, without boxing them. It is meant to
+ * be cleared and filled again, so the array is only allocated while it has
+ * to grow.
+ *
+ * @author michael
+ *
+ */
+public class LongList {
+
+	private long[] values = null;
+	private int size = 0;
+
+	public LongList() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            The number of longs held before it grows
+	 */
+	public LongList(int capacity) {
+		this.values = new long[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Adds a long at the end.
+	 *
+	 * @param value
+	 *            The long
+	 * @return the LongList
+	 */
+	public LongList add(long value) {
+
+		if (this.size == this.values.length) {
+			this.values = Arrays.copyOf(this.values, 2 * this.values.length);
+		}
+
+		this.values[this.size++] = value;
+
+		return this;
+	}
+
+	public long get(int index) {
+
+		if (index >= this.size) {
+			throw new IndexOutOfBoundsException("index " + index + " of " + this.size);
+		}
+
+		return this.values[index];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all longs, but keeps the array.
+	 *
+	 * @return the LongList
+	 */
+	public LongList clear() {
+		this.size = 0;
+		return this;
+	}
+
+	/**
+	 * Sorts the longs in ascending order.
+	 *
+	 * @return the LongList
+	 */
+	public LongList sort() {
+		Arrays.sort(this.values, 0, this.size);
+		return this;
+	}
+
+	/**
+	 * Returns a copy of the longs.
+	 *
+	 * @return a new array with the longs
+	 */
+	public long[] toArray() {
+		return Arrays.copyOf(this.values, this.size);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(this.toArray());
+	}
+}
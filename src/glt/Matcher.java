@@ -0,0 +1,31 @@
+package glt;
+
+/**
+ * Matches one pattern against the upper case bytes of a chromosome.
+ * 
+ * @author michael
+ * 
+ */
+public interface Matcher {
+
+	/**
+	 * Returns the length of the pattern.
+	 * 
+	 * @return the length of the pattern.
+	 */
+	public int length();
+
+	/**
+	 * Searches the pattern in text[from..to-1].
+	 * 
+	 * @param text
+	 *            The text
+	 * @param from
+	 *            The first position to search
+	 * @param to
+	 *            The position after the last one to search
+	 * @return the position of the first occurrence within the text or -1 if
+	 *         it could not be found.
+	 */
+	public int match(byte[] text, int from, int to);
+}
@@ -0,0 +1,147 @@
+package glt;
+
+import glt.Config.MatcherType;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates the Matchers. The adaptive one picks a Matcher for each pattern
+ * from its length and the letters it consists of, see select(). How often
+ * each kind has been created is counted as matcher.[kind] by the Metrics.
+ * 
+ * @author michael
+ * 
+ */
+public class Matchers {
+
+	// the bits per letter below which a pattern counts as repetitive, 2 is uniform on A, C, G and T
+	static private final double REPETITIVE = 1.5;
+
+	/**
+	 * Returns a new Matcher for the pattern.
+	 * 
+	 * @param type
+	 *            The kind of Matcher
+	 * @param pattern
+	 *            The upper case letters to look for
+	 * @return a new Matcher for the pattern.
+	 */
+	static public Matcher factory(MatcherType type, String pattern) {
+
+		if (type == MatcherType.Adaptive) {
+			type = Matchers.select(pattern);
+		}
+
+		Matcher matcher = null;
+
+		switch (type) {
+		case Regex:
+			matcher = new RegexMatcher(pattern);
+			break;
+		case Horspool:
+			matcher = new Horspool(pattern);
+			break;
+		case ShiftOr:
+			// longer patterns do not fit into a long
+			matcher = pattern.length() <= ShiftOr.MAX_LENGTH ? new ShiftOr(pattern) : new BoyerMoore(pattern);
+			break;
+		case TwoWay:
+			matcher = new TwoWay(pattern);
+			break;
+		default:
+			matcher = new BoyerMoore(pattern);
+			break;
+		}
+
+		Metrics.count("matcher." + matcher.getClass().getSimpleName());
+
+		return matcher;
+	}
+
+	/**
+	 * Returns the Matcher which is expected to be the fastest for the
+	 * pattern:
+	 * <ul>
+	 * <li>ShiftOr for up to 64 letters, where Boyer-Moore hardly gets to
+	 * shift on four letters</li>
+	 * <li>TwoWay for repetitive patterns, which make Boyer-Moore compare the
+	 * same letters again and again</li>
+	 * <li>Horspool for up to 256 letters, whose shifts are as long as the ones
+	 * of Boyer-Moore for little work</li>
+	 * <li>BoyerMoore for anything longer, where the good suffix rule shifts
+	 * much further</li>
+	 * </ul>
+	 * 
+	 * @param pattern
+	 *            The upper case letters to look for
+	 * @return the kind of Matcher
+	 */
+	static public MatcherType select(String pattern) {
+
+		int length = pattern.length();
+
+		if (length <= ShiftOr.MAX_LENGTH) {
+			return MatcherType.ShiftOr;
+		}
+
+		if (Matchers.entropy(pattern) < REPETITIVE) {
+			return MatcherType.TwoWay;
+		}
+
+		if (length <= 256) {
+			return MatcherType.Horspool;
+		}
+
+		return MatcherType.BoyerMoore;
+	}
+
+	/**
+	 * Returns the Shannon entropy of the letters of the pattern in bits per
+	 * letter.
+	 */
+	static private double entropy(String pattern) {
+
+		int[] counts = new int[256];
+
+		for (int i = 0; i < pattern.length(); i++) {
+			counts[pattern.charAt(i) & 0xff]++;
+		}
+
+		double entropy = 0;
+
+		for (int count : counts) {
+			if (count > 0) {
+				double p = (double) count / pattern.length();
+				entropy -= p * Math.log(p) / Math.log(2);
+			}
+		}
+
+		return entropy;
+	}
+
+	/**
+	 * Returns a Matcher for each pattern, so they only have to be
+	 * preprocessed once for any number of samples. Matchers only read their
+	 * tables, so they can be shared by threads.
+	 * 
+	 * @param type
+	 *            The kind of Matcher
+	 * @param patterns
+	 *            The upper case letters to look for
+	 * @return pattern -> Matcher
+	 */
+	static public Map<String, Matcher> prepare(MatcherType type, Collection<String> patterns) {
+
+		Map<String, Matcher> matchers = new HashMap<String, Matcher>();
+
+		for (String pattern : patterns) {
+			if (!matchers.containsKey(pattern)) {
+				matchers.put(pattern, Matchers.factory(type, pattern));
+			}
+		}
+
+		return matchers;
+	}
+}
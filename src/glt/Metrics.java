@@ -0,0 +1,430 @@
+package glt;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what the stages of the pipeline do and how long it takes them.
+ *
+ * The counters are plain atomic longs, so they are cheap enough to be updated
+ * for every exon. They are shown as a progress line every now and then and
+ * can be written as JSON summary at the end.
+ *
+ * @author michael
+ *
+ */
+public class Metrics {
+
+	/**
+	 * The counters of a single stage, e.g. locateExons.
+	 */
+	static public class Stage {
+
+		private final String name;
+
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong runs = new AtomicLong();
+		private final AtomicLong bytesRead = new AtomicLong();
+		private final AtomicLong bytesWritten = new AtomicLong();
+		private final AtomicLong exons = new AtomicLong();
+		private final AtomicLong bases = new AtomicLong();
+
+		// anything else, e.g. how the exons have been located
+		private final Map<String, AtomicLong> counters = new LinkedHashMap<String, AtomicLong>();
+
+		// the number of threads within the stage right now and since when there has been any
+		private final AtomicLong active = new AtomicLong();
+		private final AtomicLong activeSince = new AtomicLong();
+
+		// the stage and its event the current thread has been in before this one, if any
+		private final ThreadLocal<Stage> outer = new ThreadLocal<Stage>();
+		private final ThreadLocal<StageEvent> outerEvent = new ThreadLocal<StageEvent>();
+
+		private Stage(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Starts a run of the stage within the current thread. The wall time
+		 * of the stage is the time at least one thread has been within it.
+		 */
+		public synchronized void start() {
+
+			if (this.active.getAndIncrement() == 0) {
+				this.activeSince.set(System.nanoTime());
+			}
+
+			this.outer.set(Metrics.current.get());
+			this.outerEvent.set(Metrics.event.get());
+
+			Metrics.current.set(this);
+
+			StageEvent event = new StageEvent();
+			event.begin();
+			Metrics.event.set(event);
+		}
+
+		/**
+		 * Stops the run of the stage within the current thread.
+		 */
+		public synchronized void stop() {
+
+			this.runs.incrementAndGet();
+
+			if (this.active.decrementAndGet() == 0) {
+				this.nanos.addAndGet(System.nanoTime() - this.activeSince.get());
+			}
+
+			if (Metrics.current.get() != this) {
+				return;
+			}
+
+			StageEvent event = Metrics.event.get();
+
+			if (event != null && event.shouldCommit()) {
+				event.stage = this.name;
+				event.commit();
+			}
+
+			// back to the stage the thread has been in before, e.g. buildIndex within locateExons
+			Metrics.current.set(this.outer.get());
+			Metrics.event.set(this.outerEvent.get());
+
+			this.outer.remove();
+			this.outerEvent.remove();
+		}
+
+		public void addBytesRead(long bytes) {
+			this.bytesRead.addAndGet(bytes);
+		}
+
+		public void addBytesWritten(long bytes) {
+			this.bytesWritten.addAndGet(bytes);
+		}
+
+		/**
+		 * Adds processed exons.
+		 *
+		 * @param exons
+		 *            The number of exons
+		 * @param bases
+		 *            The number of their bases
+		 */
+		public void addExons(long exons, long bases) {
+			this.exons.addAndGet(exons);
+			this.bases.addAndGet(bases);
+		}
+
+		/**
+		 * Adds one to a named counter.
+		 *
+		 * @param counter
+		 *            The name of the counter
+		 */
+		public void count(String counter) {
+			this.count(counter, 1);
+		}
+
+		/**
+		 * Adds to a named counter.
+		 *
+		 * @param counter
+		 *            The name of the counter
+		 * @param n
+		 *            What to add
+		 */
+		public void count(String counter, long n) {
+
+			AtomicLong value = null;
+
+			synchronized (this.counters) {
+
+				value = this.counters.get(counter);
+
+				if (value == null) {
+					value = new AtomicLong();
+					this.counters.put(counter, value);
+				}
+			}
+
+			value.addAndGet(n);
+		}
+
+		public long getExons() {
+			return this.exons.get();
+		}
+
+		public long getBases() {
+			return this.bases.get();
+		}
+
+		public long getBytesRead() {
+			return this.bytesRead.get();
+		}
+
+		public long getBytesWritten() {
+			return this.bytesWritten.get();
+		}
+
+		/**
+		 * Returns the wall time of the stage so far, including a run which is
+		 * still going on.
+		 *
+		 * @return the wall time in seconds
+		 */
+		public synchronized double getSeconds() {
+
+			long nanos = this.nanos.get();
+
+			if (this.active.get() > 0) {
+				nanos += System.nanoTime() - this.activeSince.get();
+			}
+
+			return nanos / 1e9;
+		}
+
+		public boolean isActive() {
+			return this.active.get() > 0;
+		}
+
+		/**
+		 * Returns the value of a named counter.
+		 *
+		 * @param counter
+		 *            The name of the counter
+		 * @return the value, 0 if it has never been counted
+		 */
+		public long get(String counter) {
+			synchronized (this.counters) {
+				AtomicLong value = this.counters.get(counter);
+				return value != null ? value.get() : 0;
+			}
+		}
+
+		private String toJson() {
+
+			double seconds = this.getSeconds();
+
+			StringBuilder sb = new StringBuilder();
+
+			sb.append("{\"name\":\"").append(this.name).append("\"");
+			sb.append(",\"runs\":").append(this.runs.get());
+			sb.append(",\"seconds\":").append(String.format(Locale.ROOT, "%.3f", seconds));
+			sb.append(",\"bytesRead\":").append(this.bytesRead.get());
+			sb.append(",\"bytesWritten\":").append(this.bytesWritten.get());
+			sb.append(",\"exons\":").append(this.exons.get());
+			sb.append(",\"bases\":").append(this.bases.get());
+			sb.append(",\"exonsPerSecond\":").append(String.format(Locale.ROOT, "%.1f", seconds > 0 ? this.exons.get() / seconds : 0));
+			sb.append(",\"basesPerSecond\":").append(String.format(Locale.ROOT, "%.1f", seconds > 0 ? this.bases.get() / seconds : 0));
+			sb.append(",\"counters\":{");
+
+			synchronized (this.counters) {
+				String separator = "";
+				for (Map.Entry<String, AtomicLong> counter : this.counters.entrySet()) {
+					sb.append(separator).append("\"").append(counter.getKey()).append("\":").append(counter.getValue().get());
+					separator = ",";
+				}
+			}
+
+			sb.append("}}");
+
+			return sb.toString();
+		}
+
+		@Override
+		public String toString() {
+
+			double seconds = this.getSeconds();
+
+			return String.format("%s %d exons (%.1f/s), %d bases, %d bytes read, %d bytes written in %.1fs", this.name,
+					this.exons.get(), seconds > 0 ? this.exons.get() / seconds : 0.0, this.bases.get(),
+					this.bytesRead.get(), this.bytesWritten.get(), seconds);
+		}
+	}
+
+	// name -> stage, in the order they have been used first
+	static private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+
+	// the stage the current thread is in, so I/O deep down can be attributed to it
+	static private final ThreadLocal<Stage> current = new ThreadLocal<Stage>();
+	// the Flight Recorder event of that stage
+	static private final ThreadLocal<StageEvent> event = new ThreadLocal<StageEvent>();
+	// all bytes read by the current thread
+	static private final ThreadLocal<long[]> threadBytesRead = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	static private Timer progress = null;
+
+	/**
+	 * Returns the stage with the name. It is created the first time.
+	 *
+	 * @param name
+	 *            The name of the stage
+	 * @return the stage
+	 */
+	static public synchronized Stage stage(String name) {
+
+		Stage stage = Metrics.stages.get(name);
+
+		if (stage == null) {
+			stage = new Stage(name);
+			Metrics.stages.put(name, stage);
+		}
+
+		return stage;
+	}
+
+	/**
+	 * Returns all stages.
+	 *
+	 * @return all stages in the order they have been used first
+	 */
+	static public synchronized List<Stage> getStages() {
+		return new ArrayList<Stage>(Metrics.stages.values());
+	}
+
+	/**
+	 * Adds bytes read to the stage the current thread is in, if any.
+	 *
+	 * @param bytes
+	 *            The number of bytes
+	 */
+	static public void addBytesRead(long bytes) {
+
+		Metrics.threadBytesRead.get()[0] += bytes;
+
+		Stage stage = Metrics.current.get();
+
+		if (stage != null) {
+			stage.addBytesRead(bytes);
+		}
+	}
+
+	/**
+	 * Adds one to a named counter of the stage the current thread is in, if
+	 * any.
+	 * 
+	 * @param counter
+	 *            The name of the counter
+	 */
+	static public void count(String counter) {
+
+		Stage stage = Metrics.current.get();
+
+		if (stage != null) {
+			stage.count(counter);
+		}
+	}
+
+	/**
+	 * Returns all bytes read by the current thread so far, so the bytes of a
+	 * single operation can be worked out.
+	 *
+	 * @return all bytes read by the current thread
+	 */
+	static public long getThreadBytesRead() {
+		return Metrics.threadBytesRead.get()[0];
+	}
+
+	/**
+	 * Logs a progress line for every active stage in regular intervals.
+	 *
+	 * @param seconds
+	 *            The interval, 0 to never log any
+	 */
+	static public synchronized void startProgress(int seconds) {
+
+		Metrics.stopProgress();
+
+		if (seconds > 0) {
+
+			// a daemon, so it never keeps the JVM alive
+			Metrics.progress = new Timer("progress", true);
+			Metrics.progress.scheduleAtFixedRate(new TimerTask() {
+				@Override
+				public void run() {
+					for (Stage stage : Metrics.getStages()) {
+						if (stage.isActive()) {
+							GLT.logger.info("Progress: " + stage);
+						}
+					}
+				}
+			}, seconds * 1000L, seconds * 1000L);
+		}
+	}
+
+	static public synchronized void stopProgress() {
+
+		if (Metrics.progress != null) {
+			Metrics.progress.cancel();
+			Metrics.progress = null;
+		}
+	}
+
+	/**
+	 * Returns all stages and the sequence cache as JSON.
+	 *
+	 * @param sequences
+	 *            The sequence cache
+	 * @return the JSON summary
+	 */
+	static public String toJson(SequenceProvider sequences) {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("{\"stages\":[");
+
+		String separator = "";
+
+		for (Stage stage : Metrics.getStages()) {
+			sb.append(separator).append("\n").append(stage.toJson());
+			separator = ",";
+		}
+
+		sb.append("\n],\"sequenceCache\":{");
+		sb.append("\"hits\":").append(sequences.getHits());
+		sb.append(",\"misses\":").append(sequences.getMisses());
+		sb.append(",\"evictions\":").append(sequences.getEvictions());
+		sb.append(",\"bytes\":").append(sequences.getSize());
+		sb.append("}}\n");
+
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the JSON summary into a file.
+	 *
+	 * @param fileName
+	 *            The file
+	 * @param sequences
+	 *            The sequence cache
+	 * @throws IOException
+	 */
+	static public void writeJson(String fileName, SequenceProvider sequences) throws IOException {
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+
+		try {
+			out.write(Metrics.toJson(sequences));
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package glt;
+
+/**
+ * Myers' bit-parallel edit distance of a pattern against a text which is fed
+ * in letter by letter. After each letter it tells the smallest number of
+ * edits turning the pattern into a suffix of the text read so far, i.e. into
+ * some bases ending at that letter.
+ *
+ * The column of the dynamic programming matrix is kept as bit vectors of 64
+ * rows each. Only the blocks which might still be within the edit budget are
+ * computed (Ukkonen's cut-off), so it costs about budget / 64 + 1 word
+ * operations per letter instead of the length of the pattern.
+ *
+ * @author michael
+ *
+ */
+public class Myers {
+
+	static private final int WORD = 64;
+
+	private int length = 0;
+	private int budget = 0;
+	private int blocks = 0;
+
+	// letter -> block -> the rows holding the letter
+	private long[][] peq = new long[256][];
+
+	// the vertical deltas of the current column, +1 and -1
+	private long[] pv = null;
+	private long[] mv = null;
+
+	// the score of the last row of each block
+	private int[] scores = null;
+
+	// the last block which is computed
+	private int last = 0;
+
+	/**
+	 * @param pattern
+	 *            The pattern in upper case
+	 * @param budget
+	 *            The largest number of edits of interest
+	 */
+	public Myers(String pattern, int budget) {
+
+		this.length = pattern.length();
+		this.budget = budget;
+		this.blocks = (this.length + WORD - 1) / WORD;
+
+		long[] none = new long[this.blocks];
+
+		for (int i = 0; i < 256; i++) {
+			this.peq[i] = none;
+		}
+
+		for (int i = 0; i < this.length; i++) {
+
+			int letter = pattern.charAt(i) & 0xff;
+
+			if (this.peq[letter] == none) {
+				this.peq[letter] = new long[this.blocks];
+			}
+
+			this.peq[letter][i / WORD] |= 1L << (i % WORD);
+		}
+
+		this.pv = new long[this.blocks];
+		this.mv = new long[this.blocks];
+		this.scores = new int[this.blocks];
+
+		this.reset();
+	}
+
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Starts over with an empty text.
+	 */
+	public void reset() {
+
+		this.last = Math.min(this.blocks - 1, this.budget / WORD);
+
+		// the first column is the number of rows
+		for (int i = 0; i <= this.last; i++) {
+			this.pv[i] = -1L;
+			this.mv[i] = 0;
+			this.scores[i] = (i > 0 ? this.scores[i - 1] : 0) + this.rows(i);
+		}
+	}
+
+	/**
+	 * Reads the next letter of the text.
+	 *
+	 * @param letter
+	 *            The letter in upper case
+	 * @return the edit distance of the pattern to the best bases ending with
+	 *         this letter, or something larger than the budget
+	 */
+	public int next(byte letter) {
+
+		long[] eq = this.peq[letter & 0xff];
+
+		// the top row is 0 in every column, the pattern may start anywhere
+		int carry = 0;
+
+		for (int i = 0; i <= this.last; i++) {
+			carry = this.advance(i, eq[i], carry);
+			this.scores[i] += carry;
+		}
+
+		// the block below might get within the budget
+		if (this.last < this.blocks - 1 && this.scores[this.last] - carry <= this.budget
+				&& ((eq[this.last + 1] & 1) != 0 || carry < 0)) {
+
+			this.last++;
+
+			this.pv[this.last] = -1L;
+			this.mv[this.last] = 0;
+			// the block above has just been advanced, so start from its previous column
+			this.scores[this.last] = this.scores[this.last - 1] - carry + this.rows(this.last);
+			this.scores[this.last] += this.advance(this.last, eq[this.last], carry);
+		}
+
+		// the blocks at the bottom which are out of reach
+		while (this.last > 0 && this.scores[this.last] >= this.budget + WORD) {
+			this.last--;
+		}
+
+		return this.last == this.blocks - 1 ? this.scores[this.last] : this.budget + 1;
+	}
+
+	/**
+	 * Advances a block to the next column.
+	 *
+	 * @return the horizontal delta of its last row
+	 */
+	private int advance(int block, long eq, int carry) {
+
+		long pv = this.pv[block];
+		long mv = this.mv[block];
+
+		long xv = eq | mv;
+
+		if (carry < 0) {
+			eq |= 1L;
+		}
+
+		long xh = (((eq & pv) + pv) ^ pv) | eq;
+
+		long ph = mv | ~(xh | pv);
+		long mh = pv & xh;
+
+		long high = 1L << (this.rows(block) - 1);
+
+		int out = 0;
+
+		if ((ph & high) != 0) {
+			out = 1;
+		} else if ((mh & high) != 0) {
+			out = -1;
+		}
+
+		ph <<= 1;
+		mh <<= 1;
+
+		if (carry < 0) {
+			mh |= 1L;
+		} else if (carry > 0) {
+			ph |= 1L;
+		}
+
+		this.pv[block] = mh | ~(xv | ph);
+		this.mv[block] = ph & xv;
+
+		return out;
+	}
+
+	/**
+	 * Returns the number of rows of the pattern within the block.
+	 */
+	private int rows(int block) {
+		return block < this.blocks - 1 ? WORD : this.length - block * WORD;
+	}
+}
@@ -0,0 +1,34 @@
+package glt;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches the pattern with a regular expression, which is what the Scanner
+ * does as well.
+ * 
+ * @author michael
+ * 
+ */
+public class RegexMatcher implements Matcher {
+
+	private Pattern pattern = null;
+	private int length = 0;
+
+	public RegexMatcher(String pattern) {
+		this.pattern = Pattern.compile(pattern, Pattern.LITERAL);
+		this.length = pattern.length();
+	}
+
+	@Override
+	public int length() {
+		return this.length;
+	}
+
+	@Override
+	public int match(byte[] text, int from, int to) {
+
+		java.util.regex.Matcher m = this.pattern.matcher(new ByteSequence(text, from, to));
+
+		return m.find() ? from + m.start() : -1;
+	}
+}
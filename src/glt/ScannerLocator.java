@@ -0,0 +1,150 @@
+package glt;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Locates bases by running a Scanner over the sequenced segments of the
+ * chromosome. The gaps between them are never read. Soft-masked bases are
+ * converted to upper case while they are read, so they match as well.
+ * 
+ * @author michael
+ * 
+ */
+public class ScannerLocator implements Locator {
+
+	private FileInputStream in = null;
+	private FileChannel channel = null;
+	private FoldingChannel folding = null;
+	private List<Interval> segments = null;
+
+	// the strand and the letters of the last hit
+	private Strand strand = Strand.Positive;
+	private String match = null;
+
+	// the hit of locate(), kept to spare allocating a list each time
+	private LongList first = new LongList(1);
+
+	public ScannerLocator(String fileName, Gaps gaps) throws IOException {
+
+		this.in = new FileInputStream(fileName);
+		this.channel = this.in.getChannel();
+		this.folding = new FoldingChannel(this.channel);
+		this.segments = gaps.getSegments();
+	}
+
+	@Override
+	public long locate(String letters) throws IOException {
+
+		this.strand = Strand.Positive;
+
+		return this.locate(letters, letters.length());
+	}
+
+	@Override
+	public long locate(String letters, String reverseComplement) throws IOException {
+
+		// the Scanner finds the first match of either alternative
+		long position = this.locate(letters + "|" + reverseComplement, letters.length());
+
+		if (position >= 0) {
+			this.strand = this.match.equals(letters) ? Strand.Positive : Strand.Negative;
+		}
+
+		return position;
+	}
+
+	@Override
+	public Strand getStrand() {
+		return this.strand;
+	}
+
+	@Override
+	public int locateAll(String letters, int cap, LongList positions) throws IOException {
+		return this.locate(letters, letters.length(), cap, positions);
+	}
+
+	/**
+	 * Returns the position of the first match of the pattern.
+	 * 
+	 * @param pattern
+	 *            The pattern
+	 * @param length
+	 *            The length of a match
+	 * @return the position within the chromosome or -1 if there is none.
+	 * @throws IOException
+	 */
+	private long locate(String pattern, int length) throws IOException {
+
+		this.first.clear();
+
+		return this.locate(pattern, length, 1, this.first) > 0 ? this.first.get(0) : -1;
+	}
+
+	/**
+	 * Adds the positions of the matches of the pattern which do not overlap
+	 * each other.
+	 * 
+	 * @param pattern
+	 *            The pattern
+	 * @param length
+	 *            The length of a match
+	 * @param cap
+	 *            The largest number of matches of interest
+	 * @param positions
+	 *            The positions within the chromosome are added to these
+	 * @return the number of positions which have been added
+	 * @throws IOException
+	 */
+	private int locate(String pattern, int length, int cap, LongList positions) throws IOException {
+
+		int found = 0;
+
+		for (Interval segment : this.segments) {
+
+			long from = segment.getFrom();
+
+			// carry on right after each match, so the chromosome is still read only once
+			while (found < cap && segment.getTo() - from + 1 >= length) {
+
+				this.channel.position(from);
+
+				// see: http://stackoverflow.com/a/4338841
+				// apparently .findWithinHorizon() already uses BoyerMoore internally.
+				// the horizon stops the Scanner at the end of the segment.
+				// the Scanner is not closed, because that would close the shared channel as well.
+				// the letters are always upper case, see Base
+				@SuppressWarnings("resource")
+				Scanner s = new Scanner(this.folding);
+
+				if (s.findWithinHorizon(pattern, (int) Math.min(segment.getTo() - from + 1, Integer.MAX_VALUE)) == null) {
+					break;
+				}
+
+				this.match = s.match().group();
+
+				long position = from + s.match().start();
+
+				positions.add(position);
+				found++;
+
+				from = position + this.match.length();
+			}
+
+			if (found >= cap) {
+				break;
+			}
+		}
+
+		return found;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+		this.in.close();
+	}
+}
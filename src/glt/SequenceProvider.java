@@ -0,0 +1,302 @@
+package glt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Provides the letters of exons and other intervals of a chromosome. The
+ * letters are kept in a cache which is bounded by its size in bytes and
+ * throws out the least recently used ones first.
+ * 
+ * The cache is keyed by the SequenceStore, so once a file has been changed
+ * and mapped again, nothing stale is returned.
+ * 
+ * Every call counts as one hit or miss. The letters of a miss are read
+ * outside the lock, so the threads sharing the cache are not held up by the
+ * disk.
+ * 
+ * @author michael
+ * 
+ */
+public class SequenceProvider {
+
+	// the memory of a String besides its letters
+	static private final int OVERHEAD = 64;
+
+	/**
+	 * The key of the cache: the interval on a strand of a chromosome
+	 */
+	static private class Key {
+
+		private final SequenceStore store;
+		private final long from;
+		private final long to;
+		private final Strand strand;
+
+		private Key(SequenceStore store, long from, long to, Strand strand) {
+			this.store = store;
+			this.from = from;
+			this.to = to;
+			this.strand = strand;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(this.store);
+			hash = 31 * hash + Long.hashCode(this.from);
+			hash = 31 * hash + Long.hashCode(this.to);
+			hash = 31 * hash + this.strand.hashCode();
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key key = (Key) o;
+
+			return this.store == key.store && this.from == key.from && this.to == key.to && this.strand == key.strand;
+		}
+	}
+
+	private long maximumSize = 0; // the maximum size of all letters in bytes
+	private long size = 0; // the current size of all letters in bytes
+
+	// key -> letters, in the order they have been used
+	private final LinkedHashMap<Key, String> cache = new LinkedHashMap<Key, String>(1024, 0.75f, true);
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public SequenceProvider(long maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns the letters of the exon as they are in its reference chromosome.
+	 * 
+	 * @param store
+	 *            The reference chromosome
+	 * @param exon
+	 *            The exon
+	 * @param strand
+	 *            The strand to return the letters for. If it is not the
+	 *            Exon's strand then they are reverse complemented.
+	 * @return the upper case letters
+	 * @throws IOException
+	 */
+	public String getLetters(SequenceStore store, Exon exon, Strand strand) throws IOException {
+		return this.getLetters(store, exon.getFrom(), exon.getTo(), strand);
+	}
+
+	/**
+	 * Returns the letters of the exon on its own strand.
+	 * 
+	 * @param store
+	 *            The reference chromosome
+	 * @param exon
+	 *            The exon
+	 * @return the upper case letters
+	 * @throws IOException
+	 */
+	public String getLetters(SequenceStore store, Exon exon) throws IOException {
+		return this.getLetters(store, exon, exon.getStrand());
+	}
+
+	/**
+	 * Returns the letters of the interval.
+	 * 
+	 * @param store
+	 *            The chromosome
+	 * @param from
+	 *            The first position
+	 * @param to
+	 *            The last position
+	 * @param strand
+	 *            The strand to return the letters for. The chromosome holds
+	 *            the positive one, so the negative one is reverse complemented.
+	 * @return the upper case letters
+	 * @throws IOException
+	 */
+	public String getLetters(SequenceStore store, long from, long to, Strand strand) throws IOException {
+
+		Key key = new Key(store, from, to, strand);
+
+		synchronized (this) {
+
+			String letters = this.cache.get(key);
+
+			if (letters != null) {
+				this.hits++;
+				return letters;
+			}
+
+			this.misses++;
+		}
+
+		String letters = null;
+
+		if (strand == Strand.Positive) {
+
+			letters = SequenceProvider.read(store, from, to);
+
+		} else {
+
+			// the positive strand is looked up without counting, this call is a miss already
+			Key positiveKey = new Key(store, from, to, Strand.Positive);
+			String positive = this.peek(positiveKey);
+
+			if (positive == null) {
+				positive = SequenceProvider.read(store, from, to);
+				this.addIfAbsent(positiveKey, positive);
+			}
+
+			byte[] bases = positive.getBytes(StandardCharsets.US_ASCII);
+
+			Kernels.factory().reverseComplement(bases, 0, bases.length);
+
+			letters = new String(bases, StandardCharsets.US_ASCII);
+		}
+
+		this.addIfAbsent(key, letters);
+
+		return letters;
+	}
+
+	/**
+	 * Returns the cached letters without counting a hit or miss.
+	 */
+	private synchronized String peek(Key key) {
+		return this.cache.get(key);
+	}
+
+	/**
+	 * Adds the letters unless another thread has added them in the meantime.
+	 */
+	private synchronized void addIfAbsent(Key key, String letters) {
+		if (!this.cache.containsKey(key)) {
+			this.add(key, letters);
+		}
+	}
+
+	/**
+	 * Reads the upper case letters of the positive strand from the store.
+	 */
+	static private String read(SequenceStore store, long from, long to) throws IOException {
+
+		int length = (int) (to - from + 1);
+		byte[] bases = new byte[length];
+
+		store.read(from, bases, 0, length);
+
+		return SequenceProvider.toLetters(bases, 0, length);
+	}
+
+	/**
+	 * Returns the bases of the exon on the strand.
+	 * 
+	 * @see #getLetters(SequenceStore, Exon, Strand)
+	 */
+	public Bases getBases(SequenceStore store, Exon exon, Strand strand) throws IOException {
+		return new Bases(this.getLetters(store, exon, strand));
+	}
+
+	/**
+	 * Returns whether the letters of the positive strand are cached.
+	 * 
+	 * @param store
+	 *            The chromosome
+	 * @param from
+	 *            The first position
+	 * @param to
+	 *            The last position
+	 * @return whether they are cached
+	 */
+	public synchronized boolean contains(SequenceStore store, long from, long to) {
+		return this.cache.containsKey(new Key(store, from, to, Strand.Positive));
+	}
+
+	/**
+	 * Adds the letters of the positive strand, which have been read from the
+	 * store elsewhere.
+	 * 
+	 * @param store
+	 *            The chromosome
+	 * @param from
+	 *            The first position
+	 * @param bases
+	 *            The letters as they are in the chromosome
+	 * @param offset
+	 *            The first letter of the interval within the bases
+	 * @param length
+	 *            The length of the interval
+	 */
+	public void put(SequenceStore store, long from, byte[] bases, int offset, int length) {
+		this.addIfAbsent(new Key(store, from, from + length - 1, Strand.Positive), SequenceProvider.toLetters(bases, offset, length));
+	}
+
+	/**
+	 * Returns the upper case letters, so soft-masked bases look like any other.
+	 */
+	static private String toLetters(byte[] bases, int offset, int length) {
+
+		byte[] letters = Arrays.copyOfRange(bases, offset, offset + length);
+		Alphabet.upper(letters, 0, length);
+
+		return new String(letters, StandardCharsets.US_ASCII);
+	}
+
+	private void add(Key key, String letters) {
+
+		this.cache.put(key, letters);
+		this.size += letters.length() + OVERHEAD;
+
+		// throw out the least recently used ones
+		Iterator<Map.Entry<Key, String>> iterator = this.cache.entrySet().iterator();
+
+		while (this.size > this.maximumSize && iterator.hasNext()) {
+
+			Map.Entry<Key, String> eldest = iterator.next();
+
+			// never throw out what has just been added
+			if (eldest.getKey() == key) {
+				break;
+			}
+
+			this.size -= eldest.getValue().length() + OVERHEAD;
+			iterator.remove();
+
+			this.evictions++;
+		}
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "" + this.hits + " hits, " + this.misses + " misses, " + this.evictions + " evictions, "
+				+ this.cache.size() + " sequences with " + this.size + " bytes cached";
+	}
+}
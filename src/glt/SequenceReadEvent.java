@@ -0,0 +1,33 @@
+package glt;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for reading bases from a SequenceStore.
+ * 
+ * @author michael
+ * 
+ */
+@Name("glt.SequenceRead")
+@Label("Sequence Read")
+@Category({ "GenomeLaser Tools", "I/O" })
+@Description("Reading bases from a mapped .bases file")
+@StackTrace(false)
+public class SequenceReadEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("Offset")
+	public long offset;
+
+	@Label("Length")
+	@DataAmount
+	public int length;
+}
@@ -0,0 +1,201 @@
+package glt;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A .bases file mapped read-only into memory outside of the Java heap, so it
+ * neither competes with the exon model for the garbage collector nor needs to
+ * be read into byte[]s first.
+ * 
+ * Files larger than 2 GB (e.g. a whole genome in one file) are mapped in
+ * several chunks and addressed with long positions. All reads are absolute,
+ * so one store can be shared by any number of threads. There is only one
+ * store per file while it is in use, see open() and release().
+ * 
+ * @author michael
+ * 
+ */
+public class SequenceStore {
+
+	// the size of a single mapping, a ByteBuffer can not be larger than 2 GB
+	static private final int CHUNK_BITS = 30;
+	static private final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+	// file name -> store, until it is released
+	static final private Map<String, SequenceStore> stores = new HashMap<String, SequenceStore>();
+
+	private String fileName = null;
+	private long length = 0;
+	private long lastModified = 0;
+
+	private MappedByteBuffer[] chunks = null;
+
+	private SequenceStore(String fileName) throws IOException {
+
+		File file = new File(fileName);
+
+		this.fileName = fileName;
+		this.lastModified = file.lastModified();
+
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+
+		try {
+
+			FileChannel channel = in.getChannel();
+
+			this.length = channel.size();
+			this.chunks = new MappedByteBuffer[(int) ((this.length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+
+			for (int i = 0; i < this.chunks.length; i++) {
+
+				long position = i * CHUNK_SIZE;
+				long size = Math.min(CHUNK_SIZE, this.length - position);
+
+				// the mapping stays valid after the channel has been closed
+				this.chunks[i] = channel.map(MapMode.READ_ONLY, position, size);
+			}
+
+		} finally {
+			in.close();
+		}
+
+		GLT.logger.info("Mapped " + fileName + " with " + this.length + " bytes");
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public long length() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the letter at the position.
+	 * 
+	 * @param position
+	 *            The position within the file
+	 * @return the letter as it is in the file
+	 */
+	public byte get(long position) {
+		return this.chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & (CHUNK_SIZE - 1)));
+	}
+
+	/**
+	 * Copies the letters at the position into the array.
+	 * 
+	 * @param position
+	 *            The position within the file
+	 * @param dst
+	 *            The array
+	 * @param offset
+	 *            The first position within the array
+	 * @param length
+	 *            The number of letters
+	 * @throws EOFException
+	 *             if the file ends before
+	 */
+	public void read(long position, byte[] dst, int offset, int length) throws EOFException {
+
+		if (position < 0 || position + length > this.length) {
+			throw new EOFException(this.fileName + " has no bases at " + position + ".." + (position + length - 1));
+		}
+
+		Metrics.addBytesRead(length);
+
+		SequenceReadEvent event = new SequenceReadEvent();
+		event.begin();
+
+		// the loop moves them on
+		long from = position;
+		int bytes = length;
+
+		while (length > 0) {
+
+			int chunk = (int) (position >>> CHUNK_BITS);
+			int index = (int) (position & (CHUNK_SIZE - 1));
+			int n = (int) Math.min(length, CHUNK_SIZE - index);
+
+			this.chunks[chunk].get(index, dst, offset, n);
+
+			position += n;
+			offset += n;
+			length -= n;
+		}
+
+		event.end();
+
+		// only known to be slow enough now, so the fields are filled afterwards
+		if (event.shouldCommit()) {
+			event.file = this.fileName;
+			event.offset = from;
+			event.length = bytes;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Returns the letters at the position.
+	 * 
+	 * @param position
+	 *            The position within the file
+	 * @param length
+	 *            The number of letters
+	 * @return the letters as they are in the file
+	 * @throws EOFException
+	 *             if the file ends before
+	 */
+	public String getLetters(long position, int length) throws EOFException {
+
+		byte[] letters = new byte[length];
+
+		this.read(position, letters, 0, length);
+
+		return new String(letters, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Returns the store for the file. It is created the first time and shared
+	 * afterwards, unless the file has been changed in the meantime.
+	 * 
+	 * @param fileName
+	 *            The .bases file
+	 * @return the store for the file.
+	 * @throws IOException
+	 */
+	static public synchronized SequenceStore open(String fileName) throws IOException {
+
+		SequenceStore store = SequenceStore.stores.get(fileName);
+
+		File file = new File(fileName);
+
+		if (store == null || store.length != file.length() || store.lastModified != file.lastModified()) {
+
+			store = new SequenceStore(fileName);
+			SequenceStore.stores.put(fileName, store);
+		}
+
+		return store;
+	}
+
+	/**
+	 * Forgets the store for the file once a pass over it is finished. The
+	 * mapping is dropped as soon as nobody uses the store any longer, and the
+	 * next open() maps the file again.
+	 * 
+	 * @param fileName
+	 *            The .bases file
+	 */
+	static public synchronized void release(String fileName) {
+		SequenceStore.stores.remove(fileName);
+	}
+}
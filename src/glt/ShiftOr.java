@@ -0,0 +1,64 @@
+package glt;
+
+/**
+ * The bit-parallel Shift-Or of Baeza-Yates and Gonnet for patterns of up to
+ * 64 letters. Every text letter costs a shift, an or and a test of a single
+ * long, no matter how the pattern looks, so it does not suffer from the short
+ * shifts Boyer-Moore is left with on four letters.
+ * 
+ * @author michael
+ * 
+ */
+public class ShiftOr implements Matcher {
+
+	static public final int MAX_LENGTH = 64;
+
+	private int length = 0;
+
+	// letter -> 0 bits at the positions of the pattern holding it
+	private long[] masks = new long[256];
+
+	// the bit of the last letter of the pattern
+	private long last = 0;
+
+	public ShiftOr(String pattern) {
+
+		this.length = pattern.length();
+
+		if (this.length == 0 || this.length > MAX_LENGTH) {
+			throw new IllegalArgumentException("Shift-Or takes 1 to " + MAX_LENGTH + " letters, not " + this.length);
+		}
+
+		for (int i = 0; i < 256; i++) {
+			this.masks[i] = ~0L;
+		}
+
+		for (int i = 0; i < this.length; i++) {
+			this.masks[pattern.charAt(i) & 0xff] &= ~(1L << i);
+		}
+
+		this.last = 1L << (this.length - 1);
+	}
+
+	@Override
+	public int length() {
+		return this.length;
+	}
+
+	@Override
+	public int match(byte[] text, int from, int to) {
+
+		long state = ~0L;
+
+		for (int i = from; i < to; i++) {
+
+			state = (state << 1) | this.masks[text[i] & 0xff];
+
+			if ((state & this.last) == 0) {
+				return i - this.length + 1;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,62 @@
+package glt;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the soft-masked (lower case) positions of a chromosome into a
+ * bitmap file, so the .bases file itself can be normalised to upper case.
+ * 
+ * Bit i (least significant bit first within each byte) is set if the base at
+ * position i in the .bases file was soft-masked.
+ * 
+ * @author michael
+ * 
+ */
+public class SoftMask {
+
+	private BufferedOutputStream out = null;
+
+	private int bits = 0; // the bits of the current byte
+	private int count = 0; // the number of bits in the current byte
+
+	public SoftMask(String fileName) throws IOException {
+		this.out = new BufferedOutputStream(new FileOutputStream(fileName));
+	}
+
+	/**
+	 * Adds the mask bits for the letters.
+	 * 
+	 * @param bases
+	 *            The letters as they are in the FASTA file
+	 * @param length
+	 *            The number of letters
+	 * @throws IOException
+	 */
+	public void add(byte[] bases, int length) throws IOException {
+
+		for (int i = 0; i < length; i++) {
+
+			if (Alphabet.isMasked(bases[i])) {
+				this.bits |= 1 << this.count;
+			}
+
+			if (++this.count == 8) {
+				this.out.write(this.bits);
+				this.bits = 0;
+				this.count = 0;
+			}
+		}
+	}
+
+	public void close() throws IOException {
+
+		// write the last incomplete byte
+		if (this.count > 0) {
+			this.out.write(this.bits);
+		}
+
+		this.out.close();
+	}
+}
@@ -0,0 +1,25 @@
+package glt;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a run of a pipeline stage, see Metrics.Stage.
+ * 
+ * @author michael
+ * 
+ */
+@Name("glt.Stage")
+@Label("Stage")
+@Category({ "GenomeLaser Tools" })
+@Description("A run of a stage of the pipeline, e.g. locateExons")
+@StackTrace(false)
+public class StageEvent extends Event {
+
+	@Label("Stage")
+	public String stage;
+}
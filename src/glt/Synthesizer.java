@@ -0,0 +1,839 @@
+package glt;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates synthetic reference chromosomes, a matching CCDS file and sample
+ * chromosomes derived from them, so the tools can be tested without the NCBI
+ * downloads.
+ *
+ * A reference chromosome consists of random bases with the configured GC
+ * content, runs of N for the telomeres, the centromere and a few gaps in
+ * between, and copies of a few repeat families, which can be soft-masked.
+ * The genes sit in between with exons on both strands. A sample is the
+ * reference with SNPs and indels at the configured rates. Every change is
+ * listed in a .variants file next to it.
+ *
+ * Everything only depends on the seed and the chromosome ID, so the same
+ * seed gives the same files no matter which chromosomes are generated
+ * together. Nothing but the positions of the gaps, repeats and exons is kept
+ * in memory, so chromosomes of any size can be generated.
+ *
+ * @author michael
+ *
+ */
+public class Synthesizer {
+
+	// the chromosomes of GRCh37 and their lengths
+	static private final String[] IDS = { "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13",
+			"14", "15", "16", "17", "18", "19", "20", "21", "22", "X", "Y" };
+	static private final int[] LENGTHS = { 249250621, 243199373, 198022430, 191154276, 180915260, 171115067,
+			159138663, 146364022, 141213431, 135534747, 135006516, 133851895, 115169878, 107349540, 102531392,
+			90354753, 81195210, 78077248, 59128983, 63025520, 48129895, 51304566, 155270560, 59373566 };
+
+	// the length of any other chromosome before scaling
+	static private final int DEFAULT_LENGTH = 100000000;
+	static private final int MINIMUM_LENGTH = 1000;
+
+	static private final int LINE_LENGTH = 70;
+
+	static private final byte[] BASES = { 'A', 'C', 'G', 'T' };
+	static private final byte[] AT = { 'A', 'T' };
+	static private final byte[] GC = { 'G', 'C' };
+
+	static private final int REPEAT_FAMILIES = 8;
+	// one in this many bases of a repeat copy differs from its family
+	static private final int REPEAT_DIVERGENCE = 20;
+
+	static private final int MAXIMUM_INDEL = 10;
+
+	// the independent random streams of a chromosome
+	static private final int LAYOUT = 1;
+	static private final int REFERENCE = 2;
+	static private final int SAMPLE = 3;
+
+	/**
+	 * A copy of a repeat family within a chromosome.
+	 */
+	static private class Repeat {
+
+		private int from = 0;
+		private byte[] letters = null;
+
+		private Repeat(int from, byte[] letters) {
+			this.from = from;
+			this.letters = letters;
+		}
+
+		private int getTo() {
+			return this.from + this.letters.length - 1;
+		}
+	}
+
+	/**
+	 * Where the gaps, repeats and genes of a chromosome are.
+	 */
+	static private class Layout {
+
+		private String id = null;
+		private int length = 0;
+
+		private final List<Interval> gaps = new ArrayList<Interval>();
+		private final List<Repeat> repeats = new ArrayList<Repeat>();
+
+		// the lines of the CCDS file
+		private final List<String> ccds = new ArrayList<String>();
+		private int exons = 0;
+		private long bases = 0;
+
+		// from -> to of all gaps, exons and repeats, which never overlap
+		private final TreeMap<Integer, Integer> occupied = new TreeMap<Integer, Integer>();
+
+		private Layout(String id, int length) {
+			this.id = id;
+			this.length = length;
+		}
+
+		private boolean isOccupied(int from, int to) {
+			Map.Entry<Integer, Integer> entry = this.occupied.floorEntry(to);
+			return entry != null && entry.getValue() >= from;
+		}
+
+		private void occupy(int from, int to) {
+			this.occupied.put(from, to);
+		}
+	}
+
+	/**
+	 * Streams the bases of a reference chromosome. The same layout and
+	 * random stream always give the same bases, so a sample can be derived
+	 * from the reference without reading it back.
+	 */
+	private class Reference {
+
+		private Layout layout = null;
+		private Random random = null;
+
+		private int position = 0; // the position of the next base
+		private int gap = 0; // the first gap not behind the position
+		private int repeat = 0; // the first repeat not behind the position
+		private int peeked = -1; // the next base if it has been peeked at
+
+		private Reference(Layout layout) {
+			this.layout = layout;
+			this.random = Synthesizer.this.random(layout.id, REFERENCE);
+		}
+
+		private boolean hasNext() {
+			return this.peeked >= 0 || this.position < this.layout.length;
+		}
+
+		private byte peek() {
+
+			if (this.peeked < 0) {
+				this.peeked = this.generate();
+			}
+
+			return (byte) this.peeked;
+		}
+
+		private byte next() {
+
+			byte b = this.peek();
+			this.peeked = -1;
+
+			return b;
+		}
+
+		private byte generate() {
+
+			List<Interval> gaps = this.layout.gaps;
+			List<Repeat> repeats = this.layout.repeats;
+
+			int position = this.position++;
+
+			while (this.gap < gaps.size() && gaps.get(this.gap).getTo() < position) {
+				this.gap++;
+			}
+
+			if (this.gap < gaps.size() && gaps.get(this.gap).contains(position)) {
+				return 'N';
+			}
+
+			while (this.repeat < repeats.size() && repeats.get(this.repeat).getTo() < position) {
+				this.repeat++;
+			}
+
+			if (this.repeat < repeats.size() && repeats.get(this.repeat).from <= position) {
+
+				Repeat repeat = repeats.get(this.repeat);
+				byte b = repeat.letters[position - repeat.from];
+
+				if (this.random.nextInt(REPEAT_DIVERGENCE) == 0) {
+					b = Synthesizer.this.base(this.random);
+				}
+
+				return Synthesizer.this.softMasked ? (byte) Character.toLowerCase(b) : b;
+			}
+
+			return Synthesizer.this.base(this.random);
+		}
+	}
+
+	/**
+	 * Writes bases into a FASTA file, breaking the lines as NCBI does.
+	 */
+	static private class FastaWriter {
+
+		private BufferedOutputStream out = null;
+		private int column = 0;
+		private long written = 0;
+
+		private FastaWriter(String fileName, String header) throws IOException {
+			this.out = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 20);
+			this.out.write(('>' + header + '\n').getBytes("US-ASCII"));
+		}
+
+		private void write(byte b) throws IOException {
+
+			this.out.write(b);
+			this.written++;
+
+			if (++this.column == LINE_LENGTH) {
+				this.out.write('\n');
+				this.column = 0;
+			}
+		}
+
+		private void close() throws IOException {
+
+			if (this.column > 0) {
+				this.out.write('\n');
+			}
+
+			this.out.close();
+		}
+	}
+
+	private long seed = 1;
+	// the share of the GRCh37 length of each chromosome
+	private double scale = 0.01;
+	// the length of every chromosome, 0 for the scaled GRCh37 length
+	private int length = 0;
+	private double gcContent = 0.41;
+	// the number of gaps besides the telomeres and the centromere
+	private int gapCount = 4;
+	// the share of the bases within repeats
+	private double repeatFraction = 0.1;
+	// write the repeats in lower case
+	private boolean softMasked = false;
+	private double genesPerMegabase = 8;
+	// the chance of a SNP and of an indel at every base of a sample
+	private double snpRate = 0.001;
+	private double indelRate = 0.0001;
+
+	// the last layout, as the reference, the sample and the CCDS need the same one
+	private Layout layout = null;
+
+	public Synthesizer setSeed(long seed) {
+		this.seed = seed;
+		this.layout = null;
+		return this;
+	}
+
+	public long getSeed() {
+		return this.seed;
+	}
+
+	public Synthesizer setScale(double scale) {
+		this.scale = scale;
+		this.layout = null;
+		return this;
+	}
+
+	public double getScale() {
+		return this.scale;
+	}
+
+	public Synthesizer setLength(int length) {
+		this.length = length;
+		this.layout = null;
+		return this;
+	}
+
+	/**
+	 * Returns the length of a chromosome.
+	 *
+	 * @param id
+	 *            The chromosome ID
+	 * @return the configured length or the scaled GRCh37 length
+	 */
+	public int getLength(String id) {
+
+		if (this.length > 0) {
+			return this.length;
+		}
+
+		int length = DEFAULT_LENGTH;
+
+		for (int i = 0; i < IDS.length; i++) {
+			if (IDS[i].equals(id)) {
+				length = LENGTHS[i];
+			}
+		}
+
+		return Math.max(MINIMUM_LENGTH, (int) (length * this.scale));
+	}
+
+	public Synthesizer setGcContent(double gcContent) {
+		this.gcContent = gcContent;
+		this.layout = null;
+		return this;
+	}
+
+	public double getGcContent() {
+		return this.gcContent;
+	}
+
+	public Synthesizer setGapCount(int gapCount) {
+		this.gapCount = gapCount;
+		this.layout = null;
+		return this;
+	}
+
+	public int getGapCount() {
+		return this.gapCount;
+	}
+
+	public Synthesizer setRepeatFraction(double repeatFraction) {
+		this.repeatFraction = repeatFraction;
+		this.layout = null;
+		return this;
+	}
+
+	public double getRepeatFraction() {
+		return this.repeatFraction;
+	}
+
+	public Synthesizer setSoftMasked(boolean softMasked) {
+		this.softMasked = softMasked;
+		return this;
+	}
+
+	public boolean isSoftMasked() {
+		return this.softMasked;
+	}
+
+	public Synthesizer setGenesPerMegabase(double genesPerMegabase) {
+		this.genesPerMegabase = genesPerMegabase;
+		this.layout = null;
+		return this;
+	}
+
+	public double getGenesPerMegabase() {
+		return this.genesPerMegabase;
+	}
+
+	public Synthesizer setSnpRate(double snpRate) {
+		this.snpRate = snpRate;
+		return this;
+	}
+
+	public double getSnpRate() {
+		return this.snpRate;
+	}
+
+	public Synthesizer setIndelRate(double indelRate) {
+		this.indelRate = indelRate;
+		return this;
+	}
+
+	public double getIndelRate() {
+		return this.indelRate;
+	}
+
+	/**
+	 * Writes a reference chromosome as FASTA.
+	 *
+	 * @param id
+	 *            The chromosome ID
+	 * @param fileName
+	 *            The FASTA file
+	 * @return the Synthesizer
+	 * @throws IOException
+	 */
+	public Synthesizer writeReference(String id, String fileName) throws IOException {
+
+		Metrics.Stage stage = Metrics.stage("synthesize");
+		stage.start();
+
+		try {
+
+			Layout layout = this.layout(id);
+			Reference reference = new Reference(layout);
+
+			FastaWriter out = new FastaWriter(fileName, this.header(id, "reference"));
+
+			try {
+				while (reference.hasNext()) {
+					out.write(reference.next());
+				}
+			} finally {
+				out.close();
+			}
+
+			stage.addBytesWritten(out.written);
+
+		} finally {
+			stage.stop();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Writes a sample chromosome as FASTA, which is the reference with SNPs
+	 * and indels. Each line of the variants file is [reference
+	 * position],[sample position],[SNP|INS|DEL],[reference letters],[sample
+	 * letters] with - for no letters. The gaps are never changed.
+	 *
+	 * @param id
+	 *            The chromosome ID
+	 * @param fileName
+	 *            The FASTA file
+	 * @param variantsFileName
+	 *            The variants file
+	 * @return the Synthesizer
+	 * @throws IOException
+	 */
+	public Synthesizer writeSample(String id, String fileName, String variantsFileName) throws IOException {
+
+		Metrics.Stage stage = Metrics.stage("synthesize");
+		stage.start();
+
+		try {
+
+			Layout layout = this.layout(id);
+			Reference reference = new Reference(layout);
+			Random random = this.random(id, SAMPLE);
+
+			FastaWriter out = new FastaWriter(fileName, this.header(id, "sample"));
+			BufferedWriter variants = new BufferedWriter(new FileWriter(variantsFileName));
+
+			try {
+
+				int position = 0; // within the reference
+
+				while (reference.hasNext()) {
+
+					byte b = reference.next();
+
+					if (b == 'N') {
+						out.write(b);
+						position++;
+						continue;
+					}
+
+					double r = random.nextDouble();
+
+					if (r < this.snpRate) {
+
+						byte alt = BASES[(this.indexOf(b) + 1 + random.nextInt(BASES.length - 1)) % BASES.length];
+						alt = this.sameCase(alt, b);
+
+						this.variant(variants, position, out.written, "SNP", (char) b, (char) alt);
+						out.write(alt);
+
+					} else if (r < this.snpRate + this.indelRate && random.nextBoolean()) {
+
+						// the inserted bases follow this one
+						out.write(b);
+
+						StringBuilder inserted = new StringBuilder();
+
+						long samplePosition = out.written;
+
+						for (int i = random.nextInt(MAXIMUM_INDEL) + 1; i > 0; i--) {
+							byte ins = this.sameCase(this.base(random), b);
+							inserted.append((char) ins);
+							out.write(ins);
+						}
+
+						this.variant(variants, position + 1, samplePosition, "INS", "-", inserted);
+
+					} else if (r < this.snpRate + this.indelRate) {
+
+						// this base and the ones following it, but never a gap
+						StringBuilder deleted = new StringBuilder().append((char) b);
+
+						for (int i = random.nextInt(MAXIMUM_INDEL); i > 0 && reference.hasNext() && reference.peek() != 'N'; i--) {
+							deleted.append((char) reference.next());
+						}
+
+						this.variant(variants, position, out.written, "DEL", deleted, "-");
+						position += deleted.length() - 1;
+
+					} else {
+						out.write(b);
+					}
+
+					position++;
+				}
+
+			} finally {
+				out.close();
+				variants.close();
+			}
+
+			stage.addBytesWritten(out.written);
+
+		} finally {
+			stage.stop();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Writes the CCDS file of the chromosomes. Every gene has up to three
+	 * CDS, the later ones skipping one of the exons of the first one.
+	 *
+	 * @param ids
+	 *            The chromosome IDs
+	 * @param fileName
+	 *            The CCDS file
+	 * @return the Synthesizer
+	 * @throws IOException
+	 */
+	public Synthesizer writeCcds(List<String> ids, String fileName) throws IOException {
+
+		Metrics.Stage stage = Metrics.stage("synthesize");
+		stage.start();
+
+		try {
+
+			BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+
+			try {
+
+				out.write("#chromosome\tnc_accession\tgene\tgene_id\tccds_id\tccds_status\tcds_strand\tcds_from\tcds_to\tcds_locations\tmatch_type");
+				out.newLine();
+
+				for (String id : ids) {
+
+					Layout layout = this.layout(id);
+
+					for (String line : layout.ccds) {
+						out.write(line);
+						out.newLine();
+					}
+
+					stage.addExons(layout.exons, layout.bases);
+				}
+
+			} finally {
+				out.close();
+			}
+
+		} finally {
+			stage.stop();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Returns the layout of a chromosome. It is computed the first time.
+	 */
+	private Layout layout(String id) {
+
+		if (this.layout != null && this.layout.id.equals(id)) {
+			return this.layout;
+		}
+
+		Random random = this.random(id, LAYOUT);
+		Layout layout = new Layout(id, this.getLength(id));
+
+		this.addGaps(layout, random);
+		this.addGenes(layout, random);
+		this.addRepeats(layout, random);
+
+		GLT.logger.info("Chromosome " + id + " has " + layout.length + " bases, " + layout.gaps.size() + " gaps, "
+				+ layout.repeats.size() + " repeats and " + layout.exons + " exons");
+
+		this.layout = layout;
+
+		return layout;
+	}
+
+	/**
+	 * Adds the telomeres, the centromere and the other gaps.
+	 */
+	private void addGaps(Layout layout, Random random) {
+
+		int length = layout.length;
+
+		List<Interval> gaps = new ArrayList<Interval>();
+
+		int telomere = Math.min(10000, length / 100);
+
+		if (telomere > 0) {
+			gaps.add(new Interval(0, telomere - 1));
+			gaps.add(new Interval(length - telomere, length - 1));
+		}
+
+		int centromere = length / 50;
+
+		if (centromere > 0) {
+			int from = (int) (length * (0.3 + 0.2 * random.nextDouble()));
+			gaps.add(new Interval(from, from + centromere - 1));
+		}
+
+		int maximum = Math.min(50000, length / 100);
+
+		for (int i = 0; i < this.gapCount && maximum > 1000; i++) {
+			int gapLength = 1000 + random.nextInt(maximum - 1000);
+			int from = random.nextInt(length - gapLength);
+			gaps.add(new Interval(from, from + gapLength - 1));
+		}
+
+		Collections.sort(gaps);
+
+		// merge the overlapping ones
+		for (Interval gap : gaps) {
+
+			int last = layout.gaps.size() - 1;
+
+			if (last >= 0 && layout.gaps.get(last).getTo() + 1 >= gap.getFrom()) {
+				Interval merged = new Interval(layout.gaps.get(last).getFrom(), Math.max(layout.gaps.get(last).getTo(), gap.getTo()));
+				layout.gaps.set(last, merged);
+			} else {
+				layout.gaps.add(gap);
+			}
+		}
+
+		for (Interval gap : layout.gaps) {
+			layout.occupy((int) gap.getFrom(), (int) gap.getTo());
+		}
+	}
+
+	/**
+	 * Adds the genes one after the other in between the gaps.
+	 */
+	private void addGenes(Layout layout, Random random) {
+
+		if (this.genesPerMegabase <= 0) {
+			return;
+		}
+
+		int number = this.number(layout.id);
+		String accession = String.format("NC_%06d.10", number);
+
+		double spacing = 1e6 / this.genesPerMegabase;
+
+		int position = 0;
+		int genes = 0;
+		int cdss = 0;
+
+		while (true) {
+
+			position += (int) (random.nextDouble() * 2 * spacing);
+
+			int exonCount = 2 + random.nextInt(11);
+
+			int[] froms = new int[exonCount];
+			int[] tos = new int[exonCount];
+
+			int p = position;
+
+			for (int e = 0; e < exonCount; e++) {
+				froms[e] = p;
+				tos[e] = p + 30 + random.nextInt(271) - 1;
+				p = tos[e] + 1 + 100 + random.nextInt(2901);
+			}
+
+			int to = tos[exonCount - 1];
+
+			if (to < 0 || to >= layout.length) {
+				break;
+			}
+
+			// move it behind the gap it would overlap with
+			if (layout.isOccupied(position, to)) {
+				position = layout.occupied.floorEntry(to).getValue() + 1;
+				continue;
+			}
+
+			for (int e = 0; e < exonCount; e++) {
+				layout.occupy(froms[e], tos[e]);
+				layout.exons++;
+				layout.bases += tos[e] - froms[e] + 1;
+			}
+
+			genes++;
+
+			String gene = "SYN" + layout.id + "G" + genes;
+			int geneId = number * 100000 + genes;
+			String strand = random.nextBoolean() ? "+" : "-";
+
+			int isoforms = exonCount > 2 ? 1 + random.nextInt(3) : 1;
+
+			for (int i = 0; i < isoforms; i++) {
+
+				cdss++;
+
+				int skipped = i > 0 ? 1 + random.nextInt(exonCount - 2) : -1;
+
+				StringBuilder locations = new StringBuilder("[");
+
+				for (int e = 0; e < exonCount; e++) {
+					if (e != skipped) {
+						locations.append(locations.length() > 1 ? ", " : "").append(froms[e]).append('-').append(tos[e]);
+					}
+				}
+
+				locations.append(']');
+
+				int s = random.nextInt(100);
+				String status = s < 90 ? "Public" : s < 95 ? "Reviewed, update pending" : "Withdrawn";
+				String matchType = random.nextInt(100) < 97 ? "Identical" : "Partial";
+
+				layout.ccds.add(layout.id + "\t" + accession + "\t" + gene + "\t" + geneId + "\tCCDS"
+						+ (number * 1000000 + cdss) + ".1\t" + status + "\t" + strand + "\t" + froms[0] + "\t" + to
+						+ "\t" + locations + "\t" + matchType);
+			}
+
+			position = to + 1;
+		}
+	}
+
+	/**
+	 * Adds copies of a few repeat families wherever there is room.
+	 */
+	private void addRepeats(Layout layout, Random random) {
+
+		if (this.repeatFraction <= 0) {
+			return;
+		}
+
+		byte[][] families = new byte[REPEAT_FAMILIES][];
+
+		for (int i = 0; i < families.length; i++) {
+			families[i] = new byte[150 + random.nextInt(250)];
+			for (int j = 0; j < families[i].length; j++) {
+				families[i][j] = this.base(random);
+			}
+		}
+
+		long target = (long) (this.repeatFraction * layout.length);
+		long attempts = 4 * target / 150 + 100;
+
+		long covered = 0;
+
+		while (covered < target && attempts-- > 0) {
+
+			byte[] family = families[random.nextInt(families.length)];
+
+			if (family.length >= layout.length) {
+				break;
+			}
+
+			int from = random.nextInt(layout.length - family.length);
+			int to = from + family.length - 1;
+
+			if (!layout.isOccupied(from, to)) {
+				layout.occupy(from, to);
+				layout.repeats.add(new Repeat(from, family));
+				covered += family.length;
+			}
+		}
+
+		Collections.sort(layout.repeats, new Comparator<Repeat>() {
+			@Override
+			public int compare(Repeat r1, Repeat r2) {
+				return Integer.compare(r1.from, r2.from);
+			}
+		});
+	}
+
+	/**
+	 * Returns a random base with the configured GC content.
+	 */
+	private byte base(Random random) {
+
+		int r = random.nextInt();
+
+		// the upper 31 bits decide between GC and AT, the lowest one which of them
+		if ((r >>> 1) < this.gcContent * (1L << 31)) {
+			return GC[r & 1];
+		}
+
+		return AT[r & 1];
+	}
+
+	private int indexOf(byte b) {
+
+		byte upper = Alphabet.upper(b);
+
+		for (int i = 0; i < BASES.length; i++) {
+			if (BASES[i] == upper) {
+				return i;
+			}
+		}
+
+		return 0;
+	}
+
+	private byte sameCase(byte b, byte as) {
+		return Alphabet.isMasked(as) ? (byte) Character.toLowerCase(b) : b;
+	}
+
+	private void variant(BufferedWriter out, long position, long samplePosition, String type, Object ref, Object alt)
+			throws IOException {
+		out.write("" + position + "," + samplePosition + "," + type + "," + ref + "," + alt);
+		out.newLine();
+	}
+
+	/**
+	 * Returns the number of the chromosome as in its NCBI accession, e.g. 23
+	 * for X.
+	 */
+	private int number(String id) {
+
+		for (int i = 0; i < IDS.length; i++) {
+			if (IDS[i].equals(id)) {
+				return i + 1;
+			}
+		}
+
+		return IDS.length + 1 + Math.abs(id.hashCode() % 75);
+	}
+
+	private String header(String id, String kind) {
+		return "synthetic|" + String.format("NC_%06d.10", this.number(id)) + "| Synthetic chromosome " + id + ", "
+				+ kind + ", seed " + this.seed;
+	}
+
+	/**
+	 * Returns one of the independent random streams of a chromosome.
+	 */
+	private Random random(String id, int stream) {
+
+		long seed = this.seed;
+		seed = seed * 0x9E3779B97F4A7C15L + id.hashCode();
+		seed = seed * 0x9E3779B97F4A7C15L + stream;
+
+		return new Random(seed ^ (seed >>> 31));
+	}
+}
@@ -0,0 +1,186 @@
+package glt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The two-way algorithm of Crochemore and Perrin. The pattern is split at a
+ * critical factorization: the right part is compared from left to right, the
+ * left one from right to left, and the period of the pattern tells how far
+ * to shift. It takes linear time in the worst case with constant extra space,
+ * so repetitive patterns, where Boyer-Moore keeps comparing the same letters
+ * again, are no problem.
+ * 
+ * See: Charras, Lecroq: Handbook of Exact String Matching Algorithms.
+ * 
+ * @author michael
+ * 
+ */
+public class TwoWay implements Matcher {
+
+	private byte[] pattern = null;
+
+	// the last position of the left part of the factorization
+	private int ell = 0;
+	// the period of the pattern, or a shift which is safe if it is not periodic
+	private int period = 0;
+	// whether the left part is a suffix of its first period, i.e. the pattern is periodic
+	private boolean periodic = false;
+
+	public TwoWay(String pattern) {
+
+		this.pattern = pattern.getBytes(StandardCharsets.US_ASCII);
+
+		int m = this.pattern.length;
+
+		// the longer of the maximal suffixes for both orders of the alphabet is a critical factorization
+		int[] p = new int[1];
+		int[] q = new int[1];
+
+		int i = TwoWay.maximalSuffix(this.pattern, p, false);
+		int j = TwoWay.maximalSuffix(this.pattern, q, true);
+
+		if (i > j) {
+			this.ell = i;
+			this.period = p[0];
+		} else {
+			this.ell = j;
+			this.period = q[0];
+		}
+
+		this.periodic = this.ell + 1 + this.period <= m;
+
+		for (int k = 0; this.periodic && k <= this.ell; k++) {
+			if (this.pattern[k] != this.pattern[k + this.period]) {
+				this.periodic = false;
+			}
+		}
+
+		if (!this.periodic) {
+			this.period = Math.max(this.ell + 1, m - this.ell - 1) + 1;
+		}
+	}
+
+	@Override
+	public int length() {
+		return this.pattern.length;
+	}
+
+	@Override
+	public int match(byte[] text, int from, int to) {
+
+		byte[] x = this.pattern;
+		int m = x.length;
+
+		if (this.periodic) {
+
+			// the prefix of the pattern known to match after shifting by the period
+			int memory = -1;
+
+			for (int j = from; j + m <= to;) {
+
+				int i = Math.max(this.ell, memory) + 1;
+
+				while (i < m && x[i] == text[i + j]) {
+					i++;
+				}
+
+				if (i >= m) {
+
+					i = this.ell;
+
+					while (i > memory && x[i] == text[i + j]) {
+						i--;
+					}
+
+					if (i <= memory) {
+						return j;
+					}
+
+					j += this.period;
+					memory = m - this.period - 1;
+
+				} else {
+					j += i - this.ell;
+					memory = -1;
+				}
+			}
+
+		} else {
+
+			for (int j = from; j + m <= to;) {
+
+				int i = this.ell + 1;
+
+				while (i < m && x[i] == text[i + j]) {
+					i++;
+				}
+
+				if (i >= m) {
+
+					i = this.ell;
+
+					while (i >= 0 && x[i] == text[i + j]) {
+						i--;
+					}
+
+					if (i < 0) {
+						return j;
+					}
+
+					j += this.period;
+
+				} else {
+					j += i - this.ell;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the position before the maximal suffix of the pattern.
+	 * 
+	 * @param period
+	 *            Its period is put into period[0]
+	 * @param reverse
+	 *            Whether the order of the letters is reversed
+	 */
+	static private int maximalSuffix(byte[] x, int[] period, boolean reverse) {
+
+		int m = x.length;
+
+		int ms = -1;
+		int j = 0;
+		int k = 1;
+		int p = 1;
+
+		while (j + k < m) {
+
+			int a = x[j + k] & 0xff;
+			int b = x[ms + k] & 0xff;
+
+			if (reverse ? a > b : a < b) {
+				j += k;
+				k = 1;
+				p = j - ms;
+			} else if (a == b) {
+				if (k != p) {
+					k++;
+				} else {
+					j += p;
+					k = 1;
+				}
+			} else {
+				ms = j;
+				j = ms + 1;
+				k = 1;
+				p = 1;
+			}
+		}
+
+		period[0] = p;
+
+		return ms;
+	}
+}
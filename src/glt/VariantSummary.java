@@ -0,0 +1,331 @@
+package glt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the exons which have been found in a sample with the reference: a
+ * cheap screen for how far the sample diverges, not a variant caller.
+ *
+ * Exons of the same length as in the reference are compared base by base
+ * with the mismatch counting kernel. Only if that takes more edits than the
+ * approximate search has found, or the lengths differ, the exon is aligned
+ * to the sample within a band of that many edits, which tells the
+ * substitutions from the inserted and deleted bases.
+ *
+ * compare() can be called by any number of threads, write() then streams the
+ * exons and their rollups per CDS and gene in the order of the model, one
+ * line each:
+ *
+ * <pre>
+ * exon,[gene],[CDS],[exon],[reference length],[sample length],[mismatches],[indel],[identity]
+ * cds,[gene],[CDS],[exons found],[exons],[bases],[mismatches],[indels],[identity]
+ * gene,[gene],[exons found],[exons],[bases],[mismatches],[indels],[identity]
+ * </pre>
+ *
+ * indel is 1 if the exon has any inserted or deleted bases, indels the number
+ * of exons with any. The identity is the share of aligned bases which match.
+ * Exons which could not be found have no sample length and nothing after it.
+ *
+ * @author michael
+ *
+ */
+public class VariantSummary {
+
+	/**
+	 * How an exon compares with the reference.
+	 */
+	static public class Comparison {
+
+		private int referenceLength = 0;
+		private int sampleLength = 0;
+		private int mismatches = 0;
+		private int indels = 0; // the inserted and deleted bases
+		private int columns = 0; // the length of the alignment
+
+		public int getReferenceLength() {
+			return this.referenceLength;
+		}
+
+		public int getSampleLength() {
+			return this.sampleLength;
+		}
+
+		public int getMismatches() {
+			return this.mismatches;
+		}
+
+		public boolean hasIndel() {
+			return this.indels > 0;
+		}
+
+		public double getIdentity() {
+			return this.columns > 0 ? (double) (this.columns - this.mismatches - this.indels) / this.columns : 0;
+		}
+
+		int getIndels() {
+			return this.indels;
+		}
+
+		int getColumns() {
+			return this.columns;
+		}
+	}
+
+	// the moves of the alignment
+	static private final byte DIAGONAL = 0;
+	static private final byte UP = 1; // a base of the reference which is not in the sample
+	static private final byte LEFT = 2; // a base of the sample which is not in the reference
+
+	private SequenceStore reference = null;
+	private SequenceStore sample = null;
+	private SequenceProvider sequences = null;
+	private Locations locations = null;
+
+	// exon -> how it compares, only for the ones which have been found
+	private final Map<Exon, Comparison> comparisons = new ConcurrentHashMap<Exon, Comparison>();
+
+	public VariantSummary(SequenceStore reference, SequenceStore sample, SequenceProvider sequences, Locations locations) {
+
+		this.reference = reference;
+		this.sample = sample;
+		this.sequences = sequences;
+		this.locations = locations;
+	}
+
+	/**
+	 * Compares an exon with where it has been found in the sample.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return how it compares, null if it has not been found
+	 * @throws IOException
+	 */
+	public Comparison compare(Exon exon) throws IOException {
+
+		if (!this.locations.isLocated(exon)) {
+			return null;
+		}
+
+		// the sample holds the positive strand, unless the exon has been found on its negative one
+		byte[] letters = this.sequences.getLetters(this.reference, exon, Strand.Positive).getBytes(StandardCharsets.US_ASCII);
+
+		int from = this.locations.get(exon);
+		int length = this.locations.getLength(exon) > 0 ? this.locations.getLength(exon) : letters.length;
+		int distance = this.locations.getDistance(exon);
+
+		byte[] bases = new byte[length];
+
+		this.sample.read(from, bases, 0, length);
+
+		Kernels kernels = Kernels.factory();
+
+		kernels.upper(bases, 0, length);
+
+		if (this.locations.getStrand(exon) == Strand.Negative) {
+			kernels.reverseComplement(bases, 0, length);
+		}
+
+		Comparison comparison = new Comparison();
+		comparison.referenceLength = letters.length;
+		comparison.sampleLength = length;
+
+		int mismatches = length == letters.length ? kernels.mismatches(bases, 0, letters, 0, length) : -1;
+
+		// an exact hit or nothing but substitutions
+		if (mismatches >= 0 && (distance == 0 || mismatches <= distance)) {
+
+			comparison.mismatches = mismatches;
+			comparison.columns = length;
+
+		} else {
+
+			VariantSummary.align(letters, bases, Math.max(distance, Math.abs(length - letters.length)), comparison);
+		}
+
+		this.comparisons.put(exon, comparison);
+
+		return comparison;
+	}
+
+	/**
+	 * Aligns the bases of the sample to the letters of the reference
+	 * end-to-end, with at most band more bases on one side than on the other
+	 * at any point.
+	 */
+	static void align(byte[] letters, byte[] bases, int band, Comparison comparison) {
+
+		int n = letters.length;
+		int m = bases.length;
+		int width = 2 * band + 1;
+
+		// row i holds the columns j = i - band .. i + band
+		int[] previous = new int[width];
+		int[] costs = new int[width];
+		byte[][] moves = new byte[n + 1][width];
+
+		int infinity = Integer.MAX_VALUE / 2;
+
+		for (int i = 0; i <= n; i++) {
+
+			for (int k = 0; k < width; k++) {
+
+				int j = i - band + k;
+
+				if (j < 0 || j > m) {
+					costs[k] = infinity;
+					continue;
+				}
+
+				if (i == 0) {
+					costs[k] = j;
+					moves[i][k] = LEFT;
+					continue;
+				}
+
+				// previous[k] is (i - 1, j - 1), previous[k + 1] is (i - 1, j), costs[k - 1] is (i, j - 1)
+				int cost = infinity;
+				byte move = DIAGONAL;
+
+				if (j > 0) {
+					cost = previous[k] + (letters[i - 1] == bases[j - 1] ? 0 : 1);
+				}
+
+				if (k + 1 < width && previous[k + 1] + 1 < cost) {
+					cost = previous[k + 1] + 1;
+					move = UP;
+				}
+
+				if (k > 0 && j > 0 && costs[k - 1] + 1 < cost) {
+					cost = costs[k - 1] + 1;
+					move = LEFT;
+				}
+
+				costs[k] = cost;
+				moves[i][k] = move;
+			}
+
+			int[] swap = previous;
+			previous = costs;
+			costs = swap;
+		}
+
+		// walk back from the end of both
+		int i = n;
+		int j = m;
+
+		while (i > 0 || j > 0) {
+
+			byte move = moves[i][j - i + band];
+
+			if (i > 0 && j > 0 && move == DIAGONAL) {
+				if (letters[i - 1] != bases[j - 1]) {
+					comparison.mismatches++;
+				}
+				i--;
+				j--;
+			} else if (i > 0 && (move == UP || j == 0)) {
+				comparison.indels++;
+				i--;
+			} else {
+				comparison.indels++;
+				j--;
+			}
+
+			comparison.columns++;
+		}
+	}
+
+	/**
+	 * Returns how an exon compares with the reference.
+	 *
+	 * @param exon
+	 *            The exon
+	 * @return how it compares, null if it has not been found or compared
+	 */
+	public Comparison get(Exon exon) {
+		return this.comparisons.get(exon);
+	}
+
+	/**
+	 * Writes the public exons of the chromosome with their rollups.
+	 *
+	 * @param chromosome
+	 *            The chromosome
+	 * @param out
+	 *            Where the lines go
+	 * @throws IOException
+	 */
+	public void write(Chromosome chromosome, Writer out) throws IOException {
+
+		for (Gene gene : chromosome.getGenes()) {
+
+			long[] geneTotals = new long[6];
+
+			for (Accession accession : gene.getAccessions()) {
+				for (CDS cds : accession.getCCDSs()) {
+
+					if (!cds.isPublic()) {
+						continue;
+					}
+
+					long[] cdsTotals = new long[6];
+
+					for (Exon exon : cds.getExons()) {
+
+						Comparison comparison = this.comparisons.get(exon);
+
+						out.write("exon," + gene.getName() + "," + cds.getId() + "," + exon.getId() + "," + exon.getLength());
+
+						if (comparison != null) {
+							out.write("," + comparison.sampleLength + "," + comparison.mismatches + "," + (comparison.hasIndel() ? 1 : 0)
+									+ "," + VariantSummary.format(comparison.getIdentity()));
+						}
+
+						out.write("\n");
+
+						VariantSummary.add(cdsTotals, comparison, exon);
+					}
+
+					out.write("cds," + gene.getName() + "," + cds.getId() + "," + VariantSummary.format(cdsTotals) + "\n");
+
+					for (int i = 0; i < geneTotals.length; i++) {
+						geneTotals[i] += cdsTotals[i];
+					}
+				}
+			}
+
+			out.write("gene," + gene.getName() + "," + VariantSummary.format(geneTotals) + "\n");
+		}
+	}
+
+	/**
+	 * Adds an exon to the totals {found, exons, bases, mismatches, indels,
+	 * aligned bases which match}. The bases are the ones of the alignments.
+	 */
+	static private void add(long[] totals, Comparison comparison, Exon exon) {
+
+		totals[1]++;
+
+		if (comparison != null) {
+			totals[0]++;
+			totals[2] += comparison.columns;
+			totals[3] += comparison.mismatches;
+			totals[4] += comparison.hasIndel() ? 1 : 0;
+			totals[5] += comparison.columns - comparison.mismatches - comparison.indels;
+		}
+	}
+
+	static private String format(long[] totals) {
+		return totals[0] + "," + totals[1] + "," + totals[2] + "," + totals[3] + "," + totals[4] + ","
+				+ VariantSummary.format(totals[2] > 0 ? (double) totals[5] / totals[2] : 0);
+	}
+
+	static private String format(double identity) {
+		return String.format(Locale.ROOT, "%.4f", identity);
+	}
+}
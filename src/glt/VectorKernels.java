@@ -0,0 +1,187 @@
+package glt;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Kernels with SIMD instructions, which work on as many bytes at once as
+ * the vectors of the CPU hold, e.g. 32 with AVX2. The bytes which do not fill
+ * a whole vector at the end are left to the scalar Kernels.
+ *
+ * The Vector API is an incubator module, so the JVM has to be started with
+ * --add-modules jdk.incubator.vector. Otherwise this class can not be loaded
+ * and Kernels.factory() falls back to the scalar Kernels.
+ *
+ * @author michael
+ *
+ */
+public class VectorKernels extends Kernels {
+
+	static private final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	static private final int LANES = SPECIES.length();
+
+	// reverses the order of the lanes
+	static private final VectorShuffle<Byte> REVERSE = VectorShuffle.fromOp(SPECIES, i -> LANES - 1 - i);
+
+	/**
+	 * Returns whether the vectors are wide enough to beat the scalar
+	 * Kernels. Without SIMD the Vector API falls back to plain Java, which is
+	 * slower than the loops of the Kernels.
+	 *
+	 * @return whether the VectorKernels are worth using
+	 */
+	static public boolean isUseful() {
+		return LANES >= 16;
+	}
+
+	/**
+	 * Returns the bases in upper case.
+	 */
+	static private ByteVector upper(ByteVector bases) {
+		VectorMask<Byte> lower = bases.compare(VectorOperators.GE, (byte) 'a').and(bases.compare(VectorOperators.LE, (byte) 'z'));
+		return bases.lanewise(VectorOperators.SUB, (byte) ('a' - 'A'), lower);
+	}
+
+	/**
+	 * Returns the complements of the bases, in the same order.
+	 */
+	static private ByteVector complement(ByteVector bases) {
+
+		ByteVector complement = bases;
+
+		complement = complement.blend((byte) 'T', bases.compare(VectorOperators.EQ, (byte) 'A'));
+		complement = complement.blend((byte) 'A', bases.compare(VectorOperators.EQ, (byte) 'T'));
+		complement = complement.blend((byte) 'G', bases.compare(VectorOperators.EQ, (byte) 'C'));
+		complement = complement.blend((byte) 'C', bases.compare(VectorOperators.EQ, (byte) 'G'));
+		complement = complement.blend((byte) 't', bases.compare(VectorOperators.EQ, (byte) 'a'));
+		complement = complement.blend((byte) 'a', bases.compare(VectorOperators.EQ, (byte) 't'));
+		complement = complement.blend((byte) 'g', bases.compare(VectorOperators.EQ, (byte) 'c'));
+		complement = complement.blend((byte) 'c', bases.compare(VectorOperators.EQ, (byte) 'g'));
+
+		return complement;
+	}
+
+	/**
+	 * Returns which bases are N or n.
+	 */
+	static private VectorMask<Byte> isN(ByteVector bases) {
+		// only N and n turn into n by setting the lower case bit
+		return bases.or((byte) ('a' - 'A')).compare(VectorOperators.EQ, (byte) 'n');
+	}
+
+	@Override
+	public int mismatch(byte[] bases, int basesFrom, byte[] letters, int lettersFrom, int length) {
+
+		int i = 0;
+
+		for (; i + LANES <= length; i += LANES) {
+
+			ByteVector b = VectorKernels.upper(ByteVector.fromArray(SPECIES, bases, basesFrom + i));
+			ByteVector l = ByteVector.fromArray(SPECIES, letters, lettersFrom + i);
+
+			VectorMask<Byte> differ = b.compare(VectorOperators.NE, l);
+
+			if (differ.anyTrue()) {
+				return i + differ.firstTrue();
+			}
+		}
+
+		int rest = super.mismatch(bases, basesFrom + i, letters, lettersFrom + i, length - i);
+
+		return rest >= 0 ? i + rest : -1;
+	}
+
+	@Override
+	public int mismatches(byte[] bases, int basesFrom, byte[] letters, int lettersFrom, int length) {
+
+		int mismatches = 0;
+		int i = 0;
+
+		for (; i + LANES <= length; i += LANES) {
+
+			ByteVector b = VectorKernels.upper(ByteVector.fromArray(SPECIES, bases, basesFrom + i));
+			ByteVector l = ByteVector.fromArray(SPECIES, letters, lettersFrom + i);
+
+			mismatches += b.compare(VectorOperators.NE, l).trueCount();
+		}
+
+		return mismatches + super.mismatches(bases, basesFrom + i, letters, lettersFrom + i, length - i);
+	}
+
+	@Override
+	public void reverseComplement(byte[] bases, int from, int to) {
+
+		int i = from;
+		int j = to;
+
+		// swap a vector from the front with one from the back until they would overlap
+		while (j - i >= 2 * LANES) {
+
+			ByteVector front = ByteVector.fromArray(SPECIES, bases, i);
+			ByteVector back = ByteVector.fromArray(SPECIES, bases, j - LANES);
+
+			VectorKernels.complement(back).rearrange(REVERSE).intoArray(bases, i);
+			VectorKernels.complement(front).rearrange(REVERSE).intoArray(bases, j - LANES);
+
+			i += LANES;
+			j -= LANES;
+		}
+
+		super.reverseComplement(bases, i, j);
+	}
+
+	@Override
+	public int indexOfN(byte[] bases, int from, int to) {
+
+		int i = from;
+
+		for (; i + LANES <= to; i += LANES) {
+
+			VectorMask<Byte> n = VectorKernels.isN(ByteVector.fromArray(SPECIES, bases, i));
+
+			if (n.anyTrue()) {
+				return i + n.firstTrue();
+			}
+		}
+
+		return super.indexOfN(bases, i, to);
+	}
+
+	@Override
+	public int indexOfNotN(byte[] bases, int from, int to) {
+
+		int i = from;
+
+		for (; i + LANES <= to; i += LANES) {
+
+			VectorMask<Byte> other = VectorKernels.isN(ByteVector.fromArray(SPECIES, bases, i)).not();
+
+			if (other.anyTrue()) {
+				return i + other.firstTrue();
+			}
+		}
+
+		return super.indexOfNotN(bases, i, to);
+	}
+
+	@Override
+	public void upper(byte[] bases, int from, int to) {
+
+		int i = from;
+
+		for (; i + LANES <= to; i += LANES) {
+			VectorKernels.upper(ByteVector.fromArray(SPECIES, bases, i)).intoArray(bases, i);
+		}
+
+		super.upper(bases, i, to);
+	}
+
+	@Override
+	public String toString() {
+		return "vector kernels with " + LANES + " lanes";
+	}
+}
@@ -0,0 +1,241 @@
+package glt;
+
+import glt.Config.MatcherType;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Locates bases by streaming the sequenced segments of the chromosome through
+ * a window of a fixed size. Whenever the window has been searched, the last
+ * bases which might be the start of a match are carried over to the front of
+ * the window and the rest is refilled from the file.
+ * 
+ * The chromosome is read from its SequenceStore, so it is mapped outside of
+ * the heap and can be shared with other threads. The heap needed does not
+ * depend on the size of the chromosome, so it works on small machines as
+ * well.
+ * 
+ * @author michael
+ * 
+ */
+public class WindowLocator implements Locator {
+
+	private SequenceStore store = null;
+	private List<Interval> segments = null;
+	private MatcherType matcherType = null;
+	// the Matchers prepared before, null if there are none
+	private Map<String, Matcher> matchers = null;
+
+	private byte[] window = null;
+
+	// the strand of the last hit
+	private Strand strand = Strand.Positive;
+
+	public WindowLocator(SequenceStore store, Gaps gaps, int windowSize, MatcherType matcherType) {
+		this(store, gaps, windowSize, matcherType, null);
+	}
+
+	/**
+	 * Creates a WindowLocator using prepared Matchers, see
+	 * Matchers.prepare(). Letters without one get a new Matcher.
+	 */
+	public WindowLocator(SequenceStore store, Gaps gaps, int windowSize, MatcherType matcherType, Map<String, Matcher> matchers) {
+
+		this.store = store;
+		this.segments = gaps.getSegments();
+		this.matcherType = matcherType;
+		this.matchers = matchers;
+
+		this.window = new byte[windowSize];
+	}
+
+	@Override
+	public long locate(String letters) throws IOException {
+		return this.locate(this.matcher(letters));
+	}
+
+	@Override
+	public long locate(String letters, String reverseComplement) throws IOException {
+		return this.locate(this.matcher(letters), this.matcher(reverseComplement));
+	}
+
+	@Override
+	public Strand getStrand() {
+		return this.strand;
+	}
+
+	/**
+	 * Returns the prepared Matcher for the letters or a new one.
+	 */
+	private Matcher matcher(String letters) {
+
+		Matcher matcher = this.matchers != null ? this.matchers.get(letters) : null;
+
+		if (matcher == null) {
+			matcher = Matchers.factory(this.matcherType, letters);
+		}
+
+		return matcher;
+	}
+
+	/**
+	 * Returns the position of the first occurrence of the Matcher's pattern.
+	 * 
+	 * @param matcher
+	 *            The Matcher
+	 * @return the position within the chromosome or -1 if it could not be
+	 *         found.
+	 * @throws IOException
+	 */
+	public long locate(Matcher matcher) throws IOException {
+		return this.locate(matcher, null);
+	}
+
+	/**
+	 * Returns the position of the first occurrence of either Matcher's
+	 * pattern. Both are matched against the window while it is in the cache,
+	 * so the chromosome is read only once.
+	 * 
+	 * @param matcher
+	 *            The Matcher of the positive strand
+	 * @param reverse
+	 *            The Matcher of the negative strand, null for none
+	 * @return the position within the chromosome or -1 if it could not be
+	 *         found.
+	 * @throws IOException
+	 */
+	public long locate(Matcher matcher, Matcher reverse) throws IOException {
+
+		this.strand = Strand.Positive;
+
+		int length = reverse != null ? Math.max(matcher.length(), reverse.length()) : matcher.length();
+
+		// the window must at least hold the carried over bases and something new.
+		// exons are tiny compared to the window, so this hardly ever happens
+		if (length >= this.window.length) {
+			GLT.logger.warning("Growing the window to " + (2 * length) + " bytes for a pattern of " + length);
+			this.window = new byte[2 * length];
+		}
+
+		for (Interval segment : this.segments) {
+
+			// too short to hold the letters at all
+			if (segment.getLength() < length) {
+				continue;
+			}
+
+			long position = segment.getFrom(); // the position of window[0] within the chromosome
+			long next = segment.getFrom(); // the next position to read
+			int filled = 0;
+
+			while (next <= segment.getTo()) {
+
+				int read = (int) Math.min(this.window.length - filled, segment.getTo() - next + 1);
+
+				this.store.read(next, this.window, filled, read);
+
+				// soft-masked bases match as well
+				Alphabet.upper(this.window, filled, filled + read);
+
+				filled += read;
+				next += read;
+
+				int found = matcher.match(this.window, 0, filled);
+
+				// the reverse complement only counts if it comes first
+				if (reverse != null) {
+
+					int foundReverse = reverse.match(this.window, 0, found >= 0 ? Math.min(filled, found + reverse.length() - 1) : filled);
+
+					if (foundReverse >= 0 && (found < 0 || foundReverse < found)) {
+						this.strand = Strand.Negative;
+						found = foundReverse;
+					}
+				}
+
+				if (found >= 0) {
+					return position + found;
+				}
+
+				// a match might start within the last length - 1 bases,
+				// so carry them over to the front of the window
+				int carry = Math.min(length - 1, filled);
+				System.arraycopy(this.window, filled - carry, this.window, 0, carry);
+
+				position += filled - carry;
+				filled = carry;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public int locateAll(String letters, int cap, LongList positions) throws IOException {
+
+		Matcher matcher = this.matcher(letters);
+
+		int length = matcher.length();
+
+		if (length >= this.window.length) {
+			GLT.logger.warning("Growing the window to " + (2 * length) + " bytes for a pattern of " + length);
+			this.window = new byte[2 * length];
+		}
+
+		int found = 0;
+
+		for (Interval segment : this.segments) {
+
+			if (found >= cap) {
+				break;
+			}
+
+			// too short to hold the letters at all
+			if (segment.getLength() < length) {
+				continue;
+			}
+
+			long position = segment.getFrom(); // the position of window[0] within the chromosome
+			long next = segment.getFrom(); // the next position to read
+			int filled = 0;
+			int from = 0; // the first position within the window after the last match
+
+			while (next <= segment.getTo() && found < cap) {
+
+				int read = (int) Math.min(this.window.length - filled, segment.getTo() - next + 1);
+
+				this.store.read(next, this.window, filled, read);
+
+				// soft-masked bases match as well
+				Alphabet.upper(this.window, filled, filled + read);
+
+				filled += read;
+				next += read;
+
+				for (int hit = matcher.match(this.window, from, filled); hit >= 0 && found < cap; hit = matcher.match(this.window, from, filled)) {
+					positions.add(position + hit);
+					found++;
+					from = hit + length;
+				}
+
+				// a match might start within the last length - 1 bases,
+				// unless they belong to the last match
+				int carryFrom = Math.max(filled - Math.min(length - 1, filled), Math.min(from, filled));
+				System.arraycopy(this.window, carryFrom, this.window, 0, filled - carryFrom);
+
+				position += carryFrom;
+				filled -= carryFrom;
+				from = 0;
+			}
+		}
+
+		return found;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the store is shared, so it stays open
+	}
+}
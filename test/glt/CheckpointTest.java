@@ -0,0 +1,127 @@
+package glt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a checkpoint log cut off by a killed run is resumed with
+ * everything up to the broken line.
+ *
+ * @author michael
+ *
+ */
+public class CheckpointTest {
+
+	static private final String HEADER = "#1000,1,false,Window,10,0";
+
+	@TempDir
+	File directory;
+
+	private final CDS cds = new CDS("CCDS1.1", CDS.Status.Public,
+			Accession.factory("NM_1", Gene.factory("1", "G1", "+", Chromosome.factory("T"))), CDS.MatchType.Identical);
+
+	private final Exon first = Exon.factory(100, 149, this.cds);
+	private final Exon second = Exon.factory(200, 259, this.cds);
+	private final Exon third = Exon.factory(300, 389, this.cds);
+	private final Exon fourth = Exon.factory(400, 409, this.cds);
+
+	@Test
+	public void resumesBeforeTheTornLine() throws IOException {
+
+		// killed while writing the third exon
+		String fileName = this.write(HEADER + "\n" + this.first.getId() + ",5\n" + this.second.getId() + ",-1\n" + this.third.getId());
+
+		Checkpoint checkpoint = Checkpoint.open(fileName, HEADER, true, 1);
+
+		assertTrue(checkpoint.has(this.first));
+		assertEquals(5, checkpoint.get(this.first));
+		assertTrue(checkpoint.has(this.second));
+		assertEquals(-1, checkpoint.get(this.second));
+		assertFalse(checkpoint.has(this.third));
+		assertFalse(checkpoint.isDone());
+
+		// the torn line must not swallow the next one
+		checkpoint.put(this.third, 7);
+		checkpoint.close();
+
+		checkpoint = Checkpoint.open(fileName, HEADER, true, 1);
+
+		assertEquals(5, checkpoint.get(this.first));
+		assertEquals(7, checkpoint.get(this.third));
+
+		checkpoint.close();
+	}
+
+	@Test
+	public void resumesBeforeATornApproximateHit() throws IOException {
+
+		String fileName = this.write(HEADER + "\n" + this.first.getId() + ",5,52,2\n" + this.second.getId() + ",9,61");
+
+		Checkpoint checkpoint = Checkpoint.open(fileName, HEADER, true, 1);
+
+		assertEquals(5, checkpoint.get(this.first));
+		assertEquals(52, checkpoint.getLength(this.first));
+		assertEquals(2, checkpoint.getEdits(this.first));
+		assertFalse(checkpoint.has(this.second));
+
+		checkpoint.put(this.second, 9, 59, 1);
+		checkpoint.put(this.fourth, 11);
+		checkpoint.done();
+		checkpoint.close();
+
+		checkpoint = Checkpoint.open(fileName, HEADER, true, 1);
+
+		assertEquals(59, checkpoint.getLength(this.second));
+		assertEquals(1, checkpoint.getEdits(this.second));
+		assertEquals(this.fourth.getLength(), checkpoint.getLength(this.fourth));
+		assertEquals(0, checkpoint.getEdits(this.fourth));
+		assertTrue(checkpoint.isDone());
+
+		checkpoint.close();
+	}
+
+	@Test
+	public void skipsBrokenNumbers() throws IOException {
+
+		String fileName = this.write(HEADER + "\n" + this.first.getId() + ",5\n" + this.second.getId() + ",1x\n" + this.third.getId() + ",7\n");
+
+		Checkpoint checkpoint = Checkpoint.open(fileName, HEADER, true, 1);
+
+		assertEquals(5, checkpoint.get(this.first));
+		assertFalse(checkpoint.has(this.second));
+		assertEquals(7, checkpoint.get(this.third));
+
+		checkpoint.close();
+	}
+
+	@Test
+	public void startsFromScratchForAnotherHeader() throws IOException {
+
+		String fileName = this.write(HEADER + "\n" + this.first.getId() + ",5\ndone\n");
+
+		Checkpoint checkpoint = Checkpoint.open(fileName, "#1000,2,false,Window,10,0", true, 1);
+
+		assertFalse(checkpoint.has(this.first));
+		assertFalse(checkpoint.isDone());
+
+		checkpoint.close();
+	}
+
+	private String write(String log) throws IOException {
+
+		File file = new File(this.directory, "chr1.checkpoint");
+
+		Files.write(file.toPath(), log.getBytes(StandardCharsets.US_ASCII));
+
+		return file.getPath();
+	}
+}
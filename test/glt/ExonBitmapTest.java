@@ -0,0 +1,190 @@
+package glt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the array, bitmap and run containers of ExonBitmap against a BitSet.
+ *
+ * @author michael
+ *
+ */
+public class ExonBitmapTest {
+
+	static private final int CHUNK = 1 << 16;
+
+	// the number of chunks and the bytes of a single chunk besides its container
+	static private final int HEADER = 4 + 12;
+
+	@Test
+	public void picksTheSmallestContainer() {
+
+		Random random = new Random(1);
+
+		// sparse
+		BitSet array = ExonBitmapTest.sparse(random, 0, 100);
+		assertEquals(HEADER + 2 * array.cardinality(), ExonBitmap.of(array).getSize());
+
+		// dense without any long runs
+		BitSet bitmap = ExonBitmapTest.dense(random, 0);
+		assertEquals(HEADER + 8 * 1024, ExonBitmap.of(bitmap).getSize());
+
+		// a few long runs
+		BitSet runs = ExonBitmapTest.runs(random, 0, 10);
+		assertEquals(HEADER + 4 + 4 * 10, ExonBitmap.of(runs).getSize());
+	}
+
+	@Test
+	public void holdsTheSameRows() throws IOException {
+
+		Random random = new Random(2);
+
+		for (int round = 0; round < 20; round++) {
+
+			BitSet rows = ExonBitmapTest.mixed(random);
+			ExonBitmap bitmap = ExonBitmap.of(rows);
+
+			ExonBitmapTest.check(rows, bitmap);
+
+			// the same once it has been written and read back
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			bitmap.write(new DataOutputStream(bytes));
+
+			ExonBitmapTest.check(rows, ExonBitmap.wrap(ByteBuffer.wrap(bytes.toByteArray())));
+		}
+	}
+
+	@Test
+	public void combinesLikeBitSets() {
+
+		Random random = new Random(3);
+
+		for (int round = 0; round < 20; round++) {
+
+			BitSet a = ExonBitmapTest.mixed(random);
+			BitSet b = ExonBitmapTest.mixed(random);
+
+			ExonBitmap x = ExonBitmap.of(a);
+			ExonBitmap y = ExonBitmap.of(b);
+
+			BitSet and = (BitSet) a.clone();
+			and.and(b);
+			ExonBitmapTest.check(and, x.and(y));
+
+			BitSet or = (BitSet) a.clone();
+			or.or(b);
+			ExonBitmapTest.check(or, x.or(y));
+
+			BitSet andNot = (BitSet) a.clone();
+			andNot.andNot(b);
+			ExonBitmapTest.check(andNot, x.andNot(y));
+
+			ExonBitmapTest.check(new BitSet(), x.andNot(x));
+			ExonBitmapTest.check(a, x.or(ExonBitmap.empty()));
+		}
+	}
+
+	@Test
+	public void holdsRanges() {
+
+		int[][] ranges = { { 0, 0 }, { 0, 1 }, { 5, 70000 }, { CHUNK - 1, CHUNK + 1 }, { 3, 3 * CHUNK + 17 } };
+
+		for (int[] range : ranges) {
+
+			BitSet rows = new BitSet();
+			rows.set(range[0], range[1]);
+
+			ExonBitmapTest.check(rows, ExonBitmap.range(range[0], range[1]));
+		}
+	}
+
+	static private void check(BitSet rows, ExonBitmap bitmap) {
+
+		assertEquals(rows.cardinality(), bitmap.getCardinality());
+		assertEquals(rows.isEmpty(), bitmap.isEmpty());
+		assertArrayEquals(rows.stream().toArray(), bitmap.toArray());
+
+		// the rows around every chunk as well, not only the ones which are set
+		for (int row = 0; row < 6 * CHUNK; row++) {
+			if (rows.get(row) != bitmap.contains(row)) {
+				assertEquals(rows.get(row), bitmap.contains(row), "row " + row);
+			}
+		}
+	}
+
+	/**
+	 * Returns a chunk of each container, an empty chunk and a chunk of a
+	 * single row, in random order.
+	 */
+	static private BitSet mixed(Random random) {
+
+		int[] chunks = { 0, 1, 2, 4, 5 };
+
+		for (int i = chunks.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = chunks[i];
+			chunks[i] = chunks[j];
+			chunks[j] = swap;
+		}
+
+		BitSet rows = new BitSet();
+
+		rows.or(ExonBitmapTest.sparse(random, chunks[0], 1 + random.nextInt(3000)));
+		rows.or(ExonBitmapTest.dense(random, chunks[1]));
+		rows.or(ExonBitmapTest.runs(random, chunks[2], 1 + random.nextInt(100)));
+		rows.set(chunks[3] * CHUNK + random.nextInt(CHUNK));
+
+		return rows;
+	}
+
+	static private BitSet sparse(Random random, int chunk, int count) {
+
+		BitSet rows = new BitSet();
+
+		while (rows.cardinality() < count) {
+			rows.set(chunk * CHUNK + random.nextInt(CHUNK));
+		}
+
+		return rows;
+	}
+
+	static private BitSet dense(Random random, int chunk) {
+
+		BitSet rows = new BitSet();
+
+		for (int i = 0; i < CHUNK; i++) {
+			if (random.nextBoolean()) {
+				rows.set(chunk * CHUNK + i);
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Returns the runs of rows, which neither touch each other nor the end of
+	 * the chunk.
+	 */
+	static private BitSet runs(Random random, int chunk, int count) {
+
+		BitSet rows = new BitSet();
+
+		int step = CHUNK / count;
+
+		for (int i = 0; i < count; i++) {
+			int from = chunk * CHUNK + i * step;
+			rows.set(from, from + 1 + random.nextInt(step - 1));
+		}
+
+		return rows;
+	}
+}
@@ -0,0 +1,94 @@
+package glt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the suffix array built with SA-IS against sorting the suffixes one
+ * by one.
+ *
+ * @author michael
+ *
+ */
+public class FmIndexTest {
+
+	@Test
+	public void sortsRandomTexts() {
+
+		Random random = new Random(1);
+
+		for (int round = 0; round < 200; round++) {
+
+			int k = 2 + random.nextInt(5);
+			int[] text = new int[1 + random.nextInt(300)];
+
+			for (int i = 0; i < text.length - 1; i++) {
+				text[i] = 1 + random.nextInt(k - 1);
+			}
+
+			FmIndexTest.check(text, k);
+		}
+	}
+
+	@Test
+	public void sortsRepetitiveTexts() {
+
+		// the names of the LMS substrings repeat, so it recurses several times
+		FmIndexTest.check(FmIndexTest.repeat(new int[] { 1 }, 500), 2);
+		FmIndexTest.check(FmIndexTest.repeat(new int[] { 1, 2 }, 500), 3);
+		FmIndexTest.check(FmIndexTest.repeat(new int[] { 2, 1, 1 }, 300), 3);
+		FmIndexTest.check(FmIndexTest.repeat(new int[] { 1, 2, 3, 4, 4, 3, 2, 1 }, 100), 5);
+	}
+
+	@Test
+	public void sortsTinyTexts() {
+		FmIndexTest.check(new int[] { 0 }, 1);
+		FmIndexTest.check(new int[] { 1, 0 }, 2);
+		FmIndexTest.check(new int[] { 2, 1, 0 }, 3);
+		FmIndexTest.check(new int[] { 1, 2, 0 }, 3);
+	}
+
+	/**
+	 * Returns the pattern repeated, followed by the 0 ending the text.
+	 */
+	static private int[] repeat(int[] pattern, int times) {
+
+		int[] text = new int[pattern.length * times + 1];
+
+		for (int i = 0; i < pattern.length * times; i++) {
+			text[i] = pattern[i % pattern.length];
+		}
+
+		return text;
+	}
+
+	static private void check(int[] text, int k) {
+
+		int n = text.length;
+		int[] sa = new int[n];
+
+		FmIndex.sais(text, sa, n, k);
+
+		assertArrayEquals(FmIndexTest.naive(text), sa, Arrays.toString(text));
+	}
+
+	/**
+	 * Sorts the suffixes by comparing them letter by letter.
+	 */
+	static private int[] naive(int[] text) {
+
+		Integer[] suffixes = new Integer[text.length];
+
+		for (int i = 0; i < suffixes.length; i++) {
+			suffixes[i] = i;
+		}
+
+		Arrays.sort(suffixes, (a, b) -> Arrays.compare(text, a, text.length, text, b, text.length));
+
+		return Arrays.stream(suffixes).mapToInt(Integer::intValue).toArray();
+	}
+}
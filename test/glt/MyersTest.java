@@ -0,0 +1,164 @@
+package glt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks Myers' edit distance with the cut-off of the blocks out of reach
+ * against the full dynamic programming matrix.
+ *
+ * @author michael
+ *
+ */
+public class MyersTest {
+
+	static private final byte[] BASES = { 'A', 'C', 'G', 'T' };
+
+	@Test
+	public void matchesTheFullMatrix() {
+
+		Random random = new Random(1);
+
+		// within one block, exactly one, just over one and several
+		int[] lengths = { 1, 7, 63, 64, 65, 128, 129, 200, 300 };
+		int[] budgets = { 0, 1, 3, 10, 64, 70 };
+
+		for (int length : lengths) {
+			for (int budget : budgets) {
+				for (int round = 0; round < 5; round++) {
+
+					byte[] pattern = MyersTest.random(random, length);
+					byte[] text = MyersTest.plant(random, pattern, 2000, budget);
+
+					MyersTest.check(pattern, text, budget);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void startsOverAfterReset() {
+
+		Random random = new Random(2);
+
+		byte[] pattern = MyersTest.random(random, 150);
+		byte[] text = MyersTest.plant(random, pattern, 1000, 5);
+
+		Myers myers = new Myers(new String(pattern), 5);
+
+		int[] first = new int[text.length];
+
+		for (int i = 0; i < text.length; i++) {
+			first[i] = myers.next(text[i]);
+		}
+
+		myers.reset();
+
+		for (int i = 0; i < text.length; i++) {
+			assertEquals(first[i], myers.next(text[i]), "letter " + i);
+		}
+	}
+
+	static private void check(byte[] pattern, byte[] text, int budget) {
+
+		Myers myers = new Myers(new String(pattern), budget);
+
+		int[] distances = MyersTest.naive(pattern, text);
+
+		for (int i = 0; i < text.length; i++) {
+
+			int distance = myers.next(text[i]);
+
+			if (distances[i] <= budget) {
+				assertEquals(distances[i], distance, "length " + pattern.length + ", budget " + budget + ", letter " + i);
+			} else {
+				assertTrue(distance > budget, "length " + pattern.length + ", budget " + budget + ", letter " + i);
+			}
+		}
+	}
+
+	/**
+	 * Returns the edit distance of the pattern to the best bases ending with
+	 * each letter of the text, i.e. the last row of each column of the matrix.
+	 */
+	static private int[] naive(byte[] pattern, byte[] text) {
+
+		int m = pattern.length;
+
+		int[] column = new int[m + 1];
+		int[] distances = new int[text.length];
+
+		for (int i = 0; i <= m; i++) {
+			column[i] = i;
+		}
+
+		for (int j = 0; j < text.length; j++) {
+
+			// the pattern may start anywhere, so the top row stays 0
+			int diagonal = 0;
+
+			for (int i = 1; i <= m; i++) {
+
+				int cost = Math.min(diagonal + (pattern[i - 1] == text[j] ? 0 : 1), Math.min(column[i], column[i - 1]) + 1);
+
+				diagonal = column[i];
+				column[i] = cost;
+			}
+
+			distances[j] = column[m];
+		}
+
+		return distances;
+	}
+
+	static private byte[] random(Random random, int length) {
+
+		byte[] bases = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			bases[i] = BASES[random.nextInt(4)];
+		}
+
+		return bases;
+	}
+
+	/**
+	 * Returns random bases with a few copies of the pattern, each with up to
+	 * budget + 1 edits, so there are hits within the budget and just outside
+	 * of it.
+	 */
+	static private byte[] plant(Random random, byte[] pattern, int length, int budget) {
+
+		StringBuilder text = new StringBuilder(new String(MyersTest.random(random, length)));
+
+		for (int copy = 0; copy < 3; copy++) {
+
+			StringBuilder bases = new StringBuilder(new String(pattern));
+
+			for (int edits = random.nextInt(budget + 2); edits > 0 && bases.length() > 1; edits--) {
+
+				int position = random.nextInt(bases.length());
+
+				switch (random.nextInt(3)) {
+				case 0:
+					bases.setCharAt(position, (char) BASES[random.nextInt(4)]);
+					break;
+				case 1:
+					bases.insert(position, (char) BASES[random.nextInt(4)]);
+					break;
+				default:
+					bases.deleteCharAt(position);
+					break;
+				}
+			}
+
+			text.insert(random.nextInt(text.length()), bases);
+		}
+
+		return text.toString().getBytes();
+	}
+}
@@ -0,0 +1,118 @@
+package glt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the banded alignment of VariantSummary against the edit distance of
+ * the full dynamic programming matrix.
+ *
+ * @author michael
+ *
+ */
+public class VariantSummaryTest {
+
+	static private final byte[] BASES = { 'A', 'C', 'G', 'T' };
+
+	@Test
+	public void alignsWithTheFewestEdits() {
+
+		Random random = new Random(1);
+
+		for (int round = 0; round < 2000; round++) {
+
+			byte[] letters = VariantSummaryTest.random(random, 1 + random.nextInt(120));
+			byte[] bases = VariantSummaryTest.mutate(random, letters, random.nextInt(8));
+
+			int distance = VariantSummaryTest.naive(letters, bases);
+
+			// a band as wide as the edits holds the best alignment
+			VariantSummaryTest.check(letters, bases, Math.max(distance, Math.abs(letters.length - bases.length)), distance);
+			VariantSummaryTest.check(letters, bases, Math.max(letters.length, bases.length), distance);
+		}
+	}
+
+	@Test
+	public void alignsEmptySides() {
+		VariantSummaryTest.check(new byte[] { 'A', 'C' }, new byte[0], 2, 2);
+		VariantSummaryTest.check(new byte[0], new byte[] { 'G' }, 1, 1);
+		VariantSummaryTest.check(new byte[] { 'A' }, new byte[] { 'T' }, 0, 1);
+	}
+
+	static private void check(byte[] letters, byte[] bases, int band, int distance) {
+
+		VariantSummary.Comparison comparison = new VariantSummary.Comparison();
+
+		VariantSummary.align(letters, bases, band, comparison);
+
+		String message = new String(letters) + " " + new String(bases) + ", band " + band;
+
+		assertEquals(distance, comparison.getMismatches() + comparison.getIndels(), message);
+
+		// every column takes a base of both or an inserted or deleted one of either
+		assertEquals(letters.length + bases.length, 2 * comparison.getColumns() - comparison.getIndels(), message);
+	}
+
+	/**
+	 * Returns the edit distance of both end-to-end.
+	 */
+	static private int naive(byte[] letters, byte[] bases) {
+
+		int[][] costs = new int[letters.length + 1][bases.length + 1];
+
+		for (int i = 0; i <= letters.length; i++) {
+			for (int j = 0; j <= bases.length; j++) {
+				if (i == 0 || j == 0) {
+					costs[i][j] = i + j;
+				} else {
+					costs[i][j] = Math.min(costs[i - 1][j - 1] + (letters[i - 1] == bases[j - 1] ? 0 : 1),
+							Math.min(costs[i - 1][j], costs[i][j - 1]) + 1);
+				}
+			}
+		}
+
+		return costs[letters.length][bases.length];
+	}
+
+	static private byte[] random(Random random, int length) {
+
+		byte[] bases = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			bases[i] = BASES[random.nextInt(4)];
+		}
+
+		return bases;
+	}
+
+	static private byte[] mutate(Random random, byte[] letters, int edits) {
+
+		StringBuilder bases = new StringBuilder(new String(letters));
+
+		for (; edits > 0; edits--) {
+
+			int position = random.nextInt(bases.length() + 1);
+
+			switch (random.nextInt(3)) {
+			case 0:
+				if (position < bases.length()) {
+					bases.setCharAt(position, (char) BASES[random.nextInt(4)]);
+				}
+				break;
+			case 1:
+				bases.insert(position, (char) BASES[random.nextInt(4)]);
+				break;
+			default:
+				if (position < bases.length()) {
+					bases.deleteCharAt(position);
+				}
+				break;
+			}
+		}
+
+		return bases.toString().getBytes();
+	}
+}